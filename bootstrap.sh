@@ -49,6 +49,7 @@ mkdir -p ${CLASSDIR}
 echo ... Compiling Ant Classes
 
 ${JAVAC} -d ${CLASSDIR} ${TOOLS}/tar/*.java
+${JAVAC} -d ${CLASSDIR} ${TOOLS}/zip/*.java
 ${JAVAC} -d ${CLASSDIR} ${TOOLS}/ant/types/*.java
 ${JAVAC} -d ${CLASSDIR} ${TOOLS}/ant/*.java
 ${JAVAC} -d ${CLASSDIR} ${TOOLS}/ant/taskdefs/*.java
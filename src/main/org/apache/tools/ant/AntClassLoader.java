@@ -57,6 +57,7 @@ package org.apache.tools.ant;
 import java.util.*;
 import java.util.zip.*;
 import java.io.*;
+import java.lang.reflect.Method;
 import org.apache.tools.ant.types.Path;
 
 /**
@@ -65,6 +66,12 @@ import org.apache.tools.ant.types.Path;
  * system classpath by using the forceLoadClass method. Any subsequent classes loaded by that
  * class will then use this loader rather than the system class loader.
  *
+ * <p>The classpath is resolved when the loader is used for the first
+ * time, changes to the Path made later are not seen. The jars on the
+ * classpath are kept open until {@link #cleanup cleanup} is
+ * called, streams returned by {@link #getResourceAsStream
+ * getResourceAsStream} don't depend on them.</p>
+ *
  * @author Conor MacNeill
  */
 public class AntClassLoader  extends ClassLoader {
@@ -72,11 +79,64 @@ public class AntClassLoader  extends ClassLoader {
      * The size of buffers to be used in this classloader.
      */
     static private final int BUFFER_SIZE = 1024;
+
+    /** package root that is loaded by the system loader */
+    static private final Integer SYSTEM_ROOT = new Integer(1);
+    /** package root that is loaded by this loader */
+    static private final Integer LOADER_ROOT = new Integer(2);
+    /** package root that has been added for both loaders */
+    static private final Integer BOTH_ROOT = new Integer(3);
+
+    /**
+     * Whether the VM knows that instances of this class may load
+     * different classes concurrently, see registerAsParallelCapable.
+     */
+    static private boolean parallelCapable = false;
+
+    static {
+        try {
+            // JDK 1.7+
+            Method register = 
+                ClassLoader.class.getDeclaredMethod("registerAsParallelCapable",
+                                                    new Class[0]);
+            // protected, invoke fails without this
+            register.setAccessible(true);
+            Object result = register.invoke(null, new Object[0]);
+            parallelCapable = Boolean.TRUE.equals(result);
+        } catch (Exception e) {
+            // older VMs lock the loader anyway
+        }
+    }
     
     /**
      * The classpath that is to be used when loading classes using this class loader.
      */ 
     private Path classpath;
+
+    /**
+     * The existing files and directories of the classpath, null until
+     * the loader is used for the first time.
+     */
+    private File[] pathComponents;
+
+    /**
+     * Whether the corresponding element of pathComponents is a
+     * directory.
+     */
+    private boolean[] directories;
+
+    /**
+     * The open jars of pathComponents, null for directories and jars
+     * that haven't been opened (again) yet.
+     */
+    private ZipFile[] zipFiles;
+
+    /**
+     * Maps the directory part of the name of every entry in one of
+     * the jars of the classpath to the ascending indices of the jars
+     * that contain such an entry, as int[].
+     */
+    private Hashtable packageIndex;
     
     /**
      * The project to which this class loader belongs.
@@ -90,16 +150,25 @@ public class AntClassLoader  extends ClassLoader {
     private boolean systemFirst = true;
 
     /**
-     * These are the package roots that are to be loaded by the system class loader
-     * regardless of whether the system class loader is being searched first or not.
+     * Maps package roots - with a trailing dot - that are to be
+     * loaded by a specific loader regardless of whether the system
+     * class loader is being searched first or not to SYSTEM_ROOT,
+     * LOADER_ROOT or BOTH_ROOT.
      */
-    private Vector systemPackages = new Vector();
-    
+    private Hashtable packageRoots = new Hashtable();
+
+    /**
+     * Locks for the names of the classes that are being loaded, if the
+     * loader is parallel capable.
+     */
+    private Hashtable loadLocks = new Hashtable();
+
     /**
-     * These are the package roots that are to be loaded by this class loader
-     * regardless of whether the system class loader is being searched first or not.
+     * The IntrospectionHelpers of the classes defined by this loader.
+     * They are kept here rather than in a global table, so they can be
+     * garbage collected together with the loader.
      */
-    private Vector loaderPackages = new Vector();
+    IntrospectionHelper.Cache helpers = new IntrospectionHelper.Cache();
     
     /**
      * Create a classloader for the given project using the classpath given.
@@ -136,7 +205,7 @@ public class AntClassLoader  extends ClassLoader {
      * @param packageRoot the root of all packages to be included.
      */
     public void addSystemPackageRoot(String packageRoot) {
-        systemPackages.addElement(packageRoot + ".");
+        addPackageRoot(packageRoot + ".", SYSTEM_ROOT);
     }
     
     /**
@@ -148,7 +217,64 @@ public class AntClassLoader  extends ClassLoader {
      * @param packageRoot the root of akll packages to be included.
      */
     public void addLoaderPackageRoot(String packageRoot) {
-        loaderPackages.addElement(packageRoot + ".");
+        addPackageRoot(packageRoot + ".", LOADER_ROOT);
+    }
+
+    private void addPackageRoot(String prefix, Integer kind) {
+        synchronized (packageRoots) {
+            Integer old = (Integer) packageRoots.get(prefix);
+            if (old != null && old != kind) {
+                kind = BOTH_ROOT;
+            }
+            packageRoots.put(prefix, kind);
+        }
+    }
+
+    /**
+     * Whether the system loader should be consulted first for the
+     * given class.
+     *
+     * <p>Package roots for this loader take precedence over those for
+     * the system loader.</p>
+     */
+    private boolean isSystemFirst(String classname) {
+        boolean system = false;
+        int dot = classname.indexOf('.');
+        while (dot != -1) {
+            Object kind = packageRoots.get(classname.substring(0, dot + 1));
+            if (kind == LOADER_ROOT || kind == BOTH_ROOT) {
+                return false;
+            } else if (kind == SYSTEM_ROOT) {
+                system = true;
+            }
+            dot = classname.indexOf('.', dot + 1);
+        }
+        return system || systemFirst;
+    }
+
+    /**
+     * Whether the VM has accepted this class as parallel capable, so
+     * classes are loaded under locks of their own.
+     */
+    static boolean isParallelCapable() {
+        return parallelCapable;
+    }
+
+    /**
+     * The object to synchronize on while the given class is loaded.
+     */
+    private Object getLoadLock(String classname) {
+        if (!parallelCapable) {
+            return this;
+        }
+        synchronized (loadLocks) {
+            Object lock = loadLocks.get(classname);
+            if (lock == null) {
+                lock = new Object();
+                loadLocks.put(classname, lock);
+            }
+            return lock;
+        }
     }
     
 
@@ -168,14 +294,18 @@ public class AntClassLoader  extends ClassLoader {
      * this loader's classpath.
      */
     public Class forceLoadClass(String classname) throws ClassNotFoundException {
-        project.log("force loading " + classname, Project.MSG_DEBUG);
-        Class theClass = findLoadedClass(classname);
-
-        if (theClass == null) {
-            theClass = findClass(classname);
+        if (project.isLogging(Project.MSG_DEBUG)) {
+            project.log("force loading " + classname, Project.MSG_DEBUG);
         }
+        synchronized (getLoadLock(classname)) {
+            Class theClass = findLoadedClass(classname);
+
+            if (theClass == null) {
+                theClass = findClass(classname);
+            }
         
-        return theClass;
+            return theClass;
+        }
     }
 
     /**
@@ -192,7 +322,9 @@ public class AntClassLoader  extends ClassLoader {
      * this loader's classpath.
      */
     public Class forceLoadSystemClass(String classname) throws ClassNotFoundException {
-        project.log("force system loading " + classname, Project.MSG_DEBUG);
+        if (project.isLogging(Project.MSG_DEBUG)) {
+            project.log("force system loading " + classname, Project.MSG_DEBUG);
+        }
         Class theClass = findLoadedClass(classname);
 
         if (theClass == null) {
@@ -211,73 +343,240 @@ public class AntClassLoader  extends ClassLoader {
      * found on the loader's classpath.
      */
     public InputStream getResourceAsStream(String name) {
-        // we need to search the components of the path to see if we can find the 
-        // class we want. 
-        InputStream stream = null;
- 
-        String[] pathElements = classpath.list();
-        for (int i = 0; i < pathElements.length && stream == null; ++i) {
-            File pathComponent = project.resolveFile((String)pathElements[i]);
-            stream = getResourceStream(pathComponent, name);
+        try {
+            Resource resource = locateResource(name);
+            if (resource != null) {
+                if (resource.isInJar()) {
+                    // cleanup closes the jar, callers keep the stream
+                    return new ByteArrayInputStream(readResource(resource));
+                }
+                return resource.getInputStream();
+            }
         }
-
-        return stream;
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        
+        return null;
     }
 
     /**
-     * Get an inputstream to a given resource in the given file which may
-     * either be a directory or a zip file.
-     *
-     * @param file the file (directory or jar) in which to search for the resource.
-     * @param resourceName the name of the resource for which a stream is required.
+     * Closes the jars of the classpath.
      *
-     * @return a stream to the required resource or null if the resource cannot be
-     * found in the given file object
+     * <p>The loader can still be used afterwards, jars are opened
+     * again when they are needed.</p>
      */
-    private InputStream getResourceStream(File file, String resourceName) {
-        try {
-            if (!file.exists()) {
-                return null;
+    public synchronized void cleanup() {
+        if (zipFiles == null) {
+            return;
+        }
+        for (int i = 0; i < zipFiles.length; i++) {
+            if (zipFiles[i] != null) {
+                try {
+                    zipFiles[i].close();
+                } catch (IOException e) {}
+                zipFiles[i] = null;
             }
-            
-            if (file.isDirectory()) {
-                File resource = new File(file, resourceName); 
-                
-                if (resource.exists()) {   
-                    return new FileInputStream(resource);
+        }
+    }
+
+    /**
+     * Resolves the classpath and builds the index of the packages in
+     * its jars.
+     */
+    private synchronized void initPathComponents() {
+        if (pathComponents != null) {
+            return;
+        }
+
+        String[] pathElements = classpath.list();
+        Vector files = new Vector(pathElements.length);
+        for (int i = 0; i < pathElements.length; i++) {
+            File f = project.resolveFile(pathElements[i]);
+            if (f.exists()) {
+                files.addElement(f);
+            }
+        }
+        File[] components = new File[files.size()];
+        files.copyInto(components);
+        directories = new boolean[components.length];
+        zipFiles = new ZipFile[components.length];
+
+        // package -> Vector of the Integer indices of the jars
+        Hashtable jars = new Hashtable();
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].isDirectory()) {
+                directories[i] = true;
+                continue;
+            }
+            ZipFile zipFile = getZipFile(components[i], i);
+            if (zipFile == null) {
+                continue;
+            }
+            Integer index = new Integer(i);
+            Enumeration entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = ((ZipEntry) entries.nextElement()).getName();
+                String pkg = getPackagePath(name);
+                Vector v = (Vector) jars.get(pkg);
+                if (v == null) {
+                    v = new Vector(1);
+                    jars.put(pkg, v);
+                }
+                if (v.size() == 0 || v.lastElement() != index) {
+                    v.addElement(index);
                 }
             }
-            else {
-                ZipFile zipFile = null;
-                try {
-                    zipFile = new ZipFile(file);
-        
-                    ZipEntry entry = zipFile.getEntry(resourceName);
+        }
+
+        packageIndex = new Hashtable(jars.size());
+        Enumeration e = jars.keys();
+        while (e.hasMoreElements()) {
+            Object pkg = e.nextElement();
+            Vector v = (Vector) jars.get(pkg);
+            int[] indices = new int[v.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = ((Integer) v.elementAt(i)).intValue();
+            }
+            packageIndex.put(pkg, indices);
+        }
+        pathComponents = components;
+    }
+
+    /**
+     * The directory part of the name of a resource, "" for resources
+     * in the root directory.
+     */
+    private static String getPackagePath(String resourceName) {
+        int slash = resourceName.lastIndexOf('/');
+        return slash == -1 ? "" : resourceName.substring(0, slash);
+    }
+
+    /**
+     * Get the open jar at the given index of the classpath, opening
+     * it if necessary.
+     *
+     * @return null if the file cannot be read as a jar.
+     */
+    private synchronized ZipFile getZipFile(File file, int index) {
+        if (zipFiles[index] == null) {
+            try {
+                zipFiles[index] = new ZipFile(file);
+            } catch (IOException e) {
+                project.log("Unable to read " + file + ": " + e.getMessage(),
+                            Project.MSG_VERBOSE);
+            }
+        }
+        return zipFiles[index];
+    }
+
+    /**
+     * Searches the classpath for a resource.
+     *
+     * @param name the name of the resource.
+     *
+     * @return null if the resource cannot be found.
+     */
+    private Resource locateResource(String name) {
+        initPathComponents();
+
+        int[] jars = (int[]) packageIndex.get(getPackagePath(name));
+        int next = 0;
+        for (int i = 0; i < pathComponents.length; i++) {
+            File component = pathComponents[i];
+            if (jars != null && next < jars.length && jars[next] == i) {
+                next++;
+                ZipFile zipFile = getZipFile(component, i);
+                if (zipFile != null) {
+                    ZipEntry entry = zipFile.getEntry(name);
                     if (entry != null) {
-                        // we need to read the entry out of the zip file into
-                        // a baos and then 
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int bytesRead;
-                        InputStream stream = zipFile.getInputStream(entry);
-                        while ((bytesRead = stream.read(buffer, 0, BUFFER_SIZE)) != -1) {
-                            baos.write(buffer, 0, bytesRead);
-                        }
-                        return new ByteArrayInputStream(baos.toByteArray());   
+                        return new Resource(zipFile, entry);
                     }
                 }
-                finally {
-                    if (zipFile != null) {
-                        zipFile.close();
-                    }
+            } else if (directories[i]) {
+                File resource = new File(component, name);
+                if (resource.exists()) {
+                    return new Resource(resource);
                 }
             }
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        return null;
+    }
+
+    /**
+     * A resource in a directory or jar of the classpath.
+     */
+    private static class Resource {
+        private File file;
+        private ZipFile zipFile;
+        private ZipEntry entry;
+
+        Resource(File file) {
+            this.file = file;
+        }
+
+        Resource(ZipFile zipFile, ZipEntry entry) {
+            this.zipFile = zipFile;
+            this.entry = entry;
+        }
+
+        InputStream getInputStream() throws IOException {
+            if (file != null) {
+                return new FileInputStream(file);
+            }
+            return zipFile.getInputStream(entry);
+        }
+
+        boolean isInJar() {
+            return zipFile != null;
+        }
+
+        /**
+         * The size of the resource, -1 if it is unknown.
+         */
+        long getSize() {
+            return file != null ? file.length() : entry.getSize();
+        }
+
+        public String toString() {
+            return file != null ? file.toString() 
+                : zipFile.getName() + "(" + entry.getName() + ")";
+        }
+    }
+
+    /**
+     * Reads a resource completely.
+     */
+    private byte[] readResource(Resource resource) throws IOException {
+        InputStream stream = resource.getInputStream();
+        long size = resource.getSize();
+        try {
+            if (size >= 0 && size <= Integer.MAX_VALUE) {
+                byte[] data = new byte[(int) size];
+                int offset = 0;
+                int bytesRead;
+                while (offset < data.length
+                       && (bytesRead = stream.read(data, offset, 
+                                                   data.length - offset)) 
+                       != -1) {
+                    offset += bytesRead;
+                }
+                if (offset < data.length) {
+                    throw new EOFException("Unexpected end of " + resource);
+                }
+                return data;
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = stream.read(buffer, 0, BUFFER_SIZE)) != -1) {
+                baos.write(buffer, 0, bytesRead);
+            }
+            return baos.toByteArray();
+        } finally {
+            stream.close();
         }
-        
-        return null;   
     }
 
     /**
@@ -298,56 +597,46 @@ public class AntClassLoader  extends ClassLoader {
      */
     protected Class loadClass(String classname, boolean resolve) throws ClassNotFoundException {
 
-        // default to the global setting and then see
-        // if this class belongs to a package which has been
-        // designated to use a specific loader first (this one or the system one)
-        boolean useSystemFirst = systemFirst; 
-
-        for (Enumeration e = systemPackages.elements(); e.hasMoreElements();) {
-            String packageName = (String)e.nextElement();
-            if (classname.startsWith(packageName)) {
-                useSystemFirst = true;
-                break;
-            }
-        }
-
-        for (Enumeration e = loaderPackages.elements(); e.hasMoreElements();) {
-            String packageName = (String)e.nextElement();
-            if (classname.startsWith(packageName)) {
-                useSystemFirst = false;
-                break;
-            }
-        }
-
-        Class theClass = findLoadedClass(classname);
-        if (theClass == null) {
-            if (useSystemFirst) {
-                try {
-                    theClass = findSystemClass(classname);
-                    project.log("Class " + classname + " loaded from system loader", Project.MSG_DEBUG);
-                }
-                catch (ClassNotFoundException cnfe) {
-                    theClass = findClass(classname);
-                    project.log("Class " + classname + " loaded from ant loader", Project.MSG_DEBUG);
-                }
-            }
-            else {
-                try {
-                    theClass = findClass(classname);
-                    project.log("Class " + classname + " loaded from ant loader", Project.MSG_DEBUG);
+        synchronized (getLoadLock(classname)) {
+            Class theClass = findLoadedClass(classname);
+            if (theClass == null) {
+                boolean debug = project.isLogging(Project.MSG_DEBUG);
+                if (isSystemFirst(classname)) {
+                    try {
+                        theClass = findSystemClass(classname);
+                        if (debug) {
+                            project.log("Class " + classname + " loaded from system loader", Project.MSG_DEBUG);
+                        }
+                    }
+                    catch (ClassNotFoundException cnfe) {
+                        theClass = findClass(classname);
+                        if (debug) {
+                            project.log("Class " + classname + " loaded from ant loader", Project.MSG_DEBUG);
+                        }
+                    }
                 }
-                catch (ClassNotFoundException cnfe) {
-                    theClass = findSystemClass(classname);
-                    project.log("Class " + classname + " loaded from system loader", Project.MSG_DEBUG);
+                else {
+                    try {
+                        theClass = findClass(classname);
+                        if (debug) {
+                            project.log("Class " + classname + " loaded from ant loader", Project.MSG_DEBUG);
+                        }
+                    }
+                    catch (ClassNotFoundException cnfe) {
+                        theClass = findSystemClass(classname);
+                        if (debug) {
+                            project.log("Class " + classname + " loaded from system loader", Project.MSG_DEBUG);
+                        }
+                    }
                 }
             }
-        }
             
-        if (resolve) {
-            resolveClass(theClass);
-        }
+            if (resolve) {
+                resolveClass(theClass);
+            }
         
-        return theClass;
+            return theClass;
+        }
     }
 
     /**
@@ -362,33 +651,6 @@ public class AntClassLoader  extends ClassLoader {
         return classname.replace('.', '/') + ".class";
     }
 
-    /**
-     * Read a class definition from a stream.
-     *
-     * @param stream the stream from which the class is to be read.
-     * @param classname the class name of the class in the stream.
-     *
-     * @return the Class object read from the stream.
-     *
-     * @throws IOException if there is a problem reading the class from the
-     * stream.
-     */
-    private Class getClassFromStream(InputStream stream, String classname) 
-                throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        int bytesRead = -1;
-        byte[] buffer = new byte[1024];
-        
-        while ((bytesRead = stream.read(buffer, 0, 1024)) != -1) {
-            baos.write(buffer, 0, bytesRead);
-        }
-        
-        byte[] classData = baos.toByteArray();
-
-        return defineClass(classname, classData, 0, classData.length); 
-    }
-
-
     /**
      * Search for and load a class on the classpath of this class loader.
      *
@@ -400,49 +662,22 @@ public class AntClassLoader  extends ClassLoader {
      * this loader's classpath.
      */
     public Class findClass(String name) throws ClassNotFoundException {
-        project.log("Finding class " + name, Project.MSG_DEBUG);
-
-        try {
-            return findClass(name, classpath);
-        }
-        catch (ClassNotFoundException e) {
-            throw e;
+        if (project.isLogging(Project.MSG_DEBUG)) {
+            project.log("Finding class " + name, Project.MSG_DEBUG);
         }
-    }
 
-
-    /**
-     * Find a class on the given classpath.
-     */
-    private Class findClass(String name, Path path) throws ClassNotFoundException {
-        // we need to search the components of the path to see if we can find the 
-        // class we want. 
-        InputStream stream = null;
         String classFilename = getClassFilename(name);
         try {
-            String[] pathElements = path.list();
-            for (int i = 0; i < pathElements.length && stream == null; ++i) {
-                File pathComponent = project.resolveFile((String)pathElements[i]);
-                stream = getResourceStream(pathComponent, classFilename);
+            Resource resource = locateResource(classFilename);
+            if (resource == null) {
+                throw new ClassNotFoundException(name);
             }
-        
-            if (stream == null) {
-                throw new ClassNotFoundException();
-            }
-                
-            return getClassFromStream(stream, name);
+            byte[] classData = readResource(resource);
+            return defineClass(name, classData, 0, classData.length); 
         }
         catch (IOException ioe) {
             ioe.printStackTrace();
-            throw new ClassNotFoundException();
-        }
-        finally {
-            try {
-                if (stream != null) {
-                    stream.close();
-                }
-            }
-            catch (IOException e) {}
+            throw new ClassNotFoundException(name);
         }
     }
 }
@@ -64,6 +64,9 @@ public class BuildEvent extends EventObject {
     private int priority = Project.MSG_VERBOSE;
     private Throwable exception;
 
+    /** the thread that fired the event */
+    private transient Thread thread = Thread.currentThread();
+
     
     /**
      * Construct a BuildEvent for a project level event
@@ -163,4 +166,12 @@ public class BuildEvent extends EventObject {
     public Throwable getException() {
         return exception;
     }
-}
\ No newline at end of file
+
+    /**
+     *  Returns the thread that fired this event, which is not
+     *  necessarily the one delivering it.
+     */
+    Thread getThread() {
+        return thread;
+    }
+}
@@ -85,6 +85,13 @@ public class DefaultLogger implements BuildLogger {
         this.msgOutputLevel = level;
     }
 
+    /**
+     * Get the msgOutputLevel this logger responds to.
+     */
+    public int getMessageOutputLevel() {
+        return msgOutputLevel;
+    }
+
     
     /**
      * Set the output stream to which this logger is to send its output.
@@ -167,6 +174,13 @@ public class DefaultLogger implements BuildLogger {
         // Filter out messages based on priority
         if (event.getPriority() <= msgOutputLevel) {
 
+            // Messages of targets running in parallel interleave,
+            // name the target they belong to
+            if (event.getTarget() != null 
+                && event.getProject().getThreadCount() > 1) {
+                logTo.print(event.getTarget().getName() + ": ");
+            }
+
             // Print out the name of the task if we're in one
             if (event.getTask() != null) {
                 String name = event.getTask().getTaskName();
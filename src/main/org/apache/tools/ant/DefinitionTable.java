@@ -0,0 +1,166 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Properties;
+
+/**
+ * The task or data type definitions listed in one of Ant's
+ * <code>defaults.properties</code> files.
+ *
+ * <p>The table is read once and shared by all projects. Names are
+ * only resolved to classes when a project first asks for them, a
+ * class that cannot be loaded is treated as if it wasn't listed at
+ * all.</p>
+ */
+public class DefinitionTable {
+
+    private static final String TASK_DEFAULTS = 
+        "/org/apache/tools/ant/taskdefs/defaults.properties";
+    private static final String DATA_TYPE_DEFAULTS = 
+        "/org/apache/tools/ant/types/defaults.properties";
+
+    private static DefinitionTable taskDefaults;
+    private static DefinitionTable dataTypeDefaults;
+
+    /** Marks names whose class cannot be loaded. */
+    private static final Object UNAVAILABLE = new Object();
+
+    /** name -> class name */
+    private Properties classNames;
+
+    /** name -> Class or UNAVAILABLE */
+    private Hashtable resolved = new Hashtable();
+
+    private DefinitionTable(Properties classNames) {
+        this.classNames = classNames;
+    }
+
+    /**
+     * The default task definitions.
+     */
+    public static synchronized DefinitionTable getTaskDefaults() 
+        throws BuildException {
+        if (taskDefaults == null) {
+            taskDefaults = 
+                new DefinitionTable(load(TASK_DEFAULTS, "task list"));
+        }
+        return taskDefaults;
+    }
+
+    /**
+     * The default data type definitions.
+     */
+    public static synchronized DefinitionTable getDataTypeDefaults() 
+        throws BuildException {
+        if (dataTypeDefaults == null) {
+            dataTypeDefaults = 
+                new DefinitionTable(load(DATA_TYPE_DEFAULTS, "datatype list"));
+        }
+        return dataTypeDefaults;
+    }
+
+    /**
+     * The names of all definitions, including those whose class
+     * cannot be loaded.
+     */
+    public Enumeration getNames() {
+        return classNames.propertyNames();
+    }
+
+    /**
+     * The class defined for the given name, null if there is no such
+     * definition or the class cannot be loaded.
+     */
+    public Class getDefinition(String name) {
+        Object c = resolved.get(name);
+        if (c == null) {
+            String className = classNames.getProperty(name);
+            if (className == null) {
+                return null;
+            }
+            try {
+                c = Class.forName(className);
+            } catch (NoClassDefFoundError ncdfe) {
+                c = UNAVAILABLE;
+            } catch (ClassNotFoundException cnfe) {
+                c = UNAVAILABLE;
+            }
+            resolved.put(name, c);
+        }
+        return c == UNAVAILABLE ? null : (Class) c;
+    }
+
+    private static Properties load(String resource, String description) 
+        throws BuildException {
+        try {
+            Properties props = new Properties();
+            InputStream in = DefinitionTable.class.getResourceAsStream(resource);
+            if (in == null) { 
+                throw new BuildException("Can't load default " + description);
+            }
+            props.load(in);
+            in.close();
+            return props;
+        } catch (IOException ioe) {
+            throw new BuildException("Can't load default " + description);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * {@link ChangeDetector ChangeDetector} that doesn't consider a
+ * target out of date if only the modification time of its source has
+ * changed but not its content.
+ *
+ * <p>The detector remembers the MD5 digest of a source file whenever
+ * a target has been built from it or has been found up to date.  If
+ * a target appears to be out of date by modification time later, the
+ * digest of the source is compared to the remembered one.  Size and
+ * modification time of the source are remembered as well, sources
+ * that still have them are not read again.</p>
+ *
+ * <p>The digests are kept in a single file that is read when the
+ * detector is created and written at the end of the build.  All
+ * projects of a build using the same file share the same
+ * detector.</p>
+ */
+public class DigestChangeDetector extends ChangeDetector {
+
+    /**
+     * Records made less than this number of milliseconds after the
+     * last modification of their source are not trusted without
+     * reading the source, as a change within the timestamp
+     * granularity of the file system wouldn't be visible.
+     */
+    private static final long GRANULARITY = 2000;
+
+    private static final int MAGIC = 0x416e7444;
+    private static final int VERSION = 1;
+
+    /** cache file -> detector */
+    private static Hashtable instances = new Hashtable();
+
+    private File cacheFile;
+
+    /** target path -> Hashtable of source path -> Record */
+    private Hashtable targets = new Hashtable();
+
+    private boolean dirty = false;
+
+    /**
+     * What is known about a source.
+     */
+    private static class Record {
+        long size;
+        long lastModified;
+        long recorded;
+        byte[] digest;
+    }
+
+    /**
+     * The detector using the given cache file.
+     */
+    public static synchronized DigestChangeDetector getInstance(File cacheFile) {
+        String key = cacheFile.getAbsolutePath();
+        DigestChangeDetector d = (DigestChangeDetector) instances.get(key);
+        if (d == null) {
+            d = new DigestChangeDetector(cacheFile);
+            instances.put(key, d);
+        }
+        return d;
+    }
+
+    /**
+     * Writes the digests of all detectors that have been handed out
+     * by {@link #getInstance getInstance}, no matter which project
+     * asked for them.
+     *
+     * @exception IOException if any of the cache files couldn't be
+     * written, the remaining detectors are saved nevertheless.
+     */
+    public static void saveAll() throws IOException {
+        Vector all;
+        synchronized (DigestChangeDetector.class) {
+            all = new Vector(instances.size());
+            for (Enumeration e = instances.elements(); e.hasMoreElements();) {
+                all.addElement(e.nextElement());
+            }
+        }
+
+        IOException error = null;
+        for (int i = 0; i < all.size(); i++) {
+            try {
+                ((DigestChangeDetector) all.elementAt(i)).save();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @param cacheFile file to read the digests from and write them to.
+     */
+    protected DigestChangeDetector(File cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    public boolean isOutOfDate(File source, File target) {
+        if (!target.exists()) {
+            return true;
+        }
+
+        Record r = getRecord(source, target);
+        if (!super.isOutOfDate(source, target)) {
+            // remember the current content for the next time
+            if (r == null || !isCurrent(r, source)) {
+                built(source, target);
+            }
+            return false;
+        }
+
+        if (r == null || r.size != source.length()) {
+            return true;
+        }
+        if (isCurrent(r, source)) {
+            return false;
+        }
+
+        byte[] digest;
+        try {
+            digest = digest(source);
+        } catch (IOException e) {
+            return true;
+        }
+        if (!MessageDigest.isEqual(digest, r.digest)) {
+            return true;
+        }
+        // only touched, don't read it again next time
+        putRecord(source, target, digest);
+        return false;
+    }
+
+    public void built(File source, File target) {
+        Record r = getRecord(source, target);
+        if (r != null && isCurrent(r, source)) {
+            // the recorded digest is still the one of the source
+            return;
+        }
+        try {
+            putRecord(source, target, digest(source));
+        } catch (IOException e) {
+            // unreadable source, will be considered out of date
+        }
+    }
+
+    /**
+     * Writes the digests to the cache file if anything has changed.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        String parent = cacheFile.getParent();
+        if (parent != null) {
+            new File(parent).mkdirs();
+        }
+
+        DataOutputStream out = 
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(targets.size());
+            for (Enumeration e = targets.keys(); e.hasMoreElements();) {
+                String target = (String) e.nextElement();
+                Hashtable sources = (Hashtable) targets.get(target);
+                out.writeUTF(target);
+                out.writeInt(sources.size());
+                for (Enumeration s = sources.keys(); s.hasMoreElements();) {
+                    String source = (String) s.nextElement();
+                    Record r = (Record) sources.get(source);
+                    out.writeUTF(source);
+                    out.writeLong(r.size);
+                    out.writeLong(r.lastModified);
+                    out.writeLong(r.recorded);
+                    out.writeShort(r.digest.length);
+                    out.write(r.digest);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        dirty = false;
+    }
+
+    /**
+     * Whether size and modification time of the source are still
+     * the ones of the record.
+     */
+    private static boolean isCurrent(Record r, File source) {
+        long lastModified = source.lastModified();
+        return r.lastModified == lastModified
+            && r.size == source.length()
+            && r.recorded - lastModified >= GRANULARITY;
+    }
+
+    private synchronized Record getRecord(File source, File target) {
+        Hashtable sources = (Hashtable) targets.get(target.getAbsolutePath());
+        return sources == null 
+            ? null : (Record) sources.get(source.getAbsolutePath());
+    }
+
+    private void putRecord(File source, File target, byte[] digest) {
+        Record r = new Record();
+        r.recorded = System.currentTimeMillis();
+        r.lastModified = source.lastModified();
+        r.size = source.length();
+        r.digest = digest;
+
+        synchronized (this) {
+            String key = target.getAbsolutePath();
+            Hashtable sources = (Hashtable) targets.get(key);
+            if (sources == null) {
+                sources = new Hashtable();
+                targets.put(key, sources);
+            }
+            sources.put(source.getAbsolutePath(), r);
+            dirty = true;
+        }
+    }
+
+    private static byte[] digest(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException(e);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+                md.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return md.digest();
+    }
+
+    private void load() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+
+            Hashtable t = new Hashtable();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String target = in.readUTF();
+                Hashtable sources = new Hashtable();
+                int sourceCount = in.readInt();
+                for (int j = 0; j < sourceCount; j++) {
+                    String source = in.readUTF();
+                    Record r = new Record();
+                    r.size = in.readLong();
+                    r.lastModified = in.readLong();
+                    r.recorded = in.readLong();
+                    r.digest = new byte[in.readShort()];
+                    in.readFully(r.digest);
+                    sources.put(source, r);
+                }
+                t.put(target, sources);
+            }
+            targets = t;
+        } catch (IOException e) {
+            // unusable cache, start from scratch
+        } catch (RuntimeException e) {
+            // corrupt cache, start from scratch
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+}
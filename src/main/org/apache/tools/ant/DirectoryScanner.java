@@ -203,6 +203,43 @@ public class DirectoryScanner implements FileScanner {
      */
     protected boolean haveSlowResults = false;
 
+    /**
+     * The include patterns compiled for matching, together with the
+     * array they have been compiled from.
+     */
+    private PatternMatcher includeMatcher;
+    private String[] includeMatcherPatterns;
+
+    /**
+     * The exclude patterns compiled for matching, together with the
+     * array they have been compiled from.
+     */
+    private PatternMatcher excludeMatcher;
+    private String[] excludeMatcherPatterns;
+
+    /**
+     * Number of threads listing directories concurrently.
+     */
+    protected int threadCount = 1;
+
+    /**
+     * The {@link ScanTask ScanTask} each worker thread of a parallel
+     * walk is working on.
+     */
+    private Hashtable scanTasks = new Hashtable();
+
+    /**
+     * Directory holding persistent scan indices, null if the file
+     * system is to be listed on every scan.
+     */
+    protected File indexDir;
+
+    /**
+     * The directory listings used by the current scan, null if no
+     * index is used.
+     */
+    protected ScanIndex scanIndex;
+
     /**
      * Constructor.
      */
@@ -587,6 +624,47 @@ strLoop:
 
 
 
+    /**
+     * Sets the directory to keep a persistent index of directory
+     * listings in.
+     *
+     * <p>Directories that haven't been modified since the previous
+     * scan with the same basedir and patterns are then served from the
+     * index instead of listing them and examining each entry again.
+     * The results of {@link #scan scan} stay the same.</p>
+     *
+     * @param indexDir the directory for index files, null to disable
+     * the index.
+     */
+    public void setIndexDir(File indexDir) {
+        this.indexDir = indexDir;
+    }
+
+
+
+    /**
+     * Sets the number of threads used to walk the directory tree.
+     *
+     * <p>With more than one thread, subdirectories are listed
+     * concurrently, which helps on file systems with a high latency
+     * per directory. The results - including their order - are the
+     * same as those of a single threaded scan. Subclasses overriding
+     * {@link #isIncluded isIncluded}, {@link #isExcluded isExcluded},
+     * {@link #couldHoldIncluded couldHoldIncluded} or {@link
+     * #scandir(File, String, boolean) scandir} must make these
+     * methods thread safe before enabling this.  An overridden
+     * scandir is invoked once per directory, by any of the
+     * threads.</p>
+     *
+     * @param threadCount the number of threads, values less than one
+     * are treated as one.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount < 1 ? 1 : threadCount;
+    }
+
+
+
     /**
      * Sets the set of include patterns to use. All '/' and '\' characters are
      * replaced by <code>File.separatorChar</code>. So the separator used need
@@ -609,6 +687,7 @@ strLoop:
                 }
                 this.includes[i] = pattern;
             }
+            compilePatterns();
         }
     }
 
@@ -636,6 +715,7 @@ strLoop:
                 }
                 this.excludes[i] = pattern;
             }
+            compilePatterns();
         }
     }
 
@@ -666,6 +746,7 @@ strLoop:
         if (excludes == null) {
             excludes = new String[0];
         }
+        compilePatterns();
 
         filesIncluded    = new Vector();
         filesNotIncluded = new Vector();
@@ -674,7 +755,52 @@ strLoop:
         dirsNotIncluded  = new Vector();
         dirsExcluded     = new Vector();
 
-        scandir(basedir, "", true);
+        if (indexDir != null) {
+            String key = getKey();
+            scanIndex = new ScanIndex(new File(indexDir, "scan" 
+                                               + Integer.toHexString(key.hashCode())
+                                               + ".idx"), key);
+        }
+
+        walk(new File[] {basedir}, new String[] {""}, true);
+        saveIndex();
+    }
+
+    /**
+     * Identifies the basedir and patterns of this scanner - scanners
+     * with equal keys find the same files.
+     */
+    public String getKey() {
+        StringBuffer key = new StringBuffer(basedir.getAbsolutePath());
+        key.append('\n');
+        if (includes == null) {
+            key.append("**").append(File.pathSeparatorChar);
+        } else {
+            for (int i = 0; i < includes.length; i++) {
+                key.append(includes[i]).append(File.pathSeparatorChar);
+            }
+        }
+        key.append('\n');
+        if (excludes != null) {
+            for (int i = 0; i < excludes.length; i++) {
+                key.append(excludes[i]).append(File.pathSeparatorChar);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Writes back the index of directory listings, if one is used.
+     */
+    private void saveIndex() {
+        if (scanIndex != null) {
+            try {
+                scanIndex.save();
+            } catch (IOException e) {
+                // the index is only a cache, the next scan will
+                // simply have to list the directories again
+            }
+        }
     }
 
     /**
@@ -682,7 +808,7 @@ strLoop:
      *
      * <p>Returns immediately if a slow scan has already been requested.
      */
-    protected void slowScan() {
+    protected synchronized void slowScan() {
         if (haveSlowResults) {
             return;
         }
@@ -693,18 +819,28 @@ strLoop:
         String[] notIncl = new String[dirsNotIncluded.size()];
         dirsNotIncluded.copyInto(notIncl);
 
+        Vector dirs = new Vector();
+        Vector vpaths = new Vector();
         for (int i=0; i<excl.length; i++) {
-            scandir(new File(basedir, excl[i]), excl[i]+File.separator, false);
+            dirs.addElement(new File(basedir, excl[i]));
+            vpaths.addElement(excl[i]+File.separator);
         }
         
         for (int i=0; i<notIncl.length; i++) {
             if (!couldHoldIncluded(notIncl[i])) {
-                scandir(new File(basedir, notIncl[i]), 
-                        notIncl[i]+File.separator, false);
+                dirs.addElement(new File(basedir, notIncl[i]));
+                vpaths.addElement(notIncl[i]+File.separator);
             }
         }
 
+        File[] roots = new File[dirs.size()];
+        dirs.copyInto(roots);
+        String[] rootPaths = new String[vpaths.size()];
+        vpaths.copyInto(rootPaths);
+        walk(roots, rootPaths, false);
+
         haveSlowResults  = true;
+        saveIndex();
     }
 
 
@@ -726,7 +862,31 @@ strLoop:
      * @see #dirsExcluded
      */
     protected void scandir(File dir, String vpath, boolean fast) {
-        String[] newfiles = dir.list();
+        ScanTask task = scanTasks.isEmpty() 
+            ? null : (ScanTask) scanTasks.get(Thread.currentThread());
+        scandir(dir, vpath, fast, task);
+    }
+
+    /**
+     * Scans the passed dir for files and directories, either
+     * recursively or as part of a parallel walk.
+     *
+     * @param task null for a recursive scan, otherwise results are
+     *             recorded in the task and subdirectories are handed
+     *             to the walk the task belongs to.
+     */
+    private void scandir(File dir, String vpath, boolean fast, ScanTask task) {
+        String[] newfiles = null;
+        byte[] types = null;
+        if (scanIndex != null) {
+            ScanIndex.Listing listing = scanIndex.getListing(dir, vpath);
+            if (listing != null) {
+                newfiles = listing.getNames();
+                types = listing.getTypes();
+            }
+        } else {
+            newfiles = dir.list();
+        }
 
         if (newfiles == null) {
             /*
@@ -743,34 +903,37 @@ strLoop:
         for (int i = 0; i < newfiles.length; i++) {
             String name = vpath+newfiles[i];
             File   file = new File(dir,newfiles[i]);
-            if (file.isDirectory()) {
+            boolean isDirectory = types != null 
+                ? types[i] == ScanIndex.DIRECTORY : file.isDirectory();
+            if (isDirectory) {
                 if (isIncluded(name)) {
                     if (!isExcluded(name)) {
-                        dirsIncluded.addElement(name);
+                        record(dirsIncluded, name, task);
                         if (fast) {
-                            scandir(file, name+File.separator, fast);
+                            descend(file, name+File.separator, fast, task);
                         }
                     } else {
-                        dirsExcluded.addElement(name);
+                        record(dirsExcluded, name, task);
                     }
                 } else {
-                    dirsNotIncluded.addElement(name);
+                    record(dirsNotIncluded, name, task);
                     if (fast && couldHoldIncluded(name)) {
-                        scandir(file, name+File.separator, fast);
+                        descend(file, name+File.separator, fast, task);
                     }
                 }
                 if (!fast) {
-                    scandir(file, name+File.separator, fast);
+                    descend(file, name+File.separator, fast, task);
                 }
-            } else if (file.isFile()) {
+            } else if (types != null 
+                       ? types[i] == ScanIndex.FILE : file.isFile()) {
                 if (isIncluded(name)) {
                     if (!isExcluded(name)) {
-                        filesIncluded.addElement(name);
+                        record(filesIncluded, name, task);
                     } else {
-                        filesExcluded.addElement(name);
+                        record(filesExcluded, name, task);
                     }
                 } else {
-                    filesNotIncluded.addElement(name);
+                    record(filesNotIncluded, name, task);
                 }
             }
         }
@@ -778,6 +941,230 @@ strLoop:
 
 
 
+    /**
+     * Adds a name to one of the result Vectors, or records it in the
+     * task of a parallel walk.
+     */
+    private void record(Vector v, String name, ScanTask task) {
+        if (task == null) {
+            v.addElement(name);
+        } else {
+            task.record(v, name);
+        }
+    }
+
+    /**
+     * Scans a subdirectory, or hands it to the parallel walk of the
+     * task.
+     */
+    private void descend(File dir, String vpath, boolean fast, ScanTask task) {
+        if (task == null) {
+            scandir(dir, vpath, fast);
+        } else {
+            task.fork(dir, vpath);
+        }
+    }
+
+    /**
+     * Scans the directory trees starting at the given directories
+     * using as many threads as have been configured.
+     */
+    private void walk(File[] dirs, String[] vpaths, boolean fast) {
+        if (threadCount < 2 || dirs.length == 0) {
+            for (int i = 0; i < dirs.length; i++) {
+                scandir(dirs[i], vpaths[i], fast);
+            }
+        } else {
+            new ParallelWalk(fast).walk(dirs, vpaths);
+        }
+    }
+
+    /**
+     * Scans a directory tree with several threads.
+     *
+     * <p>Each directory is scanned by a {@link ScanTask ScanTask} that
+     * records its results instead of adding them to the result
+     * Vectors. Once all directories have been scanned, the recorded
+     * results are merged in the order a recursive scan would have
+     * produced them.</p>
+     *
+     * <p>Workers go through the overridable {@link #scandir(File,
+     * String, boolean) scandir} method, which finds the task of the
+     * current thread in {@link #scanTasks scanTasks}.</p>
+     */
+    private class ParallelWalk {
+        private boolean fast;
+        private Vector queue = new Vector();
+        private int unfinished = 0;
+        private Throwable error = null;
+
+        ParallelWalk(boolean fast) {
+            this.fast = fast;
+        }
+
+        void walk(File[] dirs, String[] vpaths) {
+            ScanTask[] roots = new ScanTask[dirs.length];
+            for (int i = 0; i < dirs.length; i++) {
+                roots[i] = submit(dirs[i], vpaths[i]);
+            }
+
+            Thread[] workers = new Thread[threadCount];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(new Runnable() {
+                        public void run() {
+                            work();
+                        }
+                    }, "ant-scan-" + (i + 1));
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+
+            for (int i = 0; i < workers.length; i++) {
+                while (workers[i].isAlive()) {
+                    try {
+                        workers[i].join();
+                    } catch (InterruptedException e) {
+                        fail(new BuildException("Interrupted while scanning "
+                                                + dirs[0].getAbsolutePath()));
+                    }
+                }
+            }
+
+            if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+            for (int i = 0; i < roots.length; i++) {
+                roots[i].merge();
+            }
+        }
+
+        synchronized ScanTask submit(File dir, String vpath) {
+            ScanTask task = new ScanTask(this, dir, vpath);
+            queue.addElement(task);
+            unfinished++;
+            notifyAll();
+            return task;
+        }
+
+        private void work() {
+            Thread current = Thread.currentThread();
+            ScanTask task;
+            while ((task = take()) != null) {
+                Throwable failure = null;
+                scanTasks.put(current, task);
+                try {
+                    scandir(task.dir, task.vpath, fast);
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    scanTasks.remove(current);
+                    finished(failure);
+                }
+            }
+        }
+
+        private synchronized ScanTask take() {
+            while (error == null && unfinished > 0) {
+                int size = queue.size();
+                if (size > 0) {
+                    // take the most recent directory, this keeps the
+                    // walk close to a depth first traversal
+                    ScanTask task = (ScanTask) queue.elementAt(size - 1);
+                    queue.removeElementAt(size - 1);
+                    return task;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    error = new BuildException("Interrupted while scanning directories");
+                }
+            }
+            notifyAll();
+            return null;
+        }
+
+        private synchronized void finished(Throwable failure) {
+            unfinished--;
+            if (failure != null) {
+                fail(failure);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Stops the walk, the first error is the one reported.
+         */
+        private synchronized void fail(Throwable failure) {
+            if (error == null) {
+                error = failure;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * The results of scanning a single directory during a parallel
+     * walk, in the order they have been found.
+     */
+    private class ScanTask {
+        private ParallelWalk walk;
+        private File dir;
+        private String vpath;
+
+        /**
+         * Holds pairs of result Vector and name as well as ScanTasks
+         * for subdirectories.
+         */
+        private Vector results = new Vector();
+
+        ScanTask(ParallelWalk walk, File dir, String vpath) {
+            this.walk = walk;
+            this.dir = dir;
+            this.vpath = vpath;
+        }
+
+        void record(Vector v, String name) {
+            results.addElement(v);
+            results.addElement(name);
+        }
+
+        void fork(File subdir, String subpath) {
+            results.addElement(walk.submit(subdir, subpath));
+        }
+
+        /**
+         * Adds the results of this directory and its subdirectories
+         * to the result Vectors.
+         */
+        void merge() {
+            for (int i = 0; i < results.size(); i++) {
+                Object o = results.elementAt(i);
+                if (o instanceof ScanTask) {
+                    ((ScanTask) o).merge();
+                } else {
+                    ((Vector) o).addElement(results.elementAt(++i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles the include and exclude patterns into matchers, unless
+     * the current arrays have already been compiled.
+     */
+    private void compilePatterns() {
+        if (includes != null && includes != includeMatcherPatterns) {
+            includeMatcher = new PatternMatcher(includes);
+            includeMatcherPatterns = includes;
+        }
+        if (excludes != null && excludes != excludeMatcherPatterns) {
+            excludeMatcher = new PatternMatcher(excludes);
+            excludeMatcherPatterns = excludes;
+        }
+    }
+
     /**
      * Tests whether a name matches against at least one include pattern.
      *
@@ -786,12 +1173,8 @@ strLoop:
      *         include pattern, <code>false</code> otherwise.
      */
     protected boolean isIncluded(String name) {
-        for (int i = 0; i < includes.length; i++) {
-            if (matchPath(includes[i],name)) {
-                return true;
-            }
-        }
-        return false;
+        compilePatterns();
+        return includeMatcher.matches(name);
     }
 
     /**
@@ -802,12 +1185,8 @@ strLoop:
      *         include pattern, <code>false</code> otherwise.
      */
     protected boolean couldHoldIncluded(String name) {
-        for (int i = 0; i < includes.length; i++) {
-            if (matchPatternStart(includes[i],name)) {
-                return true;
-            }
-        }
-        return false;
+        compilePatterns();
+        return includeMatcher.matchesStart(name);
     }
 
     /**
@@ -818,12 +1197,8 @@ strLoop:
      *         exclude pattern, <code>false</code> otherwise.
      */
     protected boolean isExcluded(String name) {
-        for (int i = 0; i < excludes.length; i++) {
-            if (matchPath(excludes[i],name)) {
-                return true;
-            }
-        }
-        return false;
+        compilePatterns();
+        return excludeMatcher.matches(name);
     }
 
 
@@ -954,6 +1329,7 @@ strLoop:
             newExcludes[i+excludesLength] = DEFAULTEXCLUDES[i].replace('/',File.separatorChar).replace('\\',File.separatorChar);
         }
         excludes = newExcludes;
+        compilePatterns();
     }
 
 }
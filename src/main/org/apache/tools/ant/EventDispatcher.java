@@ -0,0 +1,322 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.ant;
+
+import java.util.Vector;
+
+/**
+ * Delivers build events to the listeners of a project on a thread of
+ * its own.
+ *
+ * <p>Events are kept in a queue of fixed size and handed to the
+ * listeners in the order they have been fired. The dispatcher thread
+ * takes all events that are waiting at once and delivers consecutive
+ * events for the same listeners while holding the monitor of the
+ * listeners Vector only once.</p>
+ *
+ * <p>If the queue is full, the thread firing the event waits for the
+ * dispatcher to catch up. If messages may be discarded, message
+ * events are dropped instead - all other events are always
+ * delivered.</p>
+ */
+class EventDispatcher implements Runnable {
+
+    static final int BUILD_STARTED = 0;
+    static final int BUILD_FINISHED = 1;
+    static final int TARGET_STARTED = 2;
+    static final int TARGET_FINISHED = 3;
+    static final int TASK_STARTED = 4;
+    static final int TASK_FINISHED = 5;
+    static final int MESSAGE_LOGGED = 6;
+
+    /** the queue, a ring buffer of count entries starting at head */
+    private int[] types;
+    private BuildEvent[] events;
+    private Vector[] listenerLists;
+    private int head = 0;
+    private int count = 0;
+
+    private boolean discardMessages;
+    private int discarded = 0;
+
+    /** whether the dispatcher is delivering events taken from the queue */
+    private boolean busy = false;
+    private boolean stopped = false;
+    /** first exception or error a listener has thrown */
+    private Throwable failure;
+    private Thread thread;
+
+    EventDispatcher(int queueSize, boolean discardMessages) {
+        types = new int[queueSize];
+        events = new BuildEvent[queueSize];
+        listenerLists = new Vector[queueSize];
+        this.discardMessages = discardMessages;
+        thread = new Thread(this, "Ant event dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Notifies the given listeners of an event.
+     *
+     * <p>Events fired by the listeners themselves are delivered
+     * immediately.</p>
+     */
+    void dispatch(int type, BuildEvent event, Vector listeners) {
+        if (Thread.currentThread() == thread) {
+            deliver(type, event, listeners);
+            return;
+        }
+        synchronized (this) {
+            checkFailure();
+            while (count == types.length && !stopped) {
+                if (discardMessages && type == MESSAGE_LOGGED) {
+                    discarded++;
+                    return;
+                }
+                waitForDispatcher();
+            }
+            if (!stopped) {
+                int tail = (head + count) % types.length;
+                types[tail] = type;
+                events[tail] = event;
+                listenerLists[tail] = listeners;
+                count++;
+                notifyAll();
+                return;
+            }
+        }
+        deliver(type, event, listeners);
+    }
+
+    /**
+     * Waits until all events fired so far have been delivered.
+     */
+    void flush() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        synchronized (this) {
+            while ((count > 0 || busy) && !stopped) {
+                waitForDispatcher();
+            }
+            checkFailure();
+        }
+    }
+
+    /**
+     * Delivers all outstanding events and ends the dispatcher thread.
+     *
+     * @return the number of message events that have been discarded.
+     */
+    int stop() {
+        flush();
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+            }
+        }
+        synchronized (this) {
+            return discarded;
+        }
+    }
+
+    /**
+     * Delivers events until stopped or a listener has thrown an
+     * Error - events are delivered by the firing threads from then
+     * on.
+     */
+    public void run() {
+        try {
+            dispatchQueued();
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                busy = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void dispatchQueued() {
+        int[] batchTypes = new int[types.length];
+        BuildEvent[] batchEvents = new BuildEvent[types.length];
+        Vector[] batchListeners = new Vector[types.length];
+
+        while (true) {
+            int size;
+            synchronized (this) {
+                busy = false;
+                notifyAll();
+                while (count == 0 && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+                if (count == 0) {
+                    return;
+                }
+                size = count;
+                for (int i = 0; i < size; i++) {
+                    int index = (head + i) % types.length;
+                    batchTypes[i] = types[index];
+                    batchEvents[i] = events[index];
+                    batchListeners[i] = listenerLists[index];
+                    events[index] = null;
+                    listenerLists[index] = null;
+                }
+                head = (head + size) % types.length;
+                count = 0;
+                busy = true;
+                notifyAll();
+            }
+
+            int start = 0;
+            while (start < size) {
+                Vector listeners = batchListeners[start];
+                int end = start + 1;
+                while (end < size && batchListeners[end] == listeners) {
+                    end++;
+                }
+                synchronized (listeners) {
+                    for (int i = start; i < end; i++) {
+                        try {
+                            deliver(batchTypes[i], batchEvents[i], listeners);
+                        } catch (RuntimeException e) {
+                            fail(e);
+                        } catch (Error e) {
+                            // most likely out of memory, don't go on
+                            fail(e);
+                            return;
+                        }
+                    }
+                }
+                for (int i = start; i < end; i++) {
+                    batchEvents[i] = null;
+                    batchListeners[i] = null;
+                }
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of a single event on the current thread.
+     */
+    static void deliver(int type, BuildEvent event, Vector listeners) {
+        synchronized (listeners) {
+            for (int i = 0; i < listeners.size(); i++) {
+                BuildListener listener = (BuildListener) listeners.elementAt(i);
+                switch (type) {
+                case BUILD_STARTED:
+                    listener.buildStarted(event);
+                    break;
+                case BUILD_FINISHED:
+                    listener.buildFinished(event);
+                    break;
+                case TARGET_STARTED:
+                    listener.targetStarted(event);
+                    break;
+                case TARGET_FINISHED:
+                    listener.targetFinished(event);
+                    break;
+                case TASK_STARTED:
+                    listener.taskStarted(event);
+                    break;
+                case TASK_FINISHED:
+                    listener.taskFinished(event);
+                    break;
+                default:
+                    listener.messageLogged(event);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws the first exception a listener has thrown on the
+     * dispatcher thread in the thread that fires the next event.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            Throwable t = failure;
+            failure = null;
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw (RuntimeException) t;
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+
+    private void waitForDispatcher() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+        }
+    }
+}
@@ -73,22 +73,22 @@ public class IntrospectionHelper  {
     /**
      * holds the types of the attributes that could be set.
      */
-    private Hashtable attributeTypes;
+    private Table attributeTypes;
 
     /**
      * holds the attribute setter methods.
      */
-    private Hashtable attributeSetters;
+    private Table attributeSetters;
 
     /**
      * Holds the types of nested elements that could be created.
      */
-    private Hashtable nestedTypes;
+    private Table nestedTypes;
 
     /**
      * Holds methods to create nested elements.
      */
-    private Hashtable nestedCreators;
+    private Table nestedCreators;
 
     /**
      * The method to add PCDATA stuff.
@@ -101,20 +101,21 @@ public class IntrospectionHelper  {
     private Class bean;
 
     /**
-     * instances we've already created
+     * instances we've already created, except for classes defined by
+     * an AntClassLoader - those are kept by their loader.
      */
-    private static Hashtable helpers = new Hashtable();
+    private static Cache helpers = new Cache();
 
     private IntrospectionHelper(final Class bean) {
-        attributeTypes = new Hashtable();
-        attributeSetters = new Hashtable();
-        nestedTypes = new Hashtable();
-        nestedCreators = new Hashtable();
+        Hashtable attributeTypes = new Hashtable();
+        Hashtable attributeSetters = new Hashtable();
+        Hashtable nestedTypes = new Hashtable();
+        Hashtable nestedCreators = new Hashtable();
         this.bean = bean;
 
         Method[] methods = bean.getMethods();
         for (int i=0; i<methods.length; i++) {
-            final Method m = methods[i];
+            Method m = methods[i];
             final String name = m.getName();
             Class returnType = m.getReturnType();
             Class[] args = m.getParameterTypes();
@@ -158,16 +159,7 @@ public class IntrospectionHelper  {
 
                 String propName = getPropertyName(name, "create");
                 nestedTypes.put(propName, returnType);
-                nestedCreators.put(propName, new NestedCreator() {
-
-                        public Object create(Object parent) 
-                            throws InvocationTargetException, 
-                            IllegalAccessException {
-
-                            return m.invoke(parent, new Object[] {});
-                        }
-
-                    });
+                nestedCreators.put(propName, new NestedCreator(m, null));
                 
             } else if (name.startsWith("add")
                        && java.lang.Void.TYPE.equals(returnType)
@@ -177,38 +169,35 @@ public class IntrospectionHelper  {
                        && !args[0].isPrimitive()) {
                  
                 try {
-                    final Constructor c = 
+                    Constructor c = 
                         args[0].getConstructor(new Class[] {});
                     String propName = getPropertyName(name, "add");
                     nestedTypes.put(propName, args[0]);
-                    nestedCreators.put(propName, new NestedCreator() {
-
-                            public Object create(Object parent) 
-                                throws InvocationTargetException, IllegalAccessException, InstantiationException {
-                                
-                                Object o = c.newInstance(new Object[] {});
-                                m.invoke(parent, new Object[] {o});
-                                return o;
-                            }
-
-                        });
+                    nestedCreators.put(propName, new NestedCreator(m, c));
                 } catch (NoSuchMethodException nse) {
                 }
                     
             }
         }
+
+        // never modified from here on, so they can be read without
+        // locking
+        this.attributeTypes = new Table(attributeTypes);
+        this.attributeSetters = new Table(attributeSetters);
+        this.nestedTypes = new Table(nestedTypes);
+        this.nestedCreators = new Table(nestedCreators);
     }
     
     /**
      * Factory method for helper objects.
      */
-    public synchronized static IntrospectionHelper getHelper(Class c) {
-        IntrospectionHelper ih = (IntrospectionHelper) helpers.get(c);
-        if (ih == null) {
-            ih = new IntrospectionHelper(c);
-            helpers.put(c, ih);
+    public static IntrospectionHelper getHelper(Class c) {
+        ClassLoader loader = c.getClassLoader();
+        if (loader instanceof AntClassLoader) {
+            // don't keep classes of loaders that are no longer used alive
+            return ((AntClassLoader) loader).helpers.getHelper(c);
         }
-        return ih;
+        return helpers.getHelper(c);
     }
 
     /**
@@ -341,158 +330,63 @@ public class IntrospectionHelper  {
      * Create a proper implementation of AttributeSetter for the given
      * attribute type.  
      */
-    private AttributeSetter createAttributeSetter(final Method m,
-                                                  final Class arg) {
+    private AttributeSetter createAttributeSetter(Method m, Class arg) {
 
         // simplest case - setAttribute expects String
         if (java.lang.String.class.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new String[] {value});
-                    }
-                };
+            return new AttributeSetter(m, AttributeSetter.STRING);
 
         // now for the primitive types, use their wrappers
         } else if (java.lang.Character.class.equals(arg)
                    || java.lang.Character.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Character[] {new Character(value.charAt(0))});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.CHARACTER);
         } else if (java.lang.Byte.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Byte[] {new Byte(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.BYTE);
         } else if (java.lang.Short.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Short[] {new Short(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.SHORT);
         } else if (java.lang.Integer.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Integer[] {new Integer(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.INTEGER);
         } else if (java.lang.Long.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Long[] {new Long(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.LONG);
         } else if (java.lang.Float.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Float[] {new Float(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.FLOAT);
         } else if (java.lang.Double.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Double[] {new Double(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.DOUBLE);
 
         // boolean gets an extra treatment, because we have a nice method 
         // in Project
         } else if (java.lang.Boolean.class.equals(arg) 
                    || java.lang.Boolean.TYPE.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, 
-                                 new Boolean[] {new Boolean(Project.toBoolean(value))});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.BOOLEAN);
 
         // Class doesn't have a String constructor but a decent factory method
         } else if (java.lang.Class.class.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException, BuildException {
-                        try {
-                            m.invoke(parent, new Class[] {Class.forName(value)});
-                        } catch (ClassNotFoundException ce) {
-                            throw new BuildException(ce);
-                        }
-                    }
-                };
+            return new AttributeSetter(m, AttributeSetter.CLASS);
 
         // resolve relative paths through Project
         } else if (java.io.File.class.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new File[] {p.resolveFile(value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.FILE);
 
         // resolve relative paths through Project
         } else if (org.apache.tools.ant.types.Path.class.equals(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException {
-                        m.invoke(parent, new Path[] {new Path(p, value)});
-                    }
-
-                };
+            return new AttributeSetter(m, AttributeSetter.PATH);
 
         // EnumeratedAttributes have their own helper class
         } else if (org.apache.tools.ant.types.EnumeratedAttribute.class.isAssignableFrom(arg)) {
-            return new AttributeSetter() {
-                    public void set(Project p, Object parent, String value) 
-                        throws InvocationTargetException, IllegalAccessException, BuildException {
-                        try {
-                            org.apache.tools.ant.types.EnumeratedAttribute ea = (org.apache.tools.ant.types.EnumeratedAttribute)arg.newInstance();
-                            ea.setValue(value);
-                            m.invoke(parent, new EnumeratedAttribute[] {ea});
-                        } catch (InstantiationException ie) {
-                            throw new BuildException(ie);
-                        }
-                    }
-                };
-        
+            AttributeSetter as = 
+                new AttributeSetter(m, AttributeSetter.ENUMERATED);
+            as.type = arg;
+            return as;
 
         // worst case. look for a public String constructor and use it
         } else {
 
             try {
-                final Constructor c = 
+                AttributeSetter as = 
+                    new AttributeSetter(m, AttributeSetter.CONSTRUCTOR);
+                as.constructor = 
                     arg.getConstructor(new Class[] {java.lang.String.class});
-
-                return new AttributeSetter() {
-                        public void set(Project p, Object parent, 
-                                        String value) 
-                            throws InvocationTargetException, IllegalAccessException, BuildException {
-                            try {
-                                m.invoke(parent, new Object[] {c.newInstance(new String[] {value})});
-                            } catch (InstantiationException ie) {
-                                throw new BuildException(ie);
-                            }
-                        }
-                    };
-                
+                return as;
             } catch (NoSuchMethodException nme) {
             }
         }
@@ -509,13 +403,242 @@ public class IntrospectionHelper  {
         return methodName.substring(start).toLowerCase();
     }
 
-    private interface NestedCreator {
-        public Object create(Object parent) 
-            throws InvocationTargetException, IllegalAccessException, InstantiationException;
+    /**
+     * A cache of helper objects.
+     *
+     * <p>Lookups don't lock, adding a helper replaces the whole
+     * table.</p>
+     */
+    static final class Cache {
+        private volatile Table table = new Table(new Hashtable());
+
+        IntrospectionHelper getHelper(Class c) {
+            IntrospectionHelper ih = (IntrospectionHelper) table.get(c);
+            if (ih == null) {
+                ih = new IntrospectionHelper(c);
+                synchronized (this) {
+                    IntrospectionHelper other = 
+                        (IntrospectionHelper) table.get(c);
+                    if (other != null) {
+                        // some other thread has been faster
+                        return other;
+                    }
+                    table = new Table(table, c, ih);
+                }
+            }
+            return ih;
+        }
     }
-    private interface AttributeSetter {
-        public void set(Project p, Object parent, String value)
+
+    /**
+     * An immutable hash table that can be read by several threads
+     * without locking.
+     */
+    private static final class Table {
+        private final Object[] keys;
+        private final Object[] values;
+        private final int mask;
+
+        Table(Hashtable h) {
+            this(h.size());
+            Enumeration e = h.keys();
+            while (e.hasMoreElements()) {
+                Object key = e.nextElement();
+                insert(key, h.get(key));
+            }
+        }
+
+        /**
+         * A copy of base with an additional entry.
+         */
+        Table(Table base, Object key, Object value) {
+            this(base.size() + 1);
+            for (int i = 0; i < base.keys.length; i++) {
+                if (base.keys[i] != null) {
+                    insert(base.keys[i], base.values[i]);
+                }
+            }
+            insert(key, value);
+        }
+
+        private Table(int size) {
+            // keep the load factor at or below one half
+            int capacity = 2;
+            while (capacity < 2 * size) {
+                capacity <<= 1;
+            }
+            keys = new Object[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        private void insert(Object key, Object value) {
+            int i = index(key);
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private int index(Object key) {
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        Object get(Object key) {
+            int i = index(key);
+            Object k;
+            while ((k = keys[i]) != null) {
+                if (k.equals(key)) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        int size() {
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        Enumeration keys() {
+            Vector v = new Vector(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    v.addElement(keys[i]);
+                }
+            }
+            return v.elements();
+        }
+    }
+
+    /**
+     * Creates a nested element, either by invoking a createXXX method
+     * or by instantiating the argument of an addXXX method and passing
+     * the new instance to it.
+     */
+    private static final class NestedCreator {
+        private Method method;
+        private Constructor constructor;
+
+        /**
+         * @param c the constructor to use for addXXX methods, null
+         * for createXXX methods.
+         */
+        NestedCreator(Method m, Constructor c) {
+            method = m;
+            constructor = c;
+        }
+
+        Object create(Object parent) 
+            throws InvocationTargetException, IllegalAccessException, 
+                   InstantiationException {
+            if (constructor == null) {
+                return method.invoke(parent, new Object[0]);
+            }
+            Object o = constructor.newInstance(new Object[0]);
+            method.invoke(parent, new Object[] {o});
+            return o;
+        }
+    }
+
+    /**
+     * Converts the value of an attribute to the argument type of its
+     * setter and invokes the setter.
+     *
+     * <p>A single class with a precomputed conversion, rather than a
+     * class per argument type, keeps the call in {@link
+     * IntrospectionHelper#setAttribute setAttribute} monomorphic.</p>
+     */
+    private static final class AttributeSetter {
+        static final int STRING = 0;
+        static final int CHARACTER = 1;
+        static final int BYTE = 2;
+        static final int SHORT = 3;
+        static final int INTEGER = 4;
+        static final int LONG = 5;
+        static final int FLOAT = 6;
+        static final int DOUBLE = 7;
+        static final int BOOLEAN = 8;
+        static final int CLASS = 9;
+        static final int FILE = 10;
+        static final int PATH = 11;
+        static final int ENUMERATED = 12;
+        static final int CONSTRUCTOR = 13;
+
+        private Method method;
+        private int conversion;
+        /** the EnumeratedAttribute subclass to instantiate */
+        private Class type;
+        /** the String constructor of the argument type */
+        private Constructor constructor;
+
+        AttributeSetter(Method m, int conversion) {
+            method = m;
+            this.conversion = conversion;
+        }
+
+        void set(Project p, Object parent, String value)
             throws InvocationTargetException, IllegalAccessException, 
-                   BuildException;
+                   BuildException {
+            method.invoke(parent, new Object[] {convert(p, value)});
+        }
+
+        private Object convert(Project p, String value) 
+            throws InvocationTargetException, IllegalAccessException, 
+                   BuildException {
+            switch (conversion) {
+            case STRING:
+                return value;
+            case CHARACTER:
+                return new Character(value.charAt(0));
+            case BYTE:
+                return new Byte(value);
+            case SHORT:
+                return new Short(value);
+            case INTEGER:
+                return new Integer(value);
+            case LONG:
+                return new Long(value);
+            case FLOAT:
+                return new Float(value);
+            case DOUBLE:
+                return new Double(value);
+            case BOOLEAN:
+                return Project.toBoolean(value) ? Boolean.TRUE : Boolean.FALSE;
+            case CLASS:
+                try {
+                    return Class.forName(value);
+                } catch (ClassNotFoundException ce) {
+                    throw new BuildException(ce);
+                }
+            case FILE:
+                return p.resolveFile(value);
+            case PATH:
+                return new Path(p, value);
+            case ENUMERATED:
+                try {
+                    EnumeratedAttribute ea = 
+                        (EnumeratedAttribute) type.newInstance();
+                    ea.setValue(value);
+                    return ea;
+                } catch (InstantiationException ie) {
+                    throw new BuildException(ie);
+                }
+            default:
+                try {
+                    return constructor.newInstance(new Object[] {value});
+                } catch (InstantiationException ie) {
+                    throw new BuildException(ie);
+                }
+            }
+        }
     }
 }
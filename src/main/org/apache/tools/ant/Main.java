@@ -103,6 +103,11 @@ public class Main {
      */
     private String loggerClassname = null;
 
+    /**
+     * The maximum number of targets to execute concurrently.
+     */
+    private int threadCount = 1;
+
     /**
      * Indicates whether output to the log is to be unadorned.
      */
@@ -248,6 +253,21 @@ public class Main {
                     return;
                 }
                 loggerClassname = args[++i];
+            } else if (arg.equals("-parallel")) {
+                try {
+                    threadCount = Integer.parseInt(args[i+1]);
+                    i++;
+                } catch (ArrayIndexOutOfBoundsException aioobe) {
+                    String msg = "You must specify the number of threads when " +
+                        "using the -parallel argument";
+                    System.out.println(msg);
+                    return;
+                } catch (NumberFormatException nfe) {
+                    String msg = "The -parallel argument expects a number, not " +
+                        args[i+1];
+                    System.out.println(msg);
+                    return;
+                }
             } else if (arg.equals("-emacs")) {
                 emacsMode = true;
             } else if (arg.equals("-projecthelp")) {
@@ -384,6 +404,7 @@ public class Main {
             project.fireBuildStarted();
 
             project.init();
+            project.setThreadCount(threadCount);
 
             // set user-define properties
             Enumeration e = definedProps.keys();
@@ -503,6 +524,7 @@ public class Main {
         msg.append("  -listener <classname>  add an instance of class as a project listener" + lSep);
         msg.append("  -buildfile <file>      use given buildfile" + lSep);
         msg.append("  -D<property>=<value>   use value for given property" + lSep);
+        msg.append("  -parallel <n>          run up to n independent targets at once" + lSep);
         System.out.println(msg.toString());
     }
 
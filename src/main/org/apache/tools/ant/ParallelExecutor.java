@@ -0,0 +1,210 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.util.*;
+
+/**
+ * Runs a topologically sorted sequence of targets on a bounded number
+ * of worker threads.
+ *
+ * <p>A target is handed to a worker as soon as every target it
+ * depends on has finished. Once a target fails no further targets
+ * are started, the targets already running are allowed to complete
+ * and the first failure is rethrown to the caller.</p>
+ */
+class ParallelExecutor {
+
+    private Project project;
+    private int threadCount;
+
+    /** targets that have not been started yet, in sort order */
+    private Vector pending;
+
+    /** names of the targets that have finished successfully */
+    private Hashtable finished = new Hashtable();
+
+    /** number of targets currently executing */
+    private int running = 0;
+
+    /** the first failure, rethrown once all workers have stopped */
+    private Throwable failure = null;
+
+    /**
+     * @param project the project the targets belong to.
+     * @param sortedTargets the targets to run, dependencies first.
+     * @param threadCount the maximum number of targets to run at once.
+     */
+    ParallelExecutor(Project project, Vector sortedTargets, int threadCount) {
+        this.project = project;
+        this.pending = (Vector) sortedTargets.clone();
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Runs all targets and waits for them to finish.
+     *
+     * @exception BuildException the first failure of any target.
+     */
+    void execute() throws BuildException {
+        int count = Math.min(threadCount, pending.size());
+        Thread[] workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Thread(new Worker(), "ant-target-" + (i + 1));
+            workers[i].start();
+        }
+
+        for (int i = 0; i < count; i++) {
+            while (workers[i].isAlive()) {
+                try {
+                    workers[i].join();
+                } catch (InterruptedException e) {
+                    abort(new BuildException("Interrupted while waiting for targets", e));
+                }
+            }
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new BuildException(failure);
+        }
+    }
+
+    /**
+     * Hands out the next target whose dependencies have all finished,
+     * blocking until one becomes available.
+     *
+     * @return the target to run or null if the worker should stop.
+     */
+    private synchronized Target nextTarget() {
+        while (failure == null && pending.size() > 0) {
+            for (int i = 0; i < pending.size(); i++) {
+                Target t = (Target) pending.elementAt(i);
+                if (isReady(t)) {
+                    pending.removeElementAt(i);
+                    running++;
+                    return t;
+                }
+            }
+
+            if (running == 0) {
+                // nothing runs that could ever release a waiting target
+                failure = new BuildException("Unable to schedule target `"
+                                             + pending.elementAt(0) + "'");
+                break;
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                abort(new BuildException("Interrupted while scheduling targets", e));
+            }
+        }
+        notifyAll();
+        return null;
+    }
+
+    private boolean isReady(Target target) {
+        for (Enumeration e = target.getDependencies(); e.hasMoreElements();) {
+            if (finished.get(e.nextElement()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void targetDone(Target target, Throwable error) {
+        running--;
+        if (error == null) {
+            finished.put(target.getName(), target);
+            notifyAll();
+        } else {
+            abort(error);
+        }
+    }
+
+    /**
+     * Records the first failure and wakes up all waiting workers so
+     * they can stop.
+     */
+    private synchronized void abort(Throwable error) {
+        if (failure == null) {
+            failure = error;
+        }
+        notifyAll();
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            Target target;
+            while ((target = nextTarget()) != null) {
+                Throwable error = null;
+                try {
+                    project.runTarget(target);
+                } catch (RuntimeException exc) {
+                    error = exc;
+                } catch (Error err) {
+                    error = err;
+                } finally {
+                    targetDone(target, error);
+                }
+            }
+        }
+    }
+}
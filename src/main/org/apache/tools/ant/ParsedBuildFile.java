@@ -0,0 +1,452 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.util.*;
+import org.xml.sax.AttributeList;
+import org.xml.sax.DocumentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * The SAX events of a build file, recorded while {@link ProjectHelper
+ * ProjectHelper} parses it, so that later configurations of a
+ * project from the same, unchanged file can replay them instead of
+ * parsing the file again.
+ *
+ * <p>Recordings are kept in memory for the lifetime of the VM and can
+ * optionally be written to a directory so they survive it, which is
+ * why ProjectHelper only records build files if the property
+ * ant.parsecache is true. A
+ * recording is only used as long as the build file and all external
+ * entities it includes still have the size and modification time
+ * they've had when the recording was made.</p>
+ */
+public class ParsedBuildFile {
+
+    /**
+     * Files modified less than this number of milliseconds before
+     * they've been recorded are not trusted, as a change within the
+     * timestamp granularity of the file system wouldn't be visible.
+     */
+    private static final long GRANULARITY = 2000;
+
+    private static final int MAGIC = 0x416e7450;
+    private static final int VERSION = 2;
+
+    private static final byte START = 0;
+    private static final byte END = 1;
+    private static final byte TEXT = 2;
+
+    /** absolute path -> ParsedBuildFile */
+    private static Hashtable recordings = new Hashtable();
+
+    private String path;
+    private long recorded;
+
+    /** The build file and all included files. */
+    private Vector files = new Vector();
+    private Vector lastModified = new Vector();
+    private Vector lengths = new Vector();
+
+    private Vector events = new Vector();
+
+    /**
+     * A single SAX event together with its location.
+     */
+    private static class Event {
+        byte type;
+        /** the file the event came from, may be an external entity */
+        String systemId;
+        int line;
+        int column;
+        String name;
+        Attributes attributes;
+        String text;
+    }
+
+    /**
+     * The attributes of a recorded start tag.
+     */
+    private static class Attributes implements AttributeList {
+        String[] names;
+        String[] types;
+        String[] values;
+
+        Attributes(int length) {
+            names = new String[length];
+            types = new String[length];
+            values = new String[length];
+        }
+
+        public int getLength() {
+            return names.length;
+        }
+
+        public String getName(int i) {
+            return i >= 0 && i < names.length ? names[i] : null;
+        }
+
+        public String getType(int i) {
+            return i >= 0 && i < types.length ? types[i] : null;
+        }
+
+        public String getValue(int i) {
+            return i >= 0 && i < values.length ? values[i] : null;
+        }
+
+        public String getType(String name) {
+            return getType(indexOf(name));
+        }
+
+        public String getValue(String name) {
+            return getValue(indexOf(name));
+        }
+
+        private int indexOf(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Starts a new recording for the given file.
+     */
+    public ParsedBuildFile(File buildFile) {
+        path = buildFile.getAbsolutePath();
+        recorded = System.currentTimeMillis();
+        addFile(buildFile);
+    }
+
+    private ParsedBuildFile() {
+    }
+
+    /**
+     * The recording for the given file, null if there is none or
+     * the file has been changed since it has been recorded.
+     *
+     * @param cacheDir directory recordings have been written to, may
+     *                 be null.
+     */
+    public static ParsedBuildFile getInstance(File buildFile, File cacheDir) {
+        String path = buildFile.getAbsolutePath();
+        ParsedBuildFile p = (ParsedBuildFile) recordings.get(path);
+        if (p == null && cacheDir != null) {
+            p = load(getCacheFile(cacheDir, path), path);
+            if (p != null) {
+                recordings.put(path, p);
+            }
+        }
+        if (p != null && !p.isUpToDate()) {
+            recordings.remove(path);
+            p = null;
+        }
+        return p;
+    }
+
+    /**
+     * Keeps the recording for later use.
+     *
+     * @param cacheDir directory to write the recording to, may be
+     *                 null.
+     */
+    public static void store(ParsedBuildFile p, File cacheDir) 
+        throws IOException {
+        recordings.put(p.path, p);
+        if (cacheDir != null) {
+            p.save(getCacheFile(cacheDir, p.path));
+        }
+    }
+
+    /**
+     * Adds a file included by the build file, a change of it
+     * invalidates the recording.
+     */
+    public void addFile(File file) {
+        files.addElement(file.getAbsolutePath());
+        lastModified.addElement(new Long(file.lastModified()));
+        lengths.addElement(new Long(file.length()));
+    }
+
+    public void startElement(String name, AttributeList attrs, 
+                             Locator locator) {
+        Event e = createEvent(START, locator);
+        e.name = name;
+        e.attributes = new Attributes(attrs.getLength());
+        for (int i = 0; i < attrs.getLength(); i++) {
+            e.attributes.names[i] = attrs.getName(i);
+            e.attributes.types[i] = attrs.getType(i);
+            e.attributes.values[i] = attrs.getValue(i);
+        }
+        events.addElement(e);
+    }
+
+    public void endElement(String name, Locator locator) {
+        Event e = createEvent(END, locator);
+        e.name = name;
+        events.addElement(e);
+    }
+
+    public void characters(char[] buf, int start, int length, 
+                           Locator locator) {
+        Event e = createEvent(TEXT, locator);
+        e.text = new String(buf, start, length);
+        events.addElement(e);
+    }
+
+    /**
+     * Sends the recorded events to the given handler.
+     */
+    public void replay(DocumentHandler handler) throws SAXException {
+        String buildFile = new File(path).toString();
+        LocatorImpl locator = new LocatorImpl();
+        locator.setSystemId(buildFile);
+        handler.setDocumentLocator(locator);
+        for (int i = 0; i < events.size(); i++) {
+            Event e = (Event) events.elementAt(i);
+            locator.setSystemId(e.systemId != null ? e.systemId : buildFile);
+            locator.setLineNumber(e.line);
+            locator.setColumnNumber(e.column);
+            if (e.type == START) {
+                handler.startElement(e.name, e.attributes);
+            } else if (e.type == END) {
+                handler.endElement(e.name);
+            } else {
+                char[] buf = e.text.toCharArray();
+                handler.characters(buf, 0, buf.length);
+            }
+        }
+    }
+
+    /**
+     * Whether none of the recorded files has changed.
+     */
+    private boolean isUpToDate() {
+        for (int i = 0; i < files.size(); i++) {
+            File f = new File((String) files.elementAt(i));
+            long modified = ((Long) lastModified.elementAt(i)).longValue();
+            if (modified == 0 || f.lastModified() != modified
+                || f.length() != ((Long) lengths.elementAt(i)).longValue()
+                || recorded - modified < GRANULARITY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Event createEvent(byte type, Locator locator) {
+        Event e = new Event();
+        e.type = type;
+        if (locator != null) {
+            e.systemId = shareSystemId(locator.getSystemId());
+            e.line = locator.getLineNumber();
+            e.column = locator.getColumnNumber();
+        }
+        return e;
+    }
+
+    /**
+     * The systemId of the previous event if it is the same, so
+     * events don't hold copies of the same String.
+     */
+    private String shareSystemId(String systemId) {
+        if (!events.isEmpty()) {
+            String last = ((Event) events.lastElement()).systemId;
+            if (last != null && last.equals(systemId)) {
+                return last;
+            }
+        }
+        return systemId;
+    }
+
+    private static File getCacheFile(File cacheDir, String path) {
+        return new File(cacheDir, "build" 
+                        + Integer.toHexString(path.hashCode()) + ".parsed");
+    }
+
+    private void save(File cacheFile) throws IOException {
+        String parent = cacheFile.getParent();
+        if (parent != null) {
+            new File(parent).mkdirs();
+        }
+
+        DataOutputStream out = 
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+        boolean complete = false;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(path);
+            out.writeLong(recorded);
+            out.writeInt(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                out.writeUTF((String) files.elementAt(i));
+                out.writeLong(((Long) lastModified.elementAt(i)).longValue());
+                out.writeLong(((Long) lengths.elementAt(i)).longValue());
+            }
+            out.writeInt(events.size());
+            String systemId = null;
+            for (int i = 0; i < events.size(); i++) {
+                Event e = (Event) events.elementAt(i);
+                out.writeByte(e.type);
+                // only written when it differs from the previous event
+                boolean same = e.systemId == null 
+                    ? systemId == null : e.systemId.equals(systemId);
+                out.writeBoolean(same);
+                if (!same) {
+                    out.writeBoolean(e.systemId != null);
+                    if (e.systemId != null) {
+                        out.writeUTF(e.systemId);
+                    }
+                    systemId = e.systemId;
+                }
+                out.writeInt(e.line);
+                out.writeInt(e.column);
+                if (e.type == START) {
+                    out.writeUTF(e.name);
+                    Attributes attrs = e.attributes;
+                    out.writeInt(attrs.getLength());
+                    for (int j = 0; j < attrs.getLength(); j++) {
+                        out.writeUTF(attrs.names[j]);
+                        out.writeUTF(attrs.types[j]);
+                        out.writeUTF(attrs.values[j]);
+                    }
+                } else if (e.type == END) {
+                    out.writeUTF(e.name);
+                } else {
+                    out.writeUTF(e.text);
+                }
+            }
+            complete = true;
+        } finally {
+            out.close();
+            if (!complete) {
+                // don't leave a truncated recording behind
+                cacheFile.delete();
+            }
+        }
+    }
+
+    private static ParsedBuildFile load(File cacheFile, String path) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION 
+                || !path.equals(in.readUTF())) {
+                return null;
+            }
+
+            ParsedBuildFile p = new ParsedBuildFile();
+            p.path = path;
+            p.recorded = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                p.files.addElement(in.readUTF());
+                p.lastModified.addElement(new Long(in.readLong()));
+                p.lengths.addElement(new Long(in.readLong()));
+            }
+            count = in.readInt();
+            String systemId = null;
+            for (int i = 0; i < count; i++) {
+                Event e = new Event();
+                e.type = in.readByte();
+                if (!in.readBoolean()) {
+                    systemId = in.readBoolean() ? in.readUTF() : null;
+                }
+                e.systemId = systemId;
+                e.line = in.readInt();
+                e.column = in.readInt();
+                if (e.type == START) {
+                    e.name = in.readUTF();
+                    Attributes attrs = new Attributes(in.readInt());
+                    for (int j = 0; j < attrs.getLength(); j++) {
+                        attrs.names[j] = in.readUTF();
+                        attrs.types[j] = in.readUTF();
+                        attrs.values[j] = in.readUTF();
+                    }
+                    e.attributes = attrs;
+                } else if (e.type == END) {
+                    e.name = in.readUTF();
+                } else {
+                    e.text = in.readUTF();
+                }
+                p.events.addElement(e);
+            }
+            return p;
+        } catch (IOException e) {
+            // unusable recording, parse again
+        } catch (RuntimeException e) {
+            // corrupt recording, parse again
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+        return null;
+    }
+}
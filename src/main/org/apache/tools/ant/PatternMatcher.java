@@ -0,0 +1,628 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * A set of include or exclude patterns compiled for repeated matching.
+ *
+ * <p>The patterns are split into path segments once, when the matcher
+ * is created. Paths are then matched in place, without splitting
+ * them or copying their characters, using the same rules as {@link
+ * DirectoryScanner#matchPath DirectoryScanner.matchPath} and {@link
+ * DirectoryScanner#matchPatternStart
+ * DirectoryScanner.matchPatternStart}.</p>
+ *
+ * <p>To avoid testing every pattern against every path, patterns
+ * without any wildcards are kept in a lookup table and patterns
+ * starting with a literal segment are grouped by that segment, so
+ * only the patterns whose first segment equals the first segment of
+ * the path are tried.</p>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+public class PatternMatcher {
+
+    private static final char SEP = File.separatorChar;
+
+    /** patterns without any wildcard, pattern -> Boolean.TRUE */
+    private Hashtable literals = new Hashtable();
+
+    /** sorted, distinct literal first segments */
+    private String[] firstSegments;
+
+    /** patterns grouped by the first segment at the same index */
+    private CompiledPattern[][] byFirstSegment;
+
+    /** patterns starting with a wildcard segment */
+    private CompiledPattern[] general;
+
+    /** all patterns */
+    private CompiledPattern[] all;
+
+    /**
+     * @param patterns the patterns, using <code>File.separatorChar</code>
+     * as separator.
+     */
+    public PatternMatcher(String[] patterns) {
+        all = new CompiledPattern[patterns.length];
+        Hashtable groups = new Hashtable();
+        Vector wildcards = new Vector();
+
+        for (int i = 0; i < patterns.length; i++) {
+            CompiledPattern p = new CompiledPattern(patterns[i]);
+            all[i] = p;
+            if (p.isLiteral()) {
+                literals.put(patterns[i], Boolean.TRUE);
+            }
+
+            String first = p.getLiteralFirstSegment();
+            if (first == null) {
+                wildcards.addElement(p);
+            } else {
+                Vector group = (Vector) groups.get(first);
+                if (group == null) {
+                    group = new Vector();
+                    groups.put(first, group);
+                }
+                group.addElement(p);
+            }
+        }
+
+        general = new CompiledPattern[wildcards.size()];
+        wildcards.copyInto(general);
+
+        firstSegments = new String[groups.size()];
+        int n = 0;
+        for (Enumeration e = groups.keys(); e.hasMoreElements();) {
+            firstSegments[n++] = (String) e.nextElement();
+        }
+        sort(firstSegments);
+
+        byFirstSegment = new CompiledPattern[firstSegments.length][];
+        for (int i = 0; i < firstSegments.length; i++) {
+            Vector group = (Vector) groups.get(firstSegments[i]);
+            byFirstSegment[i] = new CompiledPattern[group.size()];
+            group.copyInto(byFirstSegment[i]);
+        }
+    }
+
+    /**
+     * Number of patterns in this set.
+     */
+    public int size() {
+        return all.length;
+    }
+
+    /**
+     * Tests whether the path matches at least one of the patterns.
+     *
+     * @param str the (non-null) path to match.
+     */
+    public boolean matches(String str) {
+        if (literals.size() > 0 && literals.get(str) != null) {
+            return true;
+        }
+
+        for (int i = 0; i < general.length; i++) {
+            if (general[i].matchPath(str)) {
+                return true;
+            }
+        }
+
+        CompiledPattern[] candidates = candidates(str);
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].matchPath(str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether the path matches the start of at least one of the
+     * patterns up to its first "**", i.e. whether files below the
+     * directory denoted by the path could match.
+     *
+     * @param str the (non-null) path to match.
+     */
+    public boolean matchesStart(String str) {
+        for (int i = 0; i < general.length; i++) {
+            if (general[i].matchPatternStart(str)) {
+                return true;
+            }
+        }
+
+        CompiledPattern[] candidates = candidates(str);
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].matchPatternStart(str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final CompiledPattern[] NONE = new CompiledPattern[0];
+
+    /**
+     * The patterns starting with a literal segment that could match
+     * the given path.
+     */
+    private CompiledPattern[] candidates(String str) {
+        if (firstSegments.length == 0) {
+            return NONE;
+        }
+
+        int end = str.length();
+        int start = skipSeparators(str, 0, end);
+        if (start == end) {
+            // no segment at all, only the start of a pattern may match
+            return all;
+        }
+        int segEnd = segmentEnd(str, start, end);
+
+        // binary search for the first segment of the path
+        int low = 0;
+        int high = firstSegments.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(firstSegments[mid], str, start, segEnd);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return byFirstSegment[mid];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Compares a string to a region of another string, the same way
+     * <code>String.compareTo</code> would.
+     */
+    private static int compare(String s, String str, int start, int end) {
+        int len1 = s.length();
+        int len2 = end - start;
+        int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            char c1 = s.charAt(i);
+            char c2 = str.charAt(start + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    private static void sort(String[] a) {
+        // insertion sort, the number of distinct segments is small
+        for (int i = 1; i < a.length; i++) {
+            String s = a[i];
+            int j = i - 1;
+            while (j >= 0 && a[j].compareTo(s) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = s;
+        }
+    }
+
+    /**
+     * Position of the first non-separator character in [from, to),
+     * to if there is none.
+     */
+    static int skipSeparators(String str, int from, int to) {
+        while (from < to && str.charAt(from) == SEP) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Position after the last non-separator character in [from, to),
+     * from if there is none.
+     */
+    static int skipSeparatorsBackwards(String str, int from, int to) {
+        while (to > from && str.charAt(to - 1) == SEP) {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * End of the segment starting at start.
+     */
+    static int segmentEnd(String str, int start, int to) {
+        while (start < to && str.charAt(start) != SEP) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Start of the segment ending at end.
+     */
+    static int segmentStart(String str, int from, int end) {
+        while (end > from && str.charAt(end - 1) != SEP) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * A single pattern, split into its path segments.
+     */
+    static class CompiledPattern {
+        private String pattern;
+        private boolean absolute;
+        private int count;
+        private char[][] segments;
+        private boolean[] doubleStar;
+        private boolean[] hasStar;
+        private boolean[] literal;
+
+        CompiledPattern(String pattern) {
+            this.pattern = pattern;
+            absolute = pattern.length() > 0 && pattern.charAt(0) == SEP;
+
+            StringTokenizer st = new StringTokenizer(pattern, File.separator);
+            count = st.countTokens();
+            segments = new char[count][];
+            doubleStar = new boolean[count];
+            hasStar = new boolean[count];
+            literal = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                String seg = st.nextToken();
+                segments[i] = seg.toCharArray();
+                doubleStar[i] = seg.equals("**");
+                hasStar[i] = seg.indexOf('*') > -1;
+                literal[i] = !hasStar[i] && seg.indexOf('?') == -1;
+            }
+        }
+
+        /**
+         * Does the pattern consist of literal segments only?
+         */
+        boolean isLiteral() {
+            for (int i = 0; i < count; i++) {
+                if (!literal[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The first segment if it doesn't contain wildcards, null otherwise.
+         */
+        String getLiteralFirstSegment() {
+            return count > 0 && literal[0] ? new String(segments[0]) : null;
+        }
+
+        public String toString() {
+            return pattern;
+        }
+
+        /**
+         * @see DirectoryScanner#matchPatternStart
+         */
+        boolean matchPatternStart(String str) {
+            int end = str.length();
+            if ((end > 0 && str.charAt(0) == SEP) != absolute) {
+                return false;
+            }
+
+            int strStart = skipSeparators(str, 0, end);
+            int strEnd = skipSeparatorsBackwards(str, strStart, end);
+            int patIdxStart = 0;
+
+            // up to first '**'
+            while (patIdxStart < count && strStart < strEnd) {
+                if (doubleStar[patIdxStart]) {
+                    break;
+                }
+                int segEnd = segmentEnd(str, strStart, strEnd);
+                if (!matchSegment(patIdxStart, str, strStart, segEnd)) {
+                    return false;
+                }
+                patIdxStart++;
+                strStart = skipSeparators(str, segEnd, strEnd);
+            }
+
+            if (strStart >= strEnd) {
+                // String is exhausted
+                return true;
+            }
+            // String not exhausted: failure if the pattern is
+            // exhausted, otherwise it holds '**' and may match.
+            return patIdxStart < count;
+        }
+
+        /**
+         * @see DirectoryScanner#matchPath
+         */
+        boolean matchPath(String str) {
+            int end = str.length();
+            if ((end > 0 && str.charAt(0) == SEP) != absolute) {
+                return false;
+            }
+
+            int strStart = skipSeparators(str, 0, end);
+            int strEnd = skipSeparatorsBackwards(str, strStart, end);
+            int patIdxStart = 0;
+            int patIdxEnd = count - 1;
+
+            // up to first '**'
+            while (patIdxStart <= patIdxEnd && strStart < strEnd) {
+                if (doubleStar[patIdxStart]) {
+                    break;
+                }
+                int segEnd = segmentEnd(str, strStart, strEnd);
+                if (!matchSegment(patIdxStart, str, strStart, segEnd)) {
+                    return false;
+                }
+                patIdxStart++;
+                strStart = skipSeparators(str, segEnd, strEnd);
+            }
+            if (strStart >= strEnd) {
+                return onlyDoubleStars(patIdxStart, patIdxEnd);
+            } else if (patIdxStart > patIdxEnd) {
+                // String not exhausted, but pattern is. Failure.
+                return false;
+            }
+
+            // up to last '**'
+            while (patIdxStart <= patIdxEnd && strStart < strEnd) {
+                if (doubleStar[patIdxEnd]) {
+                    break;
+                }
+                int segStart = segmentStart(str, strStart, strEnd);
+                if (!matchSegment(patIdxEnd, str, segStart, strEnd)) {
+                    return false;
+                }
+                patIdxEnd--;
+                strEnd = skipSeparatorsBackwards(str, strStart, segStart);
+            }
+            if (strStart >= strEnd) {
+                return onlyDoubleStars(patIdxStart, patIdxEnd);
+            }
+
+            // patIdxStart and patIdxEnd now both point to '**'
+            while (patIdxStart != patIdxEnd && strStart < strEnd) {
+                int patIdxTmp = patIdxStart + 1;
+                while (!doubleStar[patIdxTmp]) {
+                    patIdxTmp++;
+                }
+                if (patIdxTmp == patIdxStart + 1) {
+                    // '**/**' situation, so skip one
+                    patIdxStart++;
+                    continue;
+                }
+
+                // Find the leftmost occurrence of the segments between
+                // patIdxStart & patIdxTmp in the rest of the string
+                int patLength = patIdxTmp - patIdxStart - 1;
+                int foundEnd = -1;
+                for (int candidate = strStart; candidate < strEnd && foundEnd == -1; 
+                     candidate = skipSeparators(str, segmentEnd(str, candidate, strEnd), 
+                                                strEnd)) {
+                    int pos = candidate;
+                    int j = 0;
+                    while (j < patLength) {
+                        if (pos >= strEnd) {
+                            // not enough segments left for any candidate
+                            return false;
+                        }
+                        int segEnd = segmentEnd(str, pos, strEnd);
+                        if (!matchSegment(patIdxStart + j + 1, str, pos, segEnd)) {
+                            break;
+                        }
+                        pos = skipSeparators(str, segEnd, strEnd);
+                        j++;
+                    }
+                    if (j == patLength) {
+                        foundEnd = pos;
+                    }
+                }
+
+                if (foundEnd == -1) {
+                    return false;
+                }
+
+                patIdxStart = patIdxTmp;
+                strStart = foundEnd;
+            }
+
+            return onlyDoubleStars(patIdxStart, patIdxEnd);
+        }
+
+        private boolean onlyDoubleStars(int from, int to) {
+            for (int i = from; i <= to; i++) {
+                if (!doubleStar[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Matches the region [strIdxStart, end) of str against a
+         * single pattern segment.
+         *
+         * @see DirectoryScanner#match
+         */
+        private boolean matchSegment(int seg, String str, int strIdxStart, int end) {
+            char[] patArr = segments[seg];
+            int strIdxEnd = end - 1;
+
+            if (literal[seg]) {
+                return patArr.length == end - strIdxStart
+                    && regionEquals(patArr, str, strIdxStart);
+            }
+
+            int patIdxStart = 0;
+            int patIdxEnd = patArr.length - 1;
+            char ch;
+
+            if (!hasStar[seg]) {
+                // No '*'s, so we make a shortcut
+                if (patIdxEnd != strIdxEnd - strIdxStart) {
+                    return false;
+                }
+                for (int i = 0; i <= patIdxEnd; i++) {
+                    ch = patArr[i];
+                    if (ch != '?' && ch != str.charAt(strIdxStart + i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            if (patIdxEnd == 0) {
+                return true; // Pattern contains only '*', which matches anything
+            }
+
+            // Process characters before first star
+            while ((ch = patArr[patIdxStart]) != '*' && strIdxStart <= strIdxEnd) {
+                if (ch != '?' && ch != str.charAt(strIdxStart)) {
+                    return false;
+                }
+                patIdxStart++;
+                strIdxStart++;
+            }
+            if (strIdxStart > strIdxEnd) {
+                return onlyStars(patArr, patIdxStart, patIdxEnd);
+            }
+
+            // Process characters after last star
+            while ((ch = patArr[patIdxEnd]) != '*' && strIdxStart <= strIdxEnd) {
+                if (ch != '?' && ch != str.charAt(strIdxEnd)) {
+                    return false;
+                }
+                patIdxEnd--;
+                strIdxEnd--;
+            }
+            if (strIdxStart > strIdxEnd) {
+                return onlyStars(patArr, patIdxStart, patIdxEnd);
+            }
+
+            // process pattern between stars. padIdxStart and patIdxEnd point
+            // always to a '*'.
+            while (patIdxStart != patIdxEnd && strIdxStart <= strIdxEnd) {
+                int patIdxTmp = -1;
+                for (int i = patIdxStart + 1; i <= patIdxEnd; i++) {
+                    if (patArr[i] == '*') {
+                        patIdxTmp = i;
+                        break;
+                    }
+                }
+                if (patIdxTmp == patIdxStart + 1) {
+                    // Two stars next to each other, skip the first one.
+                    patIdxStart++;
+                    continue;
+                }
+                // Find the pattern between padIdxStart & padIdxTmp in str between
+                // strIdxStart & strIdxEnd
+                int patLength = (patIdxTmp - patIdxStart - 1);
+                int strLength = (strIdxEnd - strIdxStart + 1);
+                int foundIdx  = -1;
+strLoop:
+                for (int i = 0; i <= strLength - patLength; i++) {
+                    for (int j = 0; j < patLength; j++) {
+                        ch = patArr[patIdxStart + j + 1];
+                        if (ch != '?' && ch != str.charAt(strIdxStart + i + j)) {
+                            continue strLoop;
+                        }
+                    }
+
+                    foundIdx = strIdxStart + i;
+                    break;
+                }
+
+                if (foundIdx == -1) {
+                    return false;
+                }
+
+                patIdxStart = patIdxTmp;
+                strIdxStart = foundIdx + patLength;
+            }
+
+            return onlyStars(patArr, patIdxStart, patIdxEnd);
+        }
+
+        private static boolean onlyStars(char[] patArr, int from, int to) {
+            for (int i = from; i <= to; i++) {
+                if (patArr[i] != '*') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean regionEquals(char[] patArr, String str, int start) {
+            for (int i = 0; i < patArr.length; i++) {
+                if (patArr[i] != str.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
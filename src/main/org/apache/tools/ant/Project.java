@@ -57,6 +57,8 @@ package org.apache.tools.ant;
 import java.io.*;
 import java.util.*;
 import java.text.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 
 /**
  * Central representation of an Ant project. This class defines a
@@ -93,6 +95,34 @@ public class Project {
     public static final String TOKEN_START = "@";
     public static final String TOKEN_END = "@";
 
+    /**
+     * Name of the property naming the file {@link DigestChangeDetector
+     * DigestChangeDetector} keeps its digests in.
+     */
+    public static final String DIGEST_CACHE_PROPERTY = "ant.digest.cache";
+
+    /**
+     * Name of the property that makes the project notify its
+     * listeners on a thread of its own if set to true.
+     */
+    public static final String ASYNC_EVENTS_PROPERTY = "ant.events.async";
+
+    /**
+     * Name of the property holding the number of events that may wait
+     * for the listeners when they are notified asynchronously.
+     */
+    public static final String EVENT_QUEUE_SIZE_PROPERTY = 
+        "ant.events.queuesize";
+
+    /**
+     * Name of the property that says what happens if the queue of
+     * waiting events is full - "block" waits for the listeners,
+     * "discard" drops message events.
+     */
+    public static final String EVENT_OVERFLOW_PROPERTY = "ant.events.overflow";
+
+    private static final int DEFAULT_EVENT_QUEUE_SIZE = 1000;
+
     private String name;
 
     private Hashtable properties = new Hashtable();
@@ -101,11 +131,75 @@ public class Project {
     private String defaultTarget;
     private Hashtable dataClassDefinitions = new Hashtable();
     private Hashtable taskClassDefinitions = new Hashtable();
+    private Hashtable userDataClassDefinitions = new Hashtable();
+    private Hashtable userTaskClassDefinitions = new Hashtable();
+
+    /**
+     * Default definitions that haven't been copied to
+     * taskClassDefinitions/dataClassDefinitions yet, null once they
+     * have been or if the project doesn't use the defaults.
+     */
+    private DefinitionTable taskDefaults;
+    private DefinitionTable dataTypeDefaults;
+
+    /**
+     * Whether the definition tables are shared with another project
+     * and need to be copied before they are modified.
+     */
+    private boolean definitionsShared = false;
     private Hashtable targets = new Hashtable();
     private Hashtable filters = new Hashtable();
+    private TokenFilter tokenFilter;
     private File baseDir;
 
     private Vector listeners = new Vector();
+    /**
+     * Copy of listeners for readers that mustn't wait for the
+     * monitor of the Vector, which is held while events are
+     * delivered.
+     */
+    private volatile Object[] listenerSnapshot = new Object[0];
+    /** Whether listeners is shared with another project. */
+    private boolean listenersShared = false;
+
+    /**
+     * Delivers events to the listeners if they are notified
+     * asynchronously, null otherwise.
+     */
+    private EventDispatcher dispatcher;
+    /** Whether the dispatcher has been started by this project. */
+    private boolean ownsDispatcher = false;
+    /**
+     * Whether this project shares the listeners of another one -
+     * only the top-level project may start a dispatcher, as only it
+     * sees the end of the build.
+     */
+    private boolean subProject = false;
+
+    /** maximum number of independent targets to execute at once */
+    private int threadCount = 1;
+
+    /**
+     * Files at least this large are copied via FileChannel if the VM
+     * supports it.
+     */
+    private static final long TRANSFER_THRESHOLD = 256 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static Object channelLock = new Object();
+    private static boolean channelLookupDone = false;
+    private static Method getInputChannel;
+    private static Method getOutputChannel;
+    private static Method transferTo;
+
+    /** configured sub-projects the ant task may use again */
+    private Hashtable subProjects = new Hashtable();
+
+    /** results of directory scans, used by filesets */
+    private ScanCache scanCache = new ScanCache();
+
+    /** decides whether files need to be rebuilt */
+    private ChangeDetector changeDetector;
 
     static {
 
@@ -141,80 +235,139 @@ public class Project {
     public void init() throws BuildException {
         setJavaVersionProperty();
         
-        String defs = "/org/apache/tools/ant/taskdefs/defaults.properties";
+        initDefaultDefinitions();
 
-        try {
-            Properties props = new Properties();
-            InputStream in = this.getClass().getResourceAsStream(defs);
-            if (in == null) { 
-                throw new BuildException("Can't load default task list");
-            }
-            props.load(in);
-            in.close();
+        Properties systemP = System.getProperties();
+        Enumeration e = systemP.keys();
+        while (e.hasMoreElements()) {
+            String name = (String) e.nextElement();
+            String value = (String) systemP.get(name);
+            this.setProperty(name, value);
+        }
+    }
 
-            Enumeration enum = props.propertyNames();
-            while (enum.hasMoreElements()) {
-                String key = (String) enum.nextElement();
-                String value = props.getProperty(key);
-                try {
-                    Class taskClass = Class.forName(value);
-                    addTaskDefinition(key, taskClass);
-                } catch (NoClassDefFoundError ncdfe) {
-                    // ignore...
-                } catch (ClassNotFoundException cnfe) {
-                    // ignore...
-                }
+    /**
+     * Makes the default task and data type definitions available to
+     * this project.
+     *
+     * <p>The classes of the definitions are only loaded when they are
+     * first used.</p>
+     */
+    public void initDefaultDefinitions() throws BuildException {
+        taskDefaults = DefinitionTable.getTaskDefaults();
+        dataTypeDefaults = DefinitionTable.getDataTypeDefaults();
+    }
+
+    /**
+     * Makes the task and data type definitions of the given project
+     * available to this one, replacing all definitions of this
+     * project.
+     *
+     * <p>The definitions are shared until one of the projects
+     * changes them.</p>
+     */
+    public void inheritDefinitions(Project parent) {
+        synchronized (parent) {
+            parent.definitionsShared = true;
+            synchronized (this) {
+                taskClassDefinitions = parent.taskClassDefinitions;
+                dataClassDefinitions = parent.dataClassDefinitions;
+                userTaskClassDefinitions = parent.userTaskClassDefinitions;
+                userDataClassDefinitions = parent.userDataClassDefinitions;
+                taskDefaults = parent.taskDefaults;
+                dataTypeDefaults = parent.dataTypeDefaults;
+                definitionsShared = true;
             }
-        } catch (IOException ioe) {
-            throw new BuildException("Can't load default task list");
         }
+    }
 
-        String dataDefs = "/org/apache/tools/ant/types/defaults.properties";
-
-        try{
-            Properties props = new Properties();
-            InputStream in = this.getClass().getResourceAsStream(dataDefs);
-            if (in == null) { 
-                throw new BuildException("Can't load default datatype list");
+    /**
+     * Makes all build listeners of the given project listen to this
+     * one as well, replacing the listeners of this project.
+     *
+     * <p>The list of listeners is shared until one of the projects
+     * adds or removes a listener. If the listeners of the parent are
+     * notified asynchronously, the events of this project are
+     * delivered by the same thread.</p>
+     */
+    public void inheritBuildListeners(Project parent) {
+        synchronized (parent) {
+            parent.listenersShared = true;
+            synchronized (this) {
+                listeners = parent.listeners;
+                listenerSnapshot = parent.listenerSnapshot;
+                listenersShared = true;
+                dispatcher = parent.dispatcher;
+                subProject = true;
             }
-            props.load(in);
-            in.close();
+        }
+    }
 
-            Enumeration enum = props.propertyNames();
-            while (enum.hasMoreElements()) {
-                String key = (String) enum.nextElement();
-                String value = props.getProperty(key);
-                try {
-                    Class dataClass = Class.forName(value);
-                    addDataTypeDefinition(key, dataClass);
-                } catch (NoClassDefFoundError ncdfe) {
-                    // ignore...
-                } catch (ClassNotFoundException cnfe) {
-                    // ignore...
+    /**
+     * Copies all properties of the given project to this one,
+     * properties set on the command line of this project take
+     * precedence.
+     */
+    public void inheritProperties(Project parent) {
+        Hashtable props = parent.getProperties();
+        synchronized (props) {
+            Enumeration e = props.keys();
+            while (e.hasMoreElements()) {
+                Object name = e.nextElement();
+                if (!userProperties.containsKey(name)) {
+                    properties.put(name, props.get(name));
                 }
             }
-        } catch (IOException ioe) {
-            throw new BuildException("Can't load default datatype list");
         }
+    }
 
-        Properties systemP = System.getProperties();
-        Enumeration e = systemP.keys();
-        while (e.hasMoreElements()) {
-            String name = (String) e.nextElement();
-            String value = (String) systemP.get(name);
-            this.setProperty(name, value);
+    /**
+     * Gives this project copies of definition tables that are shared
+     * with another project.
+     */
+    private synchronized void unshareDefinitions() {
+        if (definitionsShared) {
+            taskClassDefinitions = (Hashtable) taskClassDefinitions.clone();
+            dataClassDefinitions = (Hashtable) dataClassDefinitions.clone();
+            userTaskClassDefinitions = 
+                (Hashtable) userTaskClassDefinitions.clone();
+            userDataClassDefinitions = 
+                (Hashtable) userDataClassDefinitions.clone();
+            definitionsShared = false;
+        }
+    }
+
+    private synchronized void unshareBuildListeners() {
+        if (listenersShared) {
+            listeners = (Vector) listeners.clone();
+            listenersShared = false;
         }
     }
 
     public void addBuildListener(BuildListener listener) {
+        flushEvents();
+        unshareBuildListeners();
         listeners.addElement(listener);
+        updateListenerSnapshot();
     }
 
     public void removeBuildListener(BuildListener listener) {
+        flushEvents();
+        unshareBuildListeners();
         listeners.removeElement(listener);
+        updateListenerSnapshot();
+    }
+
+    private void updateListenerSnapshot() {
+        synchronized (listeners) {
+            Object[] snapshot = new Object[listeners.size()];
+            listeners.copyInto(snapshot);
+            listenerSnapshot = snapshot;
+        }
     }
 
     public Vector getBuildListeners() {
+        unshareBuildListeners();
         return listeners;
     }
 
@@ -234,6 +387,26 @@ public class Project {
         fireMessageLogged(target, msg, msgLevel);
     }
 
+    /**
+     * Whether any listener may be interested in messages of the given
+     * level - false only if all listeners are DefaultLoggers that
+     * ignore them.
+     *
+     * <p>Allows code to skip building messages nobody is going to
+     * see.</p>
+     */
+    public boolean isLogging(int msgLevel) {
+        Object[] l = listenerSnapshot;
+        for (int i = 0; i < l.length; i++) {
+            if (!(l[i] instanceof DefaultLogger) 
+                || ((DefaultLogger) l[i]).getMessageOutputLevel() 
+                   >= msgLevel) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void setProperty(String name, String value) {
         // command line properties take precedence
         if (null != userProperties.get(name))
@@ -297,12 +470,28 @@ public class Project {
         log("Setting token to filter: " + token + " -> "
             + value, MSG_DEBUG);
         this.filters.put(token, value);
+        tokenFilter = null;
     }
 
     public Hashtable getFilters() {
         return filters;
     }
 
+    /**
+     * The filters compiled into a TokenFilter.
+     *
+     * <p>The result is reused until a filter is added via {@link
+     * #addFilter addFilter} or the number of filters changes.</p>
+     */
+    public synchronized TokenFilter getTokenFilter() {
+        TokenFilter f = tokenFilter;
+        if (f == null || f.size() != filters.size()) {
+            f = new TokenFilter(this, filters);
+            tokenFilter = f;
+        }
+        return f;
+    }
+
     // match basedir attribute in xml
     public void setBasedir(String baseD) throws BuildException {
         try {
@@ -352,23 +541,102 @@ public class Project {
     public void addTaskDefinition(String taskName, Class taskClass) {
         String msg = " +User task: " + taskName + "     " + taskClass.getName();
         log(msg, MSG_DEBUG);
-        taskClassDefinitions.put(taskName, taskClass);
+        synchronized (this) {
+            unshareDefinitions();
+            taskClassDefinitions.put(taskName, taskClass);
+            userTaskClassDefinitions.put(taskName, taskClass);
+        }
     }
 
-    public Hashtable getTaskDefinitions() {
+    /**
+     * All task definitions of this project.
+     *
+     * <p>Loads the classes of all default definitions that haven't
+     * been used so far.</p>
+     */
+    public synchronized Hashtable getTaskDefinitions() {
+        unshareDefinitions();
+        if (taskDefaults != null) {
+            addDefaults(taskDefaults, taskClassDefinitions);
+            taskDefaults = null;
+        }
         return taskClassDefinitions;
     }
 
+    /**
+     * The task definitions that have been added to this project
+     * explicitly, rather than being one of Ant's defaults.
+     */
+    public synchronized Hashtable getUserTaskDefinitions() {
+        unshareDefinitions();
+        return userTaskClassDefinitions;
+    }
+
     public void addDataTypeDefinition(String typeName, Class typeClass) {
         String msg = " +User datatype: " + typeName + "     " + typeClass.getName();
         log(msg, MSG_DEBUG);
-        dataClassDefinitions.put(typeName, typeClass);
+        synchronized (this) {
+            unshareDefinitions();
+            dataClassDefinitions.put(typeName, typeClass);
+            userDataClassDefinitions.put(typeName, typeClass);
+        }
     }
 
-    public Hashtable getDataTypeDefinitions() {
+    /**
+     * All data type definitions of this project.
+     *
+     * <p>Loads the classes of all default definitions that haven't
+     * been used so far.</p>
+     */
+    public synchronized Hashtable getDataTypeDefinitions() {
+        unshareDefinitions();
+        if (dataTypeDefaults != null) {
+            addDefaults(dataTypeDefaults, dataClassDefinitions);
+            dataTypeDefaults = null;
+        }
         return dataClassDefinitions;
     }
 
+    /**
+     * The data type definitions that have been added to this project
+     * explicitly, rather than being one of Ant's defaults.
+     */
+    public synchronized Hashtable getUserDataTypeDefinitions() {
+        unshareDefinitions();
+        return userDataClassDefinitions;
+    }
+
+    /**
+     * The class of the data type with the given name, null if there
+     * is no such data type.
+     */
+    public Class getDataTypeDefinition(String typeName) {
+        return getDefinition(typeName, dataClassDefinitions, dataTypeDefaults);
+    }
+
+    private static Class getDefinition(String name, Hashtable definitions,
+                                       DefinitionTable defaults) {
+        Class c = (Class) definitions.get(name);
+        if (c == null && defaults != null) {
+            c = defaults.getDefinition(name);
+        }
+        return c;
+    }
+
+    private static void addDefaults(DefinitionTable defaults, 
+                                    Hashtable definitions) {
+        Enumeration e = defaults.getNames();
+        while (e.hasMoreElements()) {
+            String name = (String) e.nextElement();
+            if (!definitions.containsKey(name)) {
+                Class c = defaults.getDefinition(name);
+                if (c != null) {
+                    definitions.put(name, c);
+                }
+            }
+        }
+    }
+
     /**
      * This call expects to add a <em>new</em> Target.
      * @param target is the Target to be added to the current
@@ -427,7 +695,7 @@ public class Project {
     }
 
     public Task createTask(String taskType) throws BuildException {
-        Class c = (Class) taskClassDefinitions.get(taskType);
+        Class c = getDefinition(taskType, taskClassDefinitions, taskDefaults);
 
 	if (c == null)
             return null;
@@ -460,7 +728,7 @@ public class Project {
     }
 
     public Object createDataType(String typeName) throws BuildException {
-        Class c = (Class) dataClassDefinitions.get(typeName);
+        Class c = getDataTypeDefinition(typeName);
 
 	if (c == null)
             return null;
@@ -499,6 +767,74 @@ public class Project {
         }
     }
 
+    /**
+     * Sets the maximum number of targets that may run concurrently.
+     *
+     * <p>With a value greater than one, a target is started as soon
+     * as all of the targets it depends on have finished, rather than
+     * strictly in the order of the sorted build sequence. Targets that
+     * don't depend on each other must not rely on side effects - like
+     * properties - of one another in that case.</p>
+     *
+     * @param threadCount the maximum number of worker threads, values
+     * less than one are treated as one.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount < 1 ? 1 : threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Configured sub-projects of this project, kept by the {@link
+     * org.apache.tools.ant.taskdefs.Ant ant} task.
+     */
+    public Hashtable getSubProjects() {
+        return subProjects;
+    }
+
+    /**
+     * The results of directory scans filesets may reuse during this
+     * build.
+     *
+     * <p>Tasks that create or delete files should invalidate the
+     * directories they have modified.</p>
+     */
+    public ScanCache getScanCache() {
+        return scanCache;
+    }
+
+    /**
+     * Sets the detector tasks use to decide whether a file has to be
+     * created again.
+     */
+    public synchronized void setChangeDetector(ChangeDetector changeDetector) {
+        this.changeDetector = changeDetector;
+    }
+
+    /**
+     * The detector tasks use to decide whether a file has to be
+     * created again.
+     *
+     * <p>Unless one has been set explicitly, this compares content
+     * digests if the property ant.digest.cache names the file to
+     * keep them in and modification times otherwise.</p>
+     */
+    public synchronized ChangeDetector getChangeDetector() {
+        if (changeDetector == null) {
+            String cache = getProperty(DIGEST_CACHE_PROPERTY);
+            if (cache != null) {
+                changeDetector = 
+                    DigestChangeDetector.getInstance(resolveFile(cache));
+            } else {
+                changeDetector = new ChangeDetector();
+            }
+        }
+        return changeDetector;
+    }
+
     public void executeTargets(Vector targetNames) throws BuildException {
         Throwable error = null;
 
@@ -524,6 +860,21 @@ public class Project {
         // graph.
         Vector sortedTargets = topoSort(targetName, targets);
 
+        startEventDispatcher();
+
+        if (threadCount > 1) {
+            Vector sequence = new Vector();
+            Target curtarget;
+            int curidx = 0;
+            do {
+                curtarget = (Target) sortedTargets.elementAt(curidx++);
+                sequence.addElement(curtarget);
+            } while (!curtarget.getName().equals(targetName));
+
+            new ParallelExecutor(this, sequence, threadCount).execute();
+            return;
+        }
+
         int curidx = 0;
         Target curtarget;
 
@@ -636,6 +987,71 @@ public class Project {
         return path.toString();
     }
 
+    /**
+     * Copies the content of in to out with FileChannel.transferTo,
+     * which lets the operating system copy the data without passing
+     * it through the Java heap.
+     *
+     * <p>FileChannel has been introduced with JDK 1.4, it is looked up
+     * via reflection so Ant still runs on older VMs.</p>
+     *
+     * @return false if FileChannel is not available.
+     */
+    private static boolean transfer(FileInputStream in, FileOutputStream out,
+                                    long length) throws IOException {
+        synchronized (channelLock) {
+            if (!channelLookupDone) {
+                try {
+                    Class channel = Class.forName("java.nio.channels.FileChannel");
+                    Class target = 
+                        Class.forName("java.nio.channels.WritableByteChannel");
+                    getInputChannel = 
+                        FileInputStream.class.getMethod("getChannel", new Class[0]);
+                    getOutputChannel = 
+                        FileOutputStream.class.getMethod("getChannel", new Class[0]);
+                    transferTo = 
+                        channel.getMethod("transferTo", 
+                                          new Class[] {Long.TYPE, Long.TYPE, 
+                                                       target});
+                } catch (Exception e) {
+                    // pre 1.4 VM
+                    transferTo = null;
+                }
+                channelLookupDone = true;
+            }
+        }
+        if (transferTo == null) {
+            return false;
+        }
+
+        try {
+            Object source = getInputChannel.invoke(in, new Object[0]);
+            Object target = getOutputChannel.invoke(out, new Object[0]);
+            long position = 0;
+            while (position < length) {
+                Long count = (Long) 
+                    transferTo.invoke(source, 
+                                      new Object[] {new Long(position), 
+                                                    new Long(length - position),
+                                                    target});
+                if (count.longValue() <= 0) {
+                    // file has been truncated while copying
+                    break;
+                }
+                position += count.longValue();
+            }
+            return true;
+        } catch (InvocationTargetException e) {
+            Throwable t = e.getTargetException();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new BuildException(t);
+        } catch (IllegalAccessException e) {
+            throw new BuildException(e);
+        }
+    }
+
     /**
      * Convienence method to copy a file from a source to a destination.
      * No filtering is performed.
@@ -704,7 +1120,7 @@ public class Project {
                          boolean overwrite) throws IOException {
 
         if (overwrite ||
-            destFile.lastModified() < sourceFile.lastModified()) {
+            getChangeDetector().isOutOfDate(sourceFile, destFile)) {
             log("Copy: " + sourceFile.getAbsolutePath() + " > "
                     + destFile.getAbsolutePath(), MSG_VERBOSE);
 
@@ -716,84 +1132,41 @@ public class Project {
             }
 
             if (filtering) {
-                BufferedReader in = new BufferedReader(new FileReader(sourceFile));
-                BufferedWriter out = new BufferedWriter(new FileWriter(destFile));
-
-                int length;
-                String newline = null;
-                String line = in.readLine();
-                while (line != null) {
-                    if (line.length() == 0) {
-                        out.newLine();
-                    } else {
-                        newline = replace(line, filters);
-                        out.write(newline);
-                        out.newLine();
+                Reader in = new FileReader(sourceFile);
+                try {
+                    Writer out = new FileWriter(destFile);
+                    try {
+                        getTokenFilter().filter(in, out);
+                    } finally {
+                        out.close();
                     }
-                    line = in.readLine();
+                } finally {
+                    in.close();
                 }
-
-                out.close();
-                in.close();
             } else {
                 FileInputStream in = new FileInputStream(sourceFile);
-                FileOutputStream out = new FileOutputStream(destFile);
-
-                byte[] buffer = new byte[8 * 1024];
-                int count = 0;
-                do {
-                    out.write(buffer, 0, count);
-                    count = in.read(buffer, 0, buffer.length);
-                } while (count != -1);
-
-                in.close();
-                out.close();
-            }
-        }
-    }
-
-    /**
-     * Does replacement on the given string using the given token table.
-     *
-     * @returns the string with the token replaced.
-     */
-    private String replace(String s, Hashtable tokens) {
-        int index = s.indexOf(TOKEN_START);
-
-        if (index > -1) {
-            try {
-                StringBuffer b = new StringBuffer();
-                int i = 0;
-                String token = null;
-                String value = null;
-
-                do {
-                    int endIndex = s.indexOf(TOKEN_END, 
-                                             index + TOKEN_START.length() + 1);
-                    if (endIndex == -1) {
-                        break;
-                    }
-                    token = s.substring(index + TOKEN_START.length(), endIndex);
-                    b.append(s.substring(i, index));
-                    if (tokens.containsKey(token)) {
-                        value = (String) tokens.get(token);
-                        log("Replacing: " + TOKEN_START + token + TOKEN_END + " -> " + value, MSG_VERBOSE);
-                        b.append(value);
-                        i = index + TOKEN_START.length() + token.length() + TOKEN_END.length();
-                    } else {
-                        // just append TOKEN_START and search further
-                        b.append(TOKEN_START);
-                        i = index + TOKEN_START.length();
+                try {
+                    FileOutputStream out = new FileOutputStream(destFile);
+                    try {
+                        long length = sourceFile.length();
+                        if (length < TRANSFER_THRESHOLD 
+                            || !transfer(in, out, length)) {
+                            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                            int count = 0;
+                            do {
+                                out.write(buffer, 0, count);
+                                count = in.read(buffer, 0, buffer.length);
+                            } while (count != -1);
+                        }
+                    } finally {
+                        out.close();
                     }
-                } while ((index = s.indexOf(TOKEN_START, i)) > -1);
-
-                b.append(s.substring(i));
-                return b.toString();
-            } catch (StringIndexOutOfBoundsException e) {
-                return s;
+                } finally {
+                    in.close();
+                }
             }
-        } else {
-            return s;
+
+            getChangeDetector().built(sourceFile, destFile);
         }
     }
 
@@ -948,62 +1321,141 @@ public class Project {
         return references;
     }
 
+    /**
+     * Starts notifying the listeners on a thread of their own if the
+     * property ant.events.async is true, the listeners aren't
+     * notified asynchronously already and this is the top-level
+     * project.
+     */
+    private void startEventDispatcher() throws BuildException {
+        String async = getProperty(ASYNC_EVENTS_PROPERTY);
+        if (subProject || dispatcher != null 
+            || async == null || !toBoolean(async)) {
+            return;
+        }
+
+        int queueSize = DEFAULT_EVENT_QUEUE_SIZE;
+        String size = getProperty(EVENT_QUEUE_SIZE_PROPERTY);
+        if (size != null) {
+            try {
+                queueSize = Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                queueSize = 0;
+            }
+            if (queueSize < 1) {
+                throw new BuildException(EVENT_QUEUE_SIZE_PROPERTY 
+                                         + " must be a positive number, not "
+                                         + size);
+            }
+        }
+
+        String overflow = getProperty(EVENT_OVERFLOW_PROPERTY);
+        if (overflow != null && !overflow.equals("block") 
+            && !overflow.equals("discard")) {
+            throw new BuildException(EVENT_OVERFLOW_PROPERTY 
+                                     + " must be block or discard, not "
+                                     + overflow);
+        }
+
+        synchronized (this) {
+            if (dispatcher == null) {
+                dispatcher = new EventDispatcher(queueSize, 
+                                                 "discard".equals(overflow));
+                ownsDispatcher = true;
+            }
+        }
+    }
+
+    /**
+     * Waits until the listeners have been notified of all events
+     * fired so far.
+     */
+    private void flushEvents() {
+        EventDispatcher d = dispatcher;
+        if (d != null) {
+            d.flush();
+        }
+    }
+
+    // Listeners are notified while holding the monitor of the listeners
+    // Vector, so that events of targets running in parallel never
+    // interleave inside a single listener.
+
+    private void fireEvent(int type, BuildEvent event) {
+        EventDispatcher d = dispatcher;
+        if (d != null) {
+            d.dispatch(type, event, listeners);
+        } else {
+            EventDispatcher.deliver(type, event, listeners);
+        }
+    }
+
     protected void fireBuildStarted() {
         BuildEvent event = new BuildEvent(this);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.buildStarted(event);
-        }
+        fireEvent(EventDispatcher.BUILD_STARTED, event);
     }
 
     protected void fireBuildFinished(Throwable exception) {
+        if (changeDetector != null) {
+            try {
+                changeDetector.save();
+            } catch (IOException e) {
+                log("Could not save the state of the change detector: " 
+                    + e.getMessage(), MSG_WARN);
+            }
+        }
+        // subprojects may use detectors this project has never
+        // asked for, they don't see the end of the build themselves
+        try {
+            DigestChangeDetector.saveAll();
+        } catch (IOException e) {
+            log("Could not save the digest cache: " + e.getMessage(), MSG_WARN);
+        }
+
+        EventDispatcher d = null;
+        synchronized (this) {
+            if (ownsDispatcher) {
+                d = dispatcher;
+                dispatcher = null;
+                ownsDispatcher = false;
+            }
+        }
+        if (d != null) {
+            int discarded = d.stop();
+            if (discarded > 0) {
+                log(discarded + " messages have been discarded", MSG_WARN);
+            }
+        }
+
         BuildEvent event = new BuildEvent(this);
         event.setException(exception);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.buildFinished(event);
-        }
+        fireEvent(EventDispatcher.BUILD_FINISHED, event);
     }
 
     protected void fireTargetStarted(Target target) {
         BuildEvent event = new BuildEvent(target);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.targetStarted(event);
-        }
+        fireEvent(EventDispatcher.TARGET_STARTED, event);
     }
 
     protected void fireTargetFinished(Target target, Throwable exception) {
         BuildEvent event = new BuildEvent(target);
         event.setException(exception);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.targetFinished(event);
-        }
+        fireEvent(EventDispatcher.TARGET_FINISHED, event);
     }
 
     protected void fireTaskStarted(Task task) {
         BuildEvent event = new BuildEvent(task);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.taskStarted(event);
-        }
+        fireEvent(EventDispatcher.TASK_STARTED, event);
     }
 
     protected void fireTaskFinished(Task task, Throwable exception) {
         BuildEvent event = new BuildEvent(task);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.taskFinished(event);
-        }
+        fireEvent(EventDispatcher.TASK_FINISHED, event);
     }
 
     private void fireMessageLoggedEvent(BuildEvent event, String message, int priority) {
         event.setMessage(message, priority);
-        for (int i = 0; i < listeners.size(); i++) {
-            BuildListener listener = (BuildListener) listeners.elementAt(i);
-            listener.messageLogged(event);
-        }
+        fireEvent(EventDispatcher.MESSAGE_LOGGED, event);
     }
 
     protected void fireMessageLogged(Project project, String message, int priority) {
@@ -70,9 +70,22 @@ import javax.xml.parsers.*;
 
 public class ProjectHelper {
 
+    /**
+     * Name of the property holding the directory recordings of parsed
+     * build files are written to.
+     */
+    public static final String PARSE_CACHE_DIR_PROPERTY = "ant.parsecache.dir";
+
+    /**
+     * Name of the property that enables the reuse of parsed build
+     * files if set to true.
+     */
+    public static final String PARSE_CACHE_PROPERTY = "ant.parsecache";
+
     private static SAXParserFactory parserFactory = null;
 
-    private org.xml.sax.Parser parser;
+    private Dispatcher parser;
+    private ParsedBuildFile recording;
     private Project project;
     private File buildFile;
     private File buildFileParent;
@@ -98,10 +111,43 @@ public class ProjectHelper {
      * Parses the project file.
      */
     private void parse() throws BuildException {
+        String cache = project.getProperty(PARSE_CACHE_PROPERTY);
+        boolean useCache = cache != null && Project.toBoolean(cache);
+        File cacheDir = null;
+        String dir = project.getProperty(PARSE_CACHE_DIR_PROPERTY);
+        if (useCache && dir != null) {
+            cacheDir = project.resolveFile(dir);
+        }
+
         try {
+            RootHandler root = new RootHandler();
+            parser = new Dispatcher(root);
+
+            ParsedBuildFile parsed = null;
+            if (useCache) {
+                parsed = ParsedBuildFile.getInstance(buildFile, cacheDir);
+            }
+            if (parsed != null) {
+                project.log("Using cached parse of " + buildFile, 
+                            Project.MSG_DEBUG);
+                parsed.replay(parser);
+                return;
+            }
+
+            if (useCache) {
+                recording = new ParsedBuildFile(buildFile);
+            }
             SAXParser saxParser = getParserFactory().newSAXParser();
-            parser = saxParser.getParser();
-            saxParser.parse(buildFile, new RootHandler());
+            saxParser.parse(buildFile, parser);
+
+            if (recording != null) {
+                try {
+                    ParsedBuildFile.store(recording, cacheDir);
+                } catch (IOException e) {
+                    project.log("Couldn't write parse cache for " + buildFile
+                                + ": " + e.getMessage(), Project.MSG_VERBOSE);
+                }
+            }
         }
         catch(ParserConfigurationException exc) {
             throw new BuildException("Parser has not been configured correctly", exc);
@@ -136,6 +182,59 @@ public class ProjectHelper {
         }
     }
 
+    /**
+     * Receives all SAX events and passes them on to the handler that
+     * has most recently been set, recording them along the way if a
+     * recording is in progress.
+     */
+    private class Dispatcher extends HandlerBase {
+        private RootHandler root;
+        private DocumentHandler current;
+
+        public Dispatcher(RootHandler root) {
+            this.root = root;
+            current = root;
+        }
+
+        public void setDocumentHandler(DocumentHandler handler) {
+            current = handler;
+        }
+
+        public InputSource resolveEntity(String publicId, String systemId) {
+            InputSource source = root.resolveEntity(publicId, systemId);
+            if (source == null) {
+                // something we can't check for modifications
+                recording = null;
+            }
+            return source;
+        }
+
+        public void setDocumentLocator(Locator locator) {
+            ProjectHelper.this.locator = locator;
+        }
+
+        public void startElement(String tag, AttributeList attrs) throws SAXException {
+            if (recording != null) {
+                recording.startElement(tag, attrs, locator);
+            }
+            current.startElement(tag, attrs);
+        }
+
+        public void characters(char[] buf, int start, int end) throws SAXException {
+            if (recording != null) {
+                recording.characters(buf, start, end, locator);
+            }
+            current.characters(buf, start, end);
+        }
+
+        public void endElement(String name) throws SAXException {
+            if (recording != null) {
+                recording.endElement(name, locator);
+            }
+            current.endElement(name);
+        }
+    }
+
     /**
      * The common superclass for all sax event handlers in Ant. Basically
      * throws an exception in each method, so subclasses should override
@@ -196,7 +295,14 @@ public class ProjectHelper {
                 }
                 
                 try {
-                    return new InputSource(new FileInputStream(file));
+                    InputSource source = 
+                        new InputSource(new FileInputStream(file));
+                    // lets the locator report the included file
+                    source.setSystemId(systemId);
+                    if (recording != null) {
+                        recording.addFile(file);
+                    }
+                    return source;
                 } catch (FileNotFoundException fne) {
                     project.log(file.getAbsolutePath()+" could not be found", 
                                 Project.MSG_WARN);
@@ -214,9 +320,6 @@ public class ProjectHelper {
             }
         }
 
-        public void setDocumentLocator(Locator locator) {
-            ProjectHelper.this.locator = locator;
-        }
     }
 
     /**
@@ -281,7 +384,7 @@ public class ProjectHelper {
                 handleProperty(name, attrs);
             } else if (name.equals("target")) {
                 handleTarget(name, attrs);
-            } else if (project.getDataTypeDefinitions().get(name) != null) {
+            } else if (project.getDataTypeDefinition(name) != null) {
                 handleDataType(name, attrs);
             } else {
                 throw new SAXParseException("Unexpected element \"" + name + "\"", locator);
@@ -593,43 +696,111 @@ public class ProjectHelper {
     public static String replaceProperties( String value, Hashtable keys )
         throws BuildException
     {
-        // XXX use Map instead of proj, it's too heavy
-
-        // XXX need to replace this code with something better.
-        StringBuffer sb=new StringBuffer();
-        int i=0;
-        int prev=0;
-        // assert value!=nil
-        int pos;
-        while( (pos=value.indexOf( "$", prev )) >= 0 ) {
-            if(pos>0) {
-                sb.append( value.substring( prev, pos ) );
-            }
-            if( pos == (value.length() - 1)) {
-                sb.append('$');
-                prev = pos + 1;
-            }
-            else if (value.charAt( pos + 1 ) != '{' ) {
-                sb.append( value.charAt( pos + 1 ) );
-                prev=pos+2; // XXX
-            } else {
-                int endName=value.indexOf( '}', pos );
-                if( endName < 0 ) {
-                    throw new BuildException("Syntax error in prop: " +
-                                             value );
+        // most attribute values don't reference any property
+        if (value.indexOf('$') < 0) {
+            return value;
+        }
+        return PropertyExpression.getInstance(value).expand(keys);
+    }
+
+    /**
+     * The parsed form of a value containing <code>$</code>.
+     *
+     * <p>Parsed forms are cached by value as the same attribute
+     * values tend to be used over and over again in a build
+     * file.</p>
+     */
+    private static class PropertyExpression {
+
+        /** Upper bound for the number of cached expressions. */
+        private static final int MAX_CACHED = 10000;
+
+        /** value -> PropertyExpression */
+        private static Hashtable cache = new Hashtable();
+
+        /**
+         * literals[i] precedes the reference to names[i], the last
+         * literal follows the last reference.
+         */
+        private String[] literals;
+        private String[] names;
+
+        /** Length of all literals. */
+        private int literalLength;
+
+        static PropertyExpression getInstance(String value) 
+            throws BuildException {
+            PropertyExpression e = (PropertyExpression) cache.get(value);
+            if (e == null) {
+                e = new PropertyExpression(value);
+                if (cache.size() >= MAX_CACHED) {
+                    cache.clear();
+                }
+                cache.put(value, e);
+            }
+            return e;
+        }
+
+        private PropertyExpression(String value) throws BuildException {
+            Vector lits = new Vector();
+            Vector refs = new Vector();
+            StringBuffer sb = new StringBuffer();
+            int prev = 0;
+            int pos;
+            while ((pos = value.indexOf('$', prev)) >= 0) {
+                sb.append(value.substring(prev, pos));
+                if (pos == value.length() - 1) {
+                    sb.append('$');
+                    prev = pos + 1;
+                } else if (value.charAt(pos + 1) != '{') {
+                    sb.append(value.charAt(pos + 1));
+                    prev = pos + 2;
+                } else {
+                    int endName = value.indexOf('}', pos);
+                    if (endName < 0) {
+                        throw new BuildException("Syntax error in prop: " +
+                                                 value);
+                    }
+                    lits.addElement(sb.toString());
+                    sb.setLength(0);
+                    refs.addElement(value.substring(pos + 2, endName));
+                    prev = endName + 1;
+                }
+            }
+            sb.append(value.substring(prev));
+            lits.addElement(sb.toString());
+
+            literals = new String[lits.size()];
+            lits.copyInto(literals);
+            names = new String[refs.size()];
+            refs.copyInto(names);
+            for (int i = 0; i < literals.length; i++) {
+                literalLength += literals[i].length();
+            }
+        }
+
+        String expand(Hashtable keys) {
+            if (names.length == 0) {
+                return literals[0];
+            }
+            if (names.length == 1 && literalLength == 0) {
+                String v = (String) keys.get(names[0]);
+                return v != null ? v : "${" + names[0] + "}";
+            }
+
+            StringBuffer sb = new StringBuffer(literalLength + 16 * names.length);
+            for (int i = 0; i < names.length; i++) {
+                sb.append(literals[i]);
+                String v = (String) keys.get(names[i]);
+                if (v != null) {
+                    sb.append(v);
+                } else {
+                    sb.append("${").append(names[i]).append('}');
                 }
-                String n=value.substring( pos+2, endName );
-                String v= (keys.containsKey(n)) ? (String) keys.get( n ) 
-                    : "${"+n+"}";
-                //System.out.println("N: " + n + " " + " V:" + v);
-                sb.append( v );
-                prev=endName+1;
-            }
-        }
-        if( prev < value.length() ) sb.append( value.substring( prev ) );
-        //      System.out.println("After replace: " + sb.toString());
-        // System.out.println("Before replace: " + value);
-        return sb.toString();
+            }
+            sb.append(literals[names.length]);
+            return sb.toString();
+        }
     }
 
     private static SAXParserFactory getParserFactory() {
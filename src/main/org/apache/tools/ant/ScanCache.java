@@ -0,0 +1,133 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.File;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Keeps the results of directory scans for the duration of a build.
+ *
+ * <p>Scanners are keyed by {@link DirectoryScanner#getKey
+ * DirectoryScanner.getKey}, i.e. by base directory and patterns.
+ * Tasks that create or delete files have to {@link #invalidate
+ * invalidate} the directories they write to.</p>
+ */
+public class ScanCache {
+
+    /** key -> DirectoryScanner */
+    private Hashtable scanners = new Hashtable();
+
+    /**
+     * The scanner that has been stored for the given key, null if
+     * there is none.
+     */
+    public synchronized DirectoryScanner get(String key) {
+        return (DirectoryScanner) scanners.get(key);
+    }
+
+    /**
+     * Stores a scanner that has completed its scan.
+     */
+    public synchronized void put(DirectoryScanner ds) {
+        scanners.put(ds.getKey(), ds);
+    }
+
+    /**
+     * Drops the results of all scans that could have seen files
+     * below the given directory or the directory itself.
+     */
+    public synchronized void invalidate(File dir) {
+        if (dir == null || scanners.isEmpty()) {
+            return;
+        }
+        String path = dir.getAbsolutePath();
+        Vector stale = new Vector();
+        Enumeration e = scanners.keys();
+        while (e.hasMoreElements()) {
+            Object key = e.nextElement();
+            DirectoryScanner ds = (DirectoryScanner) scanners.get(key);
+            String base = ds.getBasedir().getAbsolutePath();
+            if (contains(base, path) || contains(path, base)) {
+                stale.addElement(key);
+            }
+        }
+        for (int i = 0; i < stale.size(); i++) {
+            scanners.remove(stale.elementAt(i));
+        }
+    }
+
+    /**
+     * Drops all results.
+     */
+    public synchronized void clear() {
+        scanners.clear();
+    }
+
+    /**
+     * Whether the path parent equals or is an ancestor of child.
+     */
+    private static boolean contains(String parent, String child) {
+        if (!child.startsWith(parent)) {
+            return false;
+        }
+        return child.length() == parent.length()
+            || child.charAt(parent.length()) == File.separatorChar
+            || parent.endsWith(File.separator);
+    }
+}
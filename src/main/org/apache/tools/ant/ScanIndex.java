@@ -0,0 +1,281 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistent cache of directory listings used by {@link
+ * DirectoryScanner DirectoryScanner}.
+ *
+ * <p>For every directory visited during a scan the index remembers
+ * the modification time of the directory together with the names of
+ * its entries and whether they have been files or directories. As
+ * long as the modification time of a directory doesn't change, the
+ * listing is served from the index and neither <code>File.list()</code>
+ * nor <code>File.isDirectory()</code> have to be called for its
+ * entries.</p>
+ *
+ * <p>An index file belongs to a single combination of base directory
+ * and patterns, the key passed to the constructor. A file that has
+ * been written for a different key, is truncated or is otherwise
+ * unreadable is ignored and rebuilt by the next scan.</p>
+ */
+public class ScanIndex {
+
+    /** Type of an entry that is neither a file nor a directory. */
+    public static final byte OTHER = 0;
+    /** Type of an entry that is a plain file. */
+    public static final byte FILE = 1;
+    /** Type of an entry that is a directory. */
+    public static final byte DIRECTORY = 2;
+
+    /**
+     * Listings recorded less than this number of milliseconds after
+     * the last modification of their directory are not trusted, as a
+     * change within the timestamp granularity of the file system
+     * wouldn't be visible.
+     */
+    private static final long GRANULARITY = 2000;
+
+    private static final int MAGIC = 0x416e7449;
+    private static final int VERSION = 1;
+
+    private File indexFile;
+    private String key;
+
+    /** vpath -> Listing, as read from the index file */
+    private Hashtable cached = new Hashtable();
+
+    /** vpath -> Listing, directories visited by the current scan */
+    private Hashtable visited = new Hashtable();
+
+    private boolean dirty = false;
+
+    /**
+     * The names and types of the entries of a single directory.
+     */
+    public static class Listing {
+        long lastModified;
+        long listed;
+        String[] names;
+        byte[] types;
+
+        /**
+         * The names of the entries, as returned by <code>File.list()</code>.
+         */
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * The types of the entries, one of {@link ScanIndex#FILE
+         * FILE}, {@link ScanIndex#DIRECTORY DIRECTORY} or {@link
+         * ScanIndex#OTHER OTHER}.
+         */
+        public byte[] getTypes() {
+            return types;
+        }
+    }
+
+    /**
+     * @param indexFile file to read the index from and write it to.
+     * @param key identifies the base directory and patterns of the scan.
+     */
+    public ScanIndex(File indexFile, String key) {
+        this.indexFile = indexFile;
+        this.key = key;
+        load();
+    }
+
+    /**
+     * The listing of a directory, either from the index or - if the
+     * directory has been modified since it has been recorded - read
+     * from the file system.
+     *
+     * @param dir the directory to list.
+     * @param vpath the path of dir relative to the base directory.
+     *
+     * @return null if the directory cannot be listed.
+     */
+    public Listing getListing(File dir, String vpath) {
+        long lastModified = dir.lastModified();
+        Listing l;
+        synchronized (this) {
+            l = (Listing) cached.get(vpath);
+        }
+        if (l == null || l.lastModified != lastModified
+            || l.listed - lastModified < GRANULARITY) {
+
+            String[] names = dir.list();
+            if (names == null) {
+                return null;
+            }
+
+            l = new Listing();
+            l.lastModified = lastModified;
+            l.listed = System.currentTimeMillis();
+            l.names = names;
+            l.types = new byte[names.length];
+            for (int i = 0; i < names.length; i++) {
+                File file = new File(dir, names[i]);
+                if (file.isDirectory()) {
+                    l.types[i] = DIRECTORY;
+                } else if (file.isFile()) {
+                    l.types[i] = FILE;
+                } else {
+                    l.types[i] = OTHER;
+                }
+            }
+            synchronized (this) {
+                cached.put(vpath, l);
+                dirty = true;
+            }
+        }
+
+        visited.put(vpath, l);
+        return l;
+    }
+
+    /**
+     * Writes the listings of all directories visited since the index
+     * has been loaded back to the index file.
+     *
+     * <p>Listings of directories that haven't been visited are
+     * dropped, so the index doesn't grow with directories that have
+     * been deleted.</p>
+     */
+    public synchronized void save() throws IOException {
+        // nothing has been re-listed or dropped
+        if (!dirty && visited.size() == cached.size()) {
+            return;
+        }
+
+        String parent = indexFile.getParent();
+        if (parent != null) {
+            new File(parent).mkdirs();
+        }
+
+        DataOutputStream out = 
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(visited.size());
+            for (Enumeration e = visited.keys(); e.hasMoreElements();) {
+                String vpath = (String) e.nextElement();
+                Listing l = (Listing) visited.get(vpath);
+                out.writeUTF(vpath);
+                out.writeLong(l.lastModified);
+                out.writeLong(l.listed);
+                out.writeInt(l.names.length);
+                for (int i = 0; i < l.names.length; i++) {
+                    out.writeUTF(l.names[i]);
+                    out.writeByte(l.types[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        cached = (Hashtable) visited.clone();
+        dirty = false;
+    }
+
+    private void load() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION 
+                || !key.equals(in.readUTF())) {
+                return;
+            }
+
+            Hashtable listings = new Hashtable();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String vpath = in.readUTF();
+                Listing l = new Listing();
+                l.lastModified = in.readLong();
+                l.listed = in.readLong();
+                l.names = new String[in.readInt()];
+                l.types = new byte[l.names.length];
+                for (int j = 0; j < l.names.length; j++) {
+                    l.names[j] = in.readUTF();
+                    l.types[j] = in.readByte();
+                }
+                listings.put(vpath, l);
+            }
+            cached = listings;
+        } catch (IOException e) {
+            // unusable index, start from scratch
+        } catch (RuntimeException e) {
+            // corrupt index, start from scratch
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ * Replaces tokens like <code>@NAME@</code> in a stream of characters
+ * with their values.
+ *
+ * <p>The table of tokens is compiled once when the filter is created,
+ * the stream is processed in blocks of characters without looking
+ * at lines - line endings are copied as they are.</p>
+ *
+ * <p>An occurence of {@link Project#TOKEN_START TOKEN_START} starts a
+ * token if it is followed by the name of a known token and {@link
+ * Project#TOKEN_END TOKEN_END}, the name must be at least one
+ * character long.  Anything else is copied unchanged.</p>
+ */
+public class TokenFilter {
+
+    private static final char START = Project.TOKEN_START.charAt(0);
+    private static final char END = Project.TOKEN_END.charAt(0);
+
+    private Project project;
+
+    /** token names, sorted */
+    private String[] names;
+    /** the values of the tokens in names */
+    private String[] values;
+    private int maxLength = 0;
+
+    /**
+     * @param project used to log replacements, may be null.
+     * @param tokens maps token names to their values.
+     */
+    public TokenFilter(Project project, Hashtable tokens) {
+        this.project = project;
+        names = new String[tokens.size()];
+        int i = 0;
+        for (Enumeration e = tokens.keys(); e.hasMoreElements();) {
+            names[i++] = (String) e.nextElement();
+        }
+        sort(names);
+
+        values = new String[names.length];
+        for (i = 0; i < names.length; i++) {
+            values[i] = (String) tokens.get(names[i]);
+            maxLength = Math.max(maxLength, names[i].length());
+        }
+    }
+
+    /**
+     * The number of tokens this filter replaces.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Copies in to out replacing all tokens.  Neither stream is
+     * closed.
+     *
+     * <p>The first replacement of each token is logged.</p>
+     */
+    public void filter(Reader in, Writer writer) throws IOException {
+        // a token and both delimiters must always fit
+        char[] buffer = new char[Math.max(8 * 1024, 4 * (maxLength + 2))];
+        int length = 0;
+        int pos = 0;
+        boolean eof = false;
+        Output out = new Output(writer);
+        boolean[] logged = new boolean[names.length];
+
+        while (true) {
+            int start = indexOf(buffer, START, pos, length);
+            if (start == -1) {
+                out.write(buffer, pos, length - pos);
+                if (eof) {
+                    out.flush();
+                    return;
+                }
+                pos = length = 0;
+                int count = in.read(buffer, 0, buffer.length);
+                if (count == -1) {
+                    eof = true;
+                } else {
+                    length = count;
+                }
+                continue;
+            }
+
+            out.write(buffer, pos, start - pos);
+            pos = start;
+
+            // make sure the longest token and its end are in the buffer
+            if (!eof && length - start < maxLength + 2) {
+                System.arraycopy(buffer, start, buffer, 0, length - start);
+                length -= start;
+                pos = start = 0;
+                while (length < maxLength + 2) {
+                    int count = in.read(buffer, length, buffer.length - length);
+                    if (count == -1) {
+                        eof = true;
+                        break;
+                    }
+                    length += count;
+                }
+            }
+
+            // the name must not be empty
+            int end = indexOf(buffer, END, start + 2, 
+                              Math.min(length, start + maxLength + 2));
+            int token = end == -1 ? -1 : find(buffer, start + 1, end);
+            if (token == -1) {
+                out.write(buffer, start, 1);
+                pos = start + 1;
+            } else {
+                if (project != null && !logged[token]) {
+                    logged[token] = true;
+                    project.log("Replacing: " + START + names[token] + END 
+                                + " -> " + values[token], Project.MSG_VERBOSE);
+                }
+                out.write(values[token]);
+                pos = end + 1;
+            }
+        }
+    }
+
+    /**
+     * Replaces all tokens in s.
+     */
+    public String replace(String s) {
+        if (s.indexOf(START) == -1) {
+            return s;
+        }
+        StringWriter out = new StringWriter(s.length());
+        try {
+            filter(new StringReader(s), out);
+        } catch (IOException e) {
+            // can't happen with Strings
+            throw new BuildException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Collects output so the writer sees few large writes.
+     */
+    private static class Output {
+        private Writer writer;
+        private char[] buffer = new char[8 * 1024];
+        private int length = 0;
+
+        Output(Writer writer) {
+            this.writer = writer;
+        }
+
+        void write(char[] b, int off, int len) throws IOException {
+            if (length + len > buffer.length) {
+                flush();
+                if (len > buffer.length) {
+                    writer.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, length, len);
+            length += len;
+        }
+
+        void write(String s) throws IOException {
+            int len = s.length();
+            if (length + len > buffer.length) {
+                flush();
+                if (len > buffer.length) {
+                    writer.write(s);
+                    return;
+                }
+            }
+            s.getChars(0, len, buffer, length);
+            length += len;
+        }
+
+        void flush() throws IOException {
+            writer.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private static int indexOf(char[] buffer, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Binary search for the token whose name equals the given
+     * region of the buffer.
+     *
+     * @return the index of the token or -1.
+     */
+    private int find(char[] buffer, int from, int to) {
+        int low = 0;
+        int high = names.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(names[mid], buffer, from, to);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(String name, char[] buffer, int from, int to) {
+        int length = to - from;
+        int n = Math.min(name.length(), length);
+        for (int i = 0; i < n; i++) {
+            int c = name.charAt(i) - buffer[from + i];
+            if (c != 0) {
+                return c;
+            }
+        }
+        return name.length() - length;
+    }
+
+    /**
+     * Sorts the names in the order compare uses.
+     */
+    private static void sort(String[] a) {
+        // insertion sort, filter tables are small
+        for (int i = 1; i < a.length; i++) {
+            String s = a[i];
+            int j = i - 1;
+            while (j >= 0 && a[j].compareTo(s) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = s;
+        }
+    }
+}
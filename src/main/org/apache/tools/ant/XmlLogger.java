@@ -63,6 +63,12 @@ import org.w3c.dom.*;
  *  Generates a "log.xml" file in the current directory with
  *  an XML description of what happened during a build.
  *
+ *  <p>Normally the whole log is kept in memory and written when the
+ *  build has finished. If the property XmlLogger.stream is true when
+ *  the first target starts, elements are written as soon as they
+ *  start instead, so the memory needed doesn't grow with the size of
+ *  the log. Builds running targets in parallel are never streamed.</p>
+ *
  *  @see Project#addBuildListener(BuildListener)
  */
 public class XmlLogger implements BuildListener {
@@ -89,19 +95,42 @@ public class XmlLogger implements BuildListener {
     private static final String LOCATION_ATTR = "location";
     private static final String ERROR_ATTR = "error";
 
+    private static final String STYLESHEET = 
+        "<?xml:stylesheet type=\"text/xsl\" href=\"log.xsl\"?>\n\n";
+
     private Document doc;
     private Element buildElement;
-    private Element targetElement;
-    private Element taskElement;
 
     private long buildStartTime;
-    private long targetStartTime;
-    private long taskStartTime;
 
-    private Stack targetTimeStack = new Stack();
-    private Stack targetStack = new Stack();
-    private Stack taskTimeStack = new Stack();
-    private Stack taskStack = new Stack();
+    /** Target -> TimedElement of the targets that are running */
+    private Hashtable targets = new Hashtable();
+    /** Task -> TimedElement of the tasks that are running */
+    private Hashtable tasks = new Hashtable();
+    /** Thread -> Stack of the TimedElements it has opened */
+    private Hashtable threadStacks = new Hashtable();
+
+    /** whether the first target has started */
+    private boolean modeSelected;
+    /** messages logged before the first target has started */
+    private Vector earlyMessages = new Vector();
+    /** the log file if the log is written while the build is running */
+    private LogFile stream;
+
+    /**
+     *  An element that hasn't ended yet.
+     *
+     *  <p>Targets may run in parallel, so elements are looked up by the
+     *  target or task of an event - or by the thread that has fired
+     *  it - rather than kept on a single stack.</p>
+     */
+    private static class TimedElement {
+        Element element;
+        /** the element to add this one to when it ends, null for the build */
+        Element parent;
+        long startTime = System.currentTimeMillis();
+        Thread thread;
+    }
 
     /**
      *  Constructs a new BuildListener that logs build events to an XML file.
@@ -111,12 +140,68 @@ public class XmlLogger implements BuildListener {
 
     public void buildStarted(BuildEvent event) {
         buildStartTime = System.currentTimeMillis();
+        modeSelected = false;
+        earlyMessages.removeAllElements();
+        stream = null;
+        targets.clear();
+        tasks.clear();
+        threadStacks.clear();
 
         doc = builder.newDocument();
         buildElement = doc.createElement(BUILD_TAG);
     }
 
+    /**
+     * Decides whether to stream the log once the properties of the
+     * build are known and replays the messages logged so far.
+     */
+    private void selectMode(Project project) {
+        if (modeSelected) {
+            return;
+        }
+        modeSelected = true;
+
+        // the elements of targets running in parallel can't be
+        // written one after the other as they start
+        String streaming = project.getProperty("XmlLogger.stream");
+        if (streaming != null && Project.toBoolean(streaming)
+            && project.getThreadCount() == 1) {
+            try {
+                stream = new LogFile(getFileName(project), buildStartTime);
+            } catch (IOException exc) {
+                throw new BuildException("Unable to open log file", exc);
+            }
+            doc = null;
+            buildElement = null;
+        }
+
+        for (int i = 0; i < earlyMessages.size(); i++) {
+            messageLogged((BuildEvent) earlyMessages.elementAt(i));
+        }
+        earlyMessages.removeAllElements();
+    }
+
+    private static String getFileName(Project project) {
+        String outFilename = project.getProperty("XmlLogger.file");
+        if (outFilename == null) {
+            outFilename = "log.xml";
+        }
+        return outFilename;
+    }
+
     public void buildFinished(BuildEvent event) {
+        selectMode(event.getProject());
+        if (stream != null) {
+            try {
+                stream.end(event.getException());
+                stream.close();
+            } catch (IOException exc) {
+                throw new BuildException("Unable to close log file", exc);
+            }
+            stream = null;
+            return;
+        }
+
         long totalTime = System.currentTimeMillis() - buildStartTime;
         buildElement.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
 
@@ -125,15 +210,8 @@ public class XmlLogger implements BuildListener {
         }
 
         try {
-            String outFilename = 
-                event.getProject().getProperty("XmlLogger.file");
-
-            if (outFilename == null) {
-                outFilename = "log.xml";
-            }
-
-            Writer out = new FileWriter(outFilename);
-            out.write("<?xml:stylesheet type=\"text/xsl\" href=\"log.xsl\"?>\n\n");
+            Writer out = new FileWriter(getFileName(event.getProject()));
+            out.write(STYLESHEET);
             write(buildElement, out, 0);
             out.flush();
             out.close();
@@ -145,65 +223,78 @@ public class XmlLogger implements BuildListener {
     }
 
     public void targetStarted(BuildEvent event) {
-        if (targetElement != null) {
-            targetTimeStack.push(new Long(targetStartTime));
-            targetStack.push(targetElement);
+        selectMode(event.getProject());
+        if (stream != null) {
+            stream.start(TARGET_TAG, event.getTarget().getName(), null);
+            return;
         }
-        targetStartTime = System.currentTimeMillis();
-        targetElement = doc.createElement(TARGET_TAG);
-        targetElement.setAttribute(NAME_ATTR, event.getTarget().getName());
+
+        // a target started by a task - <ant> or <antcall> - belongs
+        // to the task running on the same thread
+        TimedElement parent = innermost(event.getThread());
+        TimedElement target = open(event, TARGET_TAG, 
+                                   event.getTarget().getName(), 
+                                   parent == null ? null : parent.element);
+        targets.put(event.getTarget(), target);
     }
 
     public void targetFinished(BuildEvent event) {
-        long totalTime = System.currentTimeMillis() - targetStartTime;
-        targetElement.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
-        if (taskElement == null) {
-            buildElement.appendChild(targetElement);
-        } else {
-            taskElement.appendChild(targetElement);
+        if (stream != null) {
+            stream.end(null);
+            return;
         }
 
-        targetElement = null;
-
-        if (!targetStack.isEmpty()) {
-            targetStartTime = ((Long) targetTimeStack.pop()).longValue();
-            targetElement = (Element) targetStack.pop();
+        TimedElement target = (TimedElement) targets.remove(event.getTarget());
+        if (target != null) {
+            close(target);
         }
     }
 
     public void taskStarted(BuildEvent event) {
-        if (taskElement != null) {
-            taskTimeStack.push(new Long(taskStartTime));
-            taskStack.push(taskElement);
+        selectMode(event.getProject());
+        if (stream != null) {
+            stream.start(TASK_TAG, getTaskName(event.getTask()), 
+                         event.getTask().getLocation().toString());
+            return;
         }
 
-        taskStartTime = System.currentTimeMillis();
-        taskElement = doc.createElement(TASK_TAG);
+        TimedElement parent = (TimedElement) targets.get(event.getTarget());
+        if (parent == null) {
+            parent = innermost(event.getThread());
+        }
+        TimedElement task = open(event, TASK_TAG, 
+                                 getTaskName(event.getTask()), 
+                                 parent == null ? null : parent.element);
+        task.element.setAttribute(LOCATION_ATTR, event.getTask().getLocation().toString());
+        tasks.put(event.getTask(), task);
+    }
 
-        String name = event.getTask().getClass().getName();
+    private static String getTaskName(Task task) {
+        String name = task.getClass().getName();
         int pos = name.lastIndexOf(".");
         if (pos != -1) {
             name = name.substring(pos + 1);
         }
-        taskElement.setAttribute(NAME_ATTR, name);
-
-        taskElement.setAttribute(LOCATION_ATTR, event.getTask().getLocation().toString());
+        return name;
     }
 
     public void taskFinished(BuildEvent event) {
-        long totalTime = System.currentTimeMillis() - taskStartTime;
-        taskElement.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
-        targetElement.appendChild(taskElement);
+        if (stream != null) {
+            stream.end(null);
+            return;
+        }
 
-        taskElement = null;
-        if (!taskStack.isEmpty()) {
-            taskStartTime = ((Long) taskTimeStack.pop()).longValue();
-            taskElement = (Element) taskStack.pop();
+        TimedElement task = (TimedElement) tasks.remove(event.getTask());
+        if (task != null) {
+            close(task);
         }
     }
 
     public void messageLogged(BuildEvent event) {
-        Element messageElement = doc.createElement(MESSAGE_TAG);
+        if (!modeSelected) {
+            earlyMessages.addElement(event);
+            return;
+        }
 
         String name = "debug";
         switch(event.getPriority()) {
@@ -212,22 +303,91 @@ public class XmlLogger implements BuildListener {
             case Project.MSG_INFO: name = "info"; break;
             default: name = "debug"; break;
         }
+
+        if (stream != null) {
+            stream.message(name, event.getMessage());
+            return;
+        }
+        if (buildElement == null) {
+            // the build has finished already
+            return;
+        }
+
+        Element messageElement = doc.createElement(MESSAGE_TAG);
         messageElement.setAttribute(PRIORITY_ATTR, name);
 
         Text messageText = doc.createTextNode(event.getMessage());
         messageElement.appendChild(messageText);
 
-        if (taskElement != null) {
-            taskElement.appendChild(messageElement);
+        TimedElement parent = null;
+        if (event.getTask() != null) {
+            parent = (TimedElement) tasks.get(event.getTask());
+        } else if (event.getTarget() != null) {
+            parent = (TimedElement) targets.get(event.getTarget());
+        }
+        if (parent == null) {
+            parent = innermost(event.getThread());
         }
-        else if (targetElement != null) {
-            targetElement.appendChild(messageElement);
+
+        if (parent != null) {
+            parent.element.appendChild(messageElement);
         }
         else {
             buildElement.appendChild(messageElement);
         }
     }
 
+    /**
+     *  Creates the element for a target or task that has started.
+     */
+    private TimedElement open(BuildEvent event, String tag, String name, 
+                              Element parent) {
+        TimedElement timed = new TimedElement();
+        timed.element = doc.createElement(tag);
+        timed.element.setAttribute(NAME_ATTR, name);
+        timed.parent = parent;
+        timed.thread = event.getThread();
+
+        Stack stack = (Stack) threadStacks.get(timed.thread);
+        if (stack == null) {
+            stack = new Stack();
+            threadStacks.put(timed.thread, stack);
+        }
+        stack.push(timed);
+        return timed;
+    }
+
+    /**
+     *  Adds the element of a target or task that has finished to its
+     *  parent.
+     */
+    private void close(TimedElement timed) {
+        long totalTime = System.currentTimeMillis() - timed.startTime;
+        timed.element.setAttribute(TIME_ATTR, DefaultLogger.formatTime(totalTime));
+        if (timed.parent == null) {
+            buildElement.appendChild(timed.element);
+        } else {
+            timed.parent.appendChild(timed.element);
+        }
+
+        Stack stack = (Stack) threadStacks.get(timed.thread);
+        if (stack != null) {
+            stack.removeElement(timed);
+            if (stack.isEmpty()) {
+                threadStacks.remove(timed.thread);
+            }
+        }
+    }
+
+    /**
+     *  The innermost element opened by the given thread that is still
+     *  open.
+     */
+    private TimedElement innermost(Thread thread) {
+        Stack stack = (Stack) threadStacks.get(thread);
+        return stack == null || stack.isEmpty() ? null : (TimedElement) stack.peek();
+    }
+
     /**
      *  Writes a DOM element to a file.
      */
@@ -249,7 +409,7 @@ public class XmlLogger implements BuildListener {
             out.write(" ");
             out.write(attr.getName());
             out.write("=\"");
-            out.write(attr.getValue());
+            out.write(escape(attr.getValue()));
             out.write("\"");
         }
         out.write(">");
@@ -269,7 +429,7 @@ public class XmlLogger implements BuildListener {
             }
 
             if (child.getNodeType() == Node.TEXT_NODE) {
-                out.write(((Text)child).getData());
+                out.write(escape(((Text)child).getData()));
             }
         }
 
@@ -287,4 +447,282 @@ public class XmlLogger implements BuildListener {
         out.write(element.getTagName());
         out.write(">\n");
     }
+
+    /**
+     *  Replaces the characters that have a special meaning in XML by
+     *  entities.
+     */
+    private static String escape(String s) {
+        StringBuffer sb = new StringBuffer(s.length());
+        escapeTo(sb, s);
+        return sb.toString();
+    }
+
+    private static void escapeTo(StringBuffer sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '<': sb.append("&lt;"); break;
+            case '>': sb.append("&gt;"); break;
+            case '&': sb.append("&amp;"); break;
+            case '"': sb.append("&quot;"); break;
+            default: sb.append(c); break;
+            }
+        }
+    }
+
+    /**
+     *  Writes the log while the build is running, in the same format
+     *  write(Element, Writer, int) uses.
+     *
+     *  <p>The time an element has taken - and the error that has
+     *  ended the build - is only known once the element is complete.
+     *  Start tags are written with room for these attributes that is
+     *  filled in when the element ends.</p>
+     */
+    private static class LogFile {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        /** space left in start tags for the time attribute */
+        private static final int RESERVED = 40;
+
+        private RandomAccessFile file;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int count = 0;
+        /** position of the first byte of buffer in the file */
+        private long flushed = 0;
+
+        /** open elements */
+        private int depth = 0;
+        private String[] tags = new String[16];
+        private long[] startTimes = new long[16];
+        private long[] reservations = new long[16];
+        private boolean[] hasChildren = new boolean[16];
+
+        LogFile(String fileName, long buildStartTime) throws IOException {
+            File f = new File(fileName);
+            if (f.exists()) {
+                f.delete();
+            }
+            file = new RandomAccessFile(f, "rw");
+            write(STYLESHEET);
+            tags[0] = BUILD_TAG;
+            startTimes[0] = buildStartTime;
+            write("<" + BUILD_TAG);
+            reservations[0] = position();
+            reserve();
+        }
+
+        /**
+         *  Writes the start tag of a target or task.
+         */
+        void start(String tag, String name, String location) {
+            openChild();
+            if (depth == tags.length) {
+                String[] t = new String[depth * 2];
+                System.arraycopy(tags, 0, t, 0, depth);
+                tags = t;
+                startTimes = grow(startTimes);
+                reservations = grow(reservations);
+                boolean[] b = new boolean[depth * 2];
+                System.arraycopy(hasChildren, 0, b, 0, depth);
+                hasChildren = b;
+            }
+            StringBuffer sb = new StringBuffer();
+            indent(sb, depth);
+            sb.append('<').append(tag);
+            attribute(sb, NAME_ATTR, name);
+            if (location != null) {
+                attribute(sb, LOCATION_ATTR, location);
+            }
+            write(sb.toString());
+            tags[depth] = tag;
+            startTimes[depth] = System.currentTimeMillis();
+            reservations[depth] = position();
+            hasChildren[depth] = false;
+            reserve();
+        }
+
+        void message(String priority, String text) {
+            openChild();
+            StringBuffer sb = new StringBuffer();
+            indent(sb, depth);
+            sb.append('<').append(MESSAGE_TAG);
+            attribute(sb, PRIORITY_ATTR, priority);
+            sb.append('>');
+            escapeTo(sb, text);
+            sb.append("</").append(MESSAGE_TAG).append(">\n");
+            write(sb.toString());
+        }
+
+        /**
+         *  Ends the innermost open element.
+         */
+        void end(Throwable error) {
+            if (depth == 0) {
+                return;
+            }
+            depth--;
+            StringBuffer sb = new StringBuffer();
+            if (hasChildren[depth]) {
+                indent(sb, depth);
+            }
+            sb.append("</").append(tags[depth]).append(">\n");
+            write(sb.toString());
+
+            sb.setLength(0);
+            long time = System.currentTimeMillis() - startTimes[depth];
+            attribute(sb, TIME_ATTR, DefaultLogger.formatTime(time));
+            if (error != null) {
+                attribute(sb, ERROR_ATTR, error.toString());
+            }
+            patch(reservations[depth], toBytes(sb.toString()));
+        }
+
+        void close() throws IOException {
+            while (depth > 0) {
+                end(null);
+            }
+            flush();
+            file.close();
+        }
+
+        /**
+         *  Makes sure the start tag of the innermost open element is
+         *  followed by a line break before a child is written.
+         */
+        private void openChild() {
+            if (depth > 0 && !hasChildren[depth - 1]) {
+                hasChildren[depth - 1] = true;
+                write("\n");
+            }
+        }
+
+        /**
+         *  Leaves room for the attributes written by end, ends the
+         *  start tag and opens the element.
+         */
+        private void reserve() {
+            StringBuffer sb = new StringBuffer(RESERVED + 1);
+            for (int i = 0; i < RESERVED; i++) {
+                sb.append(' ');
+            }
+            sb.append('>');
+            write(sb.toString());
+            depth++;
+        }
+
+        private long position() {
+            return flushed + count;
+        }
+
+        private void write(String s) {
+            byte[] b = toBytes(s);
+            if (count + b.length > buffer.length) {
+                flush();
+            }
+            if (b.length > buffer.length) {
+                try {
+                    file.write(b);
+                } catch (IOException exc) {
+                    throw new BuildException("Unable to write log file", exc);
+                }
+                flushed += b.length;
+            } else {
+                System.arraycopy(b, 0, buffer, count, b.length);
+                count += b.length;
+            }
+        }
+
+        /**
+         *  Writes the attributes of an element into the space that has
+         *  been reserved in its start tag, moving the rest of the file
+         *  if they don't fit.
+         */
+        private void patch(long pos, byte[] b) {
+            if (b.length > RESERVED) {
+                flush();
+                move(pos + RESERVED, b.length - RESERVED);
+            }
+            if (pos >= flushed) {
+                System.arraycopy(b, 0, buffer, (int) (pos - flushed), 
+                                 b.length);
+            } else {
+                if (pos + b.length > flushed) {
+                    flush();
+                }
+                writeFile(pos, b);
+            }
+        }
+
+        /**
+         *  Moves the part of the file that starts at pos by the given
+         *  number of bytes.
+         */
+        private void move(long pos, int distance) {
+            try {
+                long end = file.length();
+                while (end > pos) {
+                    int len = (int) Math.min(buffer.length, end - pos);
+                    file.seek(end - len);
+                    file.readFully(buffer, 0, len);
+                    file.seek(end - len + distance);
+                    file.write(buffer, 0, len);
+                    end -= len;
+                }
+                flushed += distance;
+                file.seek(flushed);
+            } catch (IOException exc) {
+                throw new BuildException("Unable to write log file", exc);
+            }
+        }
+
+        private void flush() {
+            try {
+                file.write(buffer, 0, count);
+            } catch (IOException exc) {
+                throw new BuildException("Unable to write log file", exc);
+            }
+            flushed += count;
+            count = 0;
+        }
+
+        private void writeFile(long pos, byte[] b) {
+            try {
+                file.seek(pos);
+                file.write(b);
+                file.seek(flushed);
+            } catch (IOException exc) {
+                throw new BuildException("Unable to write log file", exc);
+            }
+        }
+
+        private static byte[] toBytes(String s) {
+            try {
+                return s.getBytes("UTF8");
+            } catch (UnsupportedEncodingException e) {
+                return s.getBytes();
+            }
+        }
+
+        private static long[] grow(long[] a) {
+            long[] b = new long[a.length * 2];
+            System.arraycopy(a, 0, b, 0, a.length);
+            return b;
+        }
+
+        private static void indent(StringBuffer sb, int indent) {
+            for (int i = 0; i < indent; i++) {
+                sb.append('\t');
+            }
+        }
+
+        private static void attribute(StringBuffer sb, String name, 
+                                      String value) {
+            sb.append(' ').append(name).append("=\"");
+            escapeTo(sb, value);
+            sb.append('"');
+        }
+    }
 }
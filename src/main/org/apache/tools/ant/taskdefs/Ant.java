@@ -83,15 +83,35 @@ public class Ant extends Task {
     private String antFile = null;
     private String target = null;
     private String output = null;
+    private boolean reuse = false;
 
     Vector properties=new Vector();
     Project p1;
 
+    /**
+     * A configured sub-project that can be used again.
+     */
+    private static class ReusableProject {
+        Project project;
+        boolean inUse;
+
+        /** state before the build file has been read */
+        Hashtable initialProperties;
+        Hashtable initialUserProperties;
+        Hashtable taskDefinitions;
+        Hashtable dataTypeDefinitions;
+        Vector listeners;
+
+        /** state after the build file has been read */
+        Hashtable properties;
+        Hashtable userProperties;
+        Hashtable references;
+    }
+
     public void init() {
         p1 = new Project();
         p1.setJavaVersionProperty();
-        p1.addTaskDefinition("property", 
-                             (Class)project.getTaskDefinitions().get("property"));
+        p1.inheritDefinitions(project);
     }
 
     private void reinit() {
@@ -114,10 +134,7 @@ public class Ant extends Task {
     }
 
     private void initializeProject() {
-        Vector listeners = project.getBuildListeners();
-        for (int i = 0; i < listeners.size(); i++) {
-            p1.addBuildListener((BuildListener)listeners.elementAt(i));
-        }
+        p1.inheritBuildListeners(project);
 
         if (output != null) {
             try {
@@ -133,30 +150,8 @@ public class Ant extends Task {
             }
         }
 
-        Hashtable taskdefs = project.getTaskDefinitions();
-        Enumeration et = taskdefs.keys();
-        while (et.hasMoreElements()) {
-            String taskName = (String) et.nextElement();
-            Class taskClass = (Class) taskdefs.get(taskName);
-            p1.addTaskDefinition(taskName, taskClass);
-        }
-
-        Hashtable typedefs = project.getDataTypeDefinitions();
-        Enumeration e = typedefs.keys();
-        while (e.hasMoreElements()) {
-            String typeName = (String) e.nextElement();
-            Class typeClass = (Class) typedefs.get(typeName);
-            p1.addDataTypeDefinition(typeName, typeClass);
-        }
-
-        // set user-define properties
-        Hashtable prop1 = project.getProperties();
-        e = prop1.keys();
-        while (e.hasMoreElements()) {
-            String arg = (String) e.nextElement();
-            String value = (String) prop1.get(arg);
-            p1.setProperty(arg, value);
-        }
+        p1.inheritDefinitions(project);
+        p1.inheritProperties(project);
     }
 
     /**
@@ -196,7 +191,33 @@ public class Ant extends Task {
             }
 
             p1.setUserProperty( "ant.file" , antFile );
-            ProjectHelper.configureProject(p1, new File(antFile));
+
+            ReusableProject reused = null;
+            if (reuse && output == null) {
+                reused = findReusableProject(antFile);
+            }
+            if (reused != null) {
+                log("Reusing configured project for " + antFile, 
+                    Project.MSG_VERBOSE);
+                p1 = reused.project;
+            } else {
+                if (reuse && output == null) {
+                    reused = createReusableProject(antFile);
+                }
+                try {
+                    ProjectHelper.configureProject(p1, new File(antFile));
+                } catch (BuildException be) {
+                    if (reused != null) {
+                        discard(reused, antFile);
+                    }
+                    throw be;
+                }
+                if (reused != null) {
+                    reused.properties = copy(p1.getProperties());
+                    reused.userProperties = copy(p1.getUserProperties());
+                    reused.references = copy(p1.getReferences());
+                }
+            }
             
             if (target == null) {
                 target = p1.getDefaultTarget();
@@ -210,8 +231,17 @@ public class Ant extends Task {
                 throw new BuildException("ant task calling its own parent target");
             }
 
-            p1.executeTarget(target);
+            try {
+                p1.executeTarget(target);
+            } finally {
+                if (reused != null) {
+                    release(reused, antFile);
+                }
+            }
         } finally {
+            // the child project has its own scan cache, so nothing it
+            // changed on disk has been seen by ours
+            project.getScanCache().clear();
             // help the gc
             p1 = null;
         }
@@ -233,6 +263,123 @@ public class Ant extends Task {
         this.output = s;
     }
 
+    /**
+     * Whether a sub-project that has been configured from the same
+     * build file with identical properties before may be used again
+     * instead of reading the build file again.
+     */
+    public void setReuse(boolean reuse) {
+        this.reuse = reuse;
+    }
+
+    /**
+     * Looks for a sub-project that has been read from the given file
+     * and started out with the same properties, definitions and
+     * listeners as p1.
+     *
+     * @return null if there is none.
+     */
+    private ReusableProject findReusableProject(String antFile) {
+        Vector candidates = getReusableProjects(antFile);
+        synchronized (candidates) {
+            for (int i = 0; i < candidates.size(); i++) {
+                ReusableProject r = 
+                    (ReusableProject) candidates.elementAt(i);
+                if (!r.inUse 
+                    && sameEntries(r.initialProperties, p1.getProperties())
+                    && sameEntries(r.initialUserProperties, 
+                                   p1.getUserProperties())
+                    && sameEntries(r.taskDefinitions, 
+                                   p1.getUserTaskDefinitions())
+                    && sameEntries(r.dataTypeDefinitions, 
+                                   p1.getUserDataTypeDefinitions())
+                    && r.listeners.equals(p1.getBuildListeners())) {
+                    r.inUse = true;
+                    restore(r.project.getProperties(), r.properties);
+                    restore(r.project.getUserProperties(), r.userProperties);
+                    restore(r.project.getReferences(), r.references);
+                    return r;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remembers the state of p1 before the build file is read.
+     */
+    private ReusableProject createReusableProject(String antFile) {
+        ReusableProject r = new ReusableProject();
+        r.project = p1;
+        r.inUse = true;
+        r.initialProperties = copy(p1.getProperties());
+        r.initialUserProperties = copy(p1.getUserProperties());
+        r.taskDefinitions = copy(p1.getUserTaskDefinitions());
+        r.dataTypeDefinitions = copy(p1.getUserDataTypeDefinitions());
+        r.listeners = (Vector) p1.getBuildListeners().clone();
+        Vector candidates = getReusableProjects(antFile);
+        synchronized (candidates) {
+            candidates.addElement(r);
+        }
+        return r;
+    }
+
+    private void release(ReusableProject r, String antFile) {
+        synchronized (getReusableProjects(antFile)) {
+            r.inUse = false;
+        }
+    }
+
+    private void discard(ReusableProject r, String antFile) {
+        Vector candidates = getReusableProjects(antFile);
+        synchronized (candidates) {
+            candidates.removeElement(r);
+        }
+    }
+
+    /**
+     * The sub-projects of our project that have been read from the
+     * given file.
+     */
+    private Vector getReusableProjects(String antFile) {
+        Hashtable subProjects = project.getSubProjects();
+        synchronized (subProjects) {
+            Vector v = (Vector) subProjects.get(antFile);
+            if (v == null) {
+                v = new Vector();
+                subProjects.put(antFile, v);
+            }
+            return v;
+        }
+    }
+
+    private static Hashtable copy(Hashtable h) {
+        return (Hashtable) h.clone();
+    }
+
+    private static void restore(Hashtable h, Hashtable saved) {
+        h.clear();
+        Enumeration e = saved.keys();
+        while (e.hasMoreElements()) {
+            Object key = e.nextElement();
+            h.put(key, saved.get(key));
+        }
+    }
+
+    private static boolean sameEntries(Hashtable h1, Hashtable h2) {
+        if (h1.size() != h2.size()) {
+            return false;
+        }
+        Enumeration e = h1.keys();
+        while (e.hasMoreElements()) {
+            Object key = e.nextElement();
+            if (!h1.get(key).equals(h2.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Property createProperty() {
         if (p1 == null) {
             reinit();
@@ -129,11 +129,17 @@ public class Available extends Task {
             this.loader = new AntClassLoader(project, classpath, false);
         }
 
-        if ((classname != null) && !checkClass(classname)) return;
-        if ((file != null) && !checkFile(file)) return;
-        if ((resource != null) && !checkResource(resource)) return;
+        try {
+            if ((classname != null) && !checkClass(classname)) return;
+            if ((file != null) && !checkFile(file)) return;
+            if ((resource != null) && !checkResource(resource)) return;
 
-        this.project.setProperty(property, value);
+            this.project.setProperty(property, value);
+        } finally {
+            if (loader != null) {
+                loader.cleanup();
+            }
+        }
     }
 
     private boolean checkFile(File file) {
@@ -142,7 +148,14 @@ public class Available extends Task {
 
     private boolean checkResource(String resource) {
         if (loader != null) {
-            return (loader.getResourceAsStream(resource) != null);
+            InputStream stream = loader.getResourceAsStream(resource);
+            if (stream == null) {
+                return false;
+            }
+            try {
+                stream.close();
+            } catch (IOException e) {}
+            return true;
         } else {
             return (this.getClass().getResourceAsStream(resource) != null);
         }
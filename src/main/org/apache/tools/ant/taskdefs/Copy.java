@@ -83,6 +83,7 @@ public class Copy extends Task {
     protected boolean flatten = false;
     protected int verbosity = Project.MSG_VERBOSE;
     protected boolean includeEmpty = true;
+    protected int threadCount = 1;
 
     protected Hashtable fileCopyMap = new Hashtable();
     protected Hashtable dirCopyMap = new Hashtable();
@@ -151,6 +152,13 @@ public class Copy extends Task {
         this.includeEmpty = includeEmpty;
     }
 
+    /**
+     * Sets the number of files to copy at the same time.
+     */
+    public void setThreads(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     /**
      * Adds a set of files (nested fileset attribute).
      */
@@ -172,7 +180,7 @@ public class Copy extends Task {
             }
 
             if (forceOverwrite || 
-                (file.lastModified() > destFile.lastModified())) {
+                project.getChangeDetector().isOutOfDate(file, destFile)) {
                 fileCopyMap.put(file.getAbsolutePath(), destFile.getAbsolutePath());
             }
         }
@@ -190,7 +198,11 @@ public class Copy extends Task {
         }
 
         // do all the copy operations now...
-        doFileOperations();
+        try {
+            doFileOperations();
+        } finally {
+            invalidateScans();
+        }
 
         // clean up destDir again - so this instance can be used a second
         // time without throwing an exception
@@ -221,6 +233,10 @@ public class Copy extends Task {
             throw new BuildException("One of destfile or destdir must be set.");
         }
 
+        if (threadCount < 1) {
+            throw new BuildException("threads must be a positive number.");
+        }
+
         if (file != null && file.exists() && file.isDirectory()) {
             throw new BuildException("Use a fileset to copy directories.");
         }
@@ -250,7 +266,7 @@ public class Copy extends Task {
                 dest = new File(toDir, filename);
             }
             if (forceOverwrite ||
-                (src.lastModified() > dest.lastModified())) {
+                project.getChangeDetector().isOutOfDate(src, dest)) {
                 fileCopyMap.put(src.getAbsolutePath(),
                                  dest.getAbsolutePath());
             }
@@ -273,6 +289,14 @@ public class Copy extends Task {
         }
     }
 
+    /**
+     * Drops cached scans of the directories that have been written
+     * to.
+     */
+    protected void invalidateScans() {
+        project.getScanCache().invalidate(destDir);
+    }
+
     /**
      * Actually does the file (and possibly empty directory) copies.
      * This is a good method for subclasses to override.
@@ -282,21 +306,13 @@ public class Copy extends Task {
             log("Copying " + fileCopyMap.size() + " files to " + 
                 destDir.getAbsolutePath() );
 
-            Enumeration e = fileCopyMap.keys();
-            while (e.hasMoreElements()) {
-                String fromFile = (String) e.nextElement();
-                String toFile = (String) fileCopyMap.get(fromFile);
-
-                try {
-                    log("Copying " + fromFile + " to " + toFile, verbosity);
-                    project.copyFile(fromFile, 
-                                     toFile, 
-                                     filtering, 
-                                     forceOverwrite);
-                } catch (IOException ioe) {
-                    String msg = "Failed to copy " + fromFile + " to " + toFile
-                        + " due to " + ioe.getMessage();
-                    throw new BuildException(msg, ioe, location);
+            if (threadCount > 1 && fileCopyMap.size() > 1) {
+                new ParallelCopy().copy();
+            } else {
+                Enumeration e = fileCopyMap.keys();
+                while (e.hasMoreElements()) {
+                    String fromFile = (String) e.nextElement();
+                    copyFile(fromFile, (String) fileCopyMap.get(fromFile));
                 }
             }
         }
@@ -321,4 +337,108 @@ public class Copy extends Task {
         }
     }
 
+    /**
+     * Copies a single file of fileCopyMap.
+     */
+    private void copyFile(String fromFile, String toFile) {
+        try {
+            log("Copying " + fromFile + " to " + toFile, verbosity);
+            project.copyFile(fromFile, 
+                             toFile, 
+                             filtering, 
+                             forceOverwrite);
+        } catch (IOException ioe) {
+            String msg = "Failed to copy " + fromFile + " to " + toFile
+                + " due to " + ioe.getMessage();
+            throw new BuildException(msg, ioe, location);
+        }
+    }
+
+    /**
+     * Copies the files of fileCopyMap with up to threadCount threads.
+     *
+     * <p>Files copied to the same destination - with flatten or a
+     * mapper that maps several files to one - are copied one after
+     * the other by a single thread, in the order a sequential copy
+     * would use.</p>
+     *
+     * <p>The first failure stops the threads from starting new
+     * copies and is thrown once the copies already running have
+     * completed.</p>
+     */
+    private class ParallelCopy implements Runnable {
+        /** Vectors of source files sharing a destination */
+        private Vector groups = new Vector();
+        private int nextGroup = 0;
+        private Throwable error;
+
+        ParallelCopy() {
+            Hashtable byDestination = new Hashtable();
+            Enumeration e = fileCopyMap.keys();
+            while (e.hasMoreElements()) {
+                String fromFile = (String) e.nextElement();
+                Object toFile = fileCopyMap.get(fromFile);
+                Vector group = (Vector) byDestination.get(toFile);
+                if (group == null) {
+                    group = new Vector(1);
+                    byDestination.put(toFile, group);
+                    groups.addElement(group);
+                }
+                group.addElement(fromFile);
+            }
+        }
+
+        void copy() {
+            int count = Math.min(threadCount, groups.size());
+            Thread[] threads = new Thread[count];
+            for (int i = 0; i < count; i++) {
+                threads[i] = new Thread(this, "ant-copy-" + i);
+                threads[i].start();
+            }
+            for (int i = 0; i < count; i++) {
+                while (threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    } catch (InterruptedException e) {
+                        // stop handing out work, but wait for the
+                        // running threads to finish their files
+                        failed(new BuildException("interrupted while copying", 
+                                                  location));
+                    }
+                }
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+        }
+
+        public void run() {
+            Vector group;
+            while ((group = next()) != null) {
+                try {
+                    for (int i = 0; i < group.size(); i++) {
+                        String fromFile = (String) group.elementAt(i);
+                        copyFile(fromFile, (String) fileCopyMap.get(fromFile));
+                    }
+                } catch (Throwable t) {
+                    failed(t);
+                }
+            }
+        }
+
+        private synchronized Vector next() {
+            if (error != null || nextGroup == groups.size()) {
+                return null;
+            }
+            return (Vector) groups.elementAt(nextGroup++);
+        }
+
+        private synchronized void failed(Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+        }
+    }
 }
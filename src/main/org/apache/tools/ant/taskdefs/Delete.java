@@ -210,42 +210,46 @@ public class Delete extends MatchingTask {
             throw new BuildException("At least one of the file or dir attributes, or a fileset element, must be set.");
         } 
 
-        // delete the single file
-        if (file != null) {
-            if (file.exists()) {
-                if (file.isDirectory()) {
-                    log("Directory " + file.getAbsolutePath() + " cannot be removed using the file attribute.  Use dir instead.");
-                } else {
-                    log("Deleting: " + file.getAbsolutePath());
+        try {
+            // delete the single file
+            if (file != null) {
+                if (file.exists()) {
+                    if (file.isDirectory()) {
+                        log("Directory " + file.getAbsolutePath() + " cannot be removed using the file attribute.  Use dir instead.");
+                    } else {
+                        log("Deleting: " + file.getAbsolutePath());
   
-                    if (!file.delete()) {
-                        throw new BuildException("Unable to delete file " + file.getAbsolutePath());
+                        if (!file.delete()) {
+                            throw new BuildException("Unable to delete file " + file.getAbsolutePath());
+                        } 
                     } 
-                } 
-            } else {
-                log("Could not find file " + file.getAbsolutePath() + " to delete.");
+                } else {
+                    log("Could not find file " + file.getAbsolutePath() + " to delete.");
+                }
             }
-        }
 
-        // delete the directory
-        if (dir != null && dir.exists() && dir.isDirectory() && !usedMatchingTask) {
-            log("Deleting directory " + dir.getAbsolutePath());
-            removeDir(dir);
-        }
+            // delete the directory
+            if (dir != null && dir.exists() && dir.isDirectory() && !usedMatchingTask) {
+                log("Deleting directory " + dir.getAbsolutePath());
+                removeDir(dir);
+            }
 
-        // delete the files in the filesets
-        for (int i=0; i<filesets.size(); i++) {
-            FileSet fs = (FileSet) filesets.elementAt(i);
-            DirectoryScanner ds = fs.getDirectoryScanner(project);
-            String[] files = ds.getIncludedFiles();
-            removeFiles(fs.getDir(project), files);
-        }
+            // delete the files in the filesets
+            for (int i=0; i<filesets.size(); i++) {
+                FileSet fs = (FileSet) filesets.elementAt(i);
+                DirectoryScanner ds = fs.getDirectoryScanner(project);
+                String[] files = ds.getIncludedFiles();
+                removeFiles(fs.getDir(project), files);
+            }
 
-        // delete the files from the default fileset
-        if (usedMatchingTask && dir != null) {
-            DirectoryScanner ds = super.getDirectoryScanner(dir);
-            String [] files = ds.getIncludedFiles();
-            removeFiles(dir, files);
+            // delete the files from the default fileset
+            if (usedMatchingTask && dir != null) {
+                DirectoryScanner ds = super.getDirectoryScanner(dir);
+                String [] files = ds.getIncludedFiles();
+                removeFiles(dir, files);
+            }
+        } finally {
+            invalidateScans();
         }
     } 
 
@@ -253,6 +257,23 @@ public class Delete extends MatchingTask {
 //  protected and private methods
 //************************************************************************
 
+    /**
+     * Drops cached scans of everything that may have been deleted.
+     */
+    private void invalidateScans() {
+        ScanCache cache = project.getScanCache();
+        if (file != null) {
+            cache.invalidate(file);
+        }
+        if (dir != null) {
+            cache.invalidate(dir);
+        }
+        for (int i=0; i<filesets.size(); i++) {
+            FileSet fs = (FileSet) filesets.elementAt(i);
+            cache.invalidate(fs.getDir(project));
+        }
+    }
+
     protected void removeDir(File d) {
         String[] list = d.list();
         for (int i = 0; i < list.length; i++) {
@@ -90,6 +90,7 @@ public class ExecuteJava {
     public void execute(Project project) throws BuildException{
         final String classname = javaCommand.getExecutable();
         final Object[] argument = { javaCommand.getArguments() };
+        AntClassLoader loader = null;
         try {
             if (sysProperties != null) {
                 sysProperties.setSystem();
@@ -100,7 +101,7 @@ public class ExecuteJava {
             if (classpath == null) {
                 target = Class.forName(classname);
             } else {
-                AntClassLoader loader = new AntClassLoader(project, classpath);
+                loader = new AntClassLoader(project, classpath);
                 target = loader.forceLoadClass(classname);
             }
             final Method main = target.getMethod("main", param);
@@ -120,6 +121,9 @@ public class ExecuteJava {
         } catch (Exception e) {
             throw new BuildException(e);
         } finally {
+            if (loader != null) {
+                loader.cleanup();
+            }
             if (sysProperties != null) {
                 sysProperties.restoreSystem();
             }
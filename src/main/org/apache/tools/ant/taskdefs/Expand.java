@@ -56,16 +56,24 @@ package org.apache.tools.ant.taskdefs;
 
 import org.apache.tools.ant.*;
 import java.io.*;
+import java.util.*;
 import java.util.zip.*;
 /**
  * Unzip a file. 
  *
+ * <p>Archives are read through their central directory, so entries
+ * not matched by the nested patterns are never inflated and the
+ * remaining ones can be expanded by several threads at once.</p>
+ *
  * @author costin@dnt.ro
  * @author <a href="mailto:stefan.bodewig@megabit.net">Stefan Bodewig</a>
  */
 public class Expand extends MatchingTask {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private File dest; // req
     private File source; // req
+    private int threadCount = 1;
     
     /**
      * Do the work.
@@ -78,46 +86,179 @@ public class Expand extends MatchingTask {
             log("!! expand is deprecated. Use unzip instead. !!");
         }
         
-
-        Touch touch = (Touch) project.createTask("touch");
-        touch.setOwningTarget(target);
-        touch.setTaskName(getTaskName());
-        touch.setLocation(getLocation());
-        
         if (source == null) {
             throw new BuildException("Source attribute must be specified");
         }
         if (dest == null) {
             throw new BuildException("Dest attribute must be specified");
         }
+        if (threadCount < 1) {
+            throw new BuildException("threads must be a positive number.");
+        }
 
-        if (source.isDirectory()) {
-            // get all the files in the descriptor directory
-            DirectoryScanner ds = super.getDirectoryScanner(source);
+        try {
+            if (source.isDirectory()) {
+                // get all the files in the descriptor directory
+                DirectoryScanner ds = super.getDirectoryScanner(source);
     
-            String[] files = ds.getIncludedFiles();
-            for (int i = 0; i < files.length; ++i) {
-                File file = new File(source, files[i]);
-                expandFile(touch, file, dest);
+                String[] files = ds.getIncludedFiles();
+                for (int i = 0; i < files.length; ++i) {
+                    File file = new File(source, files[i]);
+                    expandFile(file, dest, null);
+                }
             }
-        }
-        else {
-            expandFile(touch, source, dest);
+            else {
+                EntryMatcher matcher = new EntryMatcher();
+                fileset.setupDirectoryScanner(matcher, project);
+                expandFile(source, dest, matcher);
+            }
+        } finally {
+            project.getScanCache().invalidate(dest);
         }
         
 
     }
 
-    private void expandFile(Touch touch, File srcF, File dir) {
+    /**
+     * Expands srcF into dir, restricted to the entries accepted by
+     * matcher if that is not null.
+     */
+    private void expandFile(File srcF, File dir, EntryMatcher matcher) {
+        ZipFile zf = null;
+        try {
+            zf = new ZipFile(srcF);
+        } catch (IOException e) {
+            // not readable through the central directory (truncated
+            // or self-extracting archives), try it the old way
+            log("Can't open " + srcF + " as a zip file (" + e.getMessage()
+                + "), reading it sequentially", Project.MSG_VERBOSE);
+            expandStream(srcF, dir, matcher);
+            return;
+        }
+
+        try {
+            log("Expanding: " + srcF + " into " + dir, Project.MSG_INFO);
+
+            Vector fileEntries = new Vector();
+            Vector fileTargets = new Vector();
+            Vector dirEntries = new Vector();
+            Vector dirTargets = new Vector();
+            Hashtable parents = new Hashtable();
+
+            Enumeration e = zf.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry ze = (ZipEntry) e.nextElement();
+                if (matcher != null && !matcher.matches(ze.getName())) {
+                    continue;
+                }
+                File f = new File(dir, project.translatePath(ze.getName()));
+                if (ze.isDirectory()) {
+                    dirEntries.addElement(ze);
+                    dirTargets.addElement(f);
+                    parents.put(f.getPath(), f);
+                } else {
+                    fileEntries.addElement(ze);
+                    fileTargets.addElement(f);
+                    String parent = f.getParent();
+                    if (parent != null && !parents.containsKey(parent)) {
+                        parents.put(parent, new File(parent));
+                    }
+                }
+            }
+
+            // create intermediary directories - sometimes zip don't add them
+            e = parents.elements();
+            while (e.hasMoreElements()) {
+                ((File) e.nextElement()).mkdirs();
+            }
+
+            ZipEntry[] entries = new ZipEntry[fileEntries.size()];
+            fileEntries.copyInto(entries);
+            File[] targets = new File[fileTargets.size()];
+            fileTargets.copyInto(targets);
+
+            if (threadCount > 1 && entries.length > 1) {
+                new ParallelExpand(zf, entries, targets).expand();
+            } else {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int i = 0; i < entries.length; i++) {
+                    extractEntry(zf, entries[i], targets[i], buffer);
+                }
+            }
+
+            // after the files, as writing them changes the times of
+            // their directories
+            for (int i = 0; i < dirEntries.size(); i++) {
+                setTime((File) dirTargets.elementAt(i),
+                        (ZipEntry) dirEntries.elementAt(i));
+            }
+            log("expand complete", Project.MSG_VERBOSE );
+        } finally {
+            try {
+                zf.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Writes a single entry of zf to f, using buffer to copy the data.
+     */
+    private void extractEntry(ZipFile zf, ZipEntry ze, File f, 
+                              byte[] buffer) {
+        log("expand-file " + ze.getName() , Project.MSG_VERBOSE );
+        InputStream in = null;
+        FileOutputStream fos = null;
+        try {
+            in = zf.getInputStream(ze);
+            try {
+                fos = new FileOutputStream(f);
+            } catch (FileNotFoundException ex) {
+                log("Unable to expand to file " + f.getPath(), 
+                    Project.MSG_WARN);
+                return;
+            }
+            int length = 0;
+            while ((length = in.read(buffer)) >= 0) {
+                fos.write(buffer, 0, length);
+            }
+            fos.close();
+            fos = null;
+            setTime(f, ze);
+        } catch (IOException ioe) {
+            throw new BuildException("Error while expanding " + zf.getName()
+                                     + " (entry " + ze.getName() + ")", 
+                                     ioe, location);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Reads srcF entry by entry, for archives ZipFile can't open.
+     */
+    private void expandStream(File srcF, File dir, EntryMatcher matcher) {
         ZipInputStream zis = null;
 	try {
 	    
 	    log("Expanding: " + srcF + " into " + dir, Project.MSG_INFO);
 	    // code from WarExpand
-	    zis = new ZipInputStream(new FileInputStream(srcF));
+	    zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(srcF), BUFFER_SIZE));
 	    ZipEntry ze = null;
+	    byte[] buffer = new byte[BUFFER_SIZE];
 	    
 	    while ((ze = zis.getNextEntry()) != null) {
+                if (matcher != null && !matcher.matches(ze.getName())) {
+                    continue;
+                }
 		File f = new File(dir, project.translatePath(ze.getName()));
 		try {
 		    log("expand-file " + ze.getName() , Project.MSG_VERBOSE );
@@ -128,7 +269,6 @@ public class Expand extends MatchingTask {
 		    if (ze.isDirectory()) {
 			f.mkdirs(); 
 		    } else {
-			byte[] buffer = new byte[1024];
 			int length = 0;
 			FileOutputStream fos = new FileOutputStream(f);
 			
@@ -139,11 +279,7 @@ public class Expand extends MatchingTask {
 			fos.close();
 		    }
 
-                    if (project.getJavaVersion() != Project.JAVA_1_1) {
-                        touch.setFile(f);
-                        touch.setMillis(ze.getTime());
-                        touch.touch();
-                    }
+                    setTime(f, ze);
 
 		} catch( FileNotFoundException ex ) {
 		    log("Unable to expand to file " + f.getPath(), Project.MSG_WARN);
@@ -162,6 +298,15 @@ public class Expand extends MatchingTask {
 	}
     }
 
+    /**
+     * Gives f the modification time of its entry, not possible on JDK 1.1.
+     */
+    private void setTime(File f, ZipEntry ze) {
+        if (project.getJavaVersion() != Project.JAVA_1_1 && ze.getTime() >= 0) {
+            Touch.setLastModified(f, ze.getTime(), location);
+        }
+    }
+
     /**
      * Set the destination directory. File will be unzipped into the
      * destination directory.
@@ -180,4 +325,111 @@ public class Expand extends MatchingTask {
     public void setSrc(File s) {
 	this.source = s;
     }
+
+    /**
+     * Sets the number of entries to expand at the same time.
+     */
+    public void setThreads(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Matches entry names against the patterns of this task.
+     *
+     * <p>Default excludes don't apply, an archive's CVS directories
+     * are expanded like everything else.</p>
+     */
+    static class EntryMatcher extends DirectoryScanner {
+
+        public void setIncludes(String[] includes) {
+            super.setIncludes(includes == null 
+                              ? new String[] {"**"} : includes);
+        }
+
+        public void setExcludes(String[] excludes) {
+            super.setExcludes(excludes == null ? new String[0] : excludes);
+        }
+
+        public void addDefaultExcludes() {
+        }
+
+        boolean matches(String entryName) {
+            String name = entryName.replace('/', File.separatorChar);
+            if (name.endsWith(File.separator)) {
+                name = name.substring(0, name.length() - 1);
+            }
+            return isIncluded(name) && !isExcluded(name);
+        }
+    }
+
+    /**
+     * Expands the given entries with up to threadCount threads.
+     *
+     * <p>The first failure stops the threads from starting new
+     * entries, it is rethrown once all of them have finished.</p>
+     */
+    private class ParallelExpand implements Runnable {
+        private ZipFile zf;
+        private ZipEntry[] entries;
+        private File[] targets;
+        private int next = 0;
+        private Throwable error;
+
+        ParallelExpand(ZipFile zf, ZipEntry[] entries, File[] targets) {
+            this.zf = zf;
+            this.entries = entries;
+            this.targets = targets;
+        }
+
+        void expand() {
+            int count = Math.min(threadCount, entries.length);
+            Thread[] threads = new Thread[count];
+            for (int i = 0; i < count; i++) {
+                threads[i] = new Thread(this, "ant-expand-" + i);
+                threads[i].start();
+            }
+            for (int i = 0; i < count; i++) {
+                while (threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    } catch (InterruptedException e) {
+                        // stop handing out work, but wait for the
+                        // running threads to finish their files
+                        failed(new BuildException("interrupted while expanding", 
+                                                  location));
+                    }
+                }
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+        }
+
+        public void run() {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int i;
+            while ((i = next()) >= 0) {
+                try {
+                    extractEntry(zf, entries[i], targets[i], buffer);
+                } catch (Throwable t) {
+                    failed(t);
+                }
+            }
+        }
+
+        private synchronized int next() {
+            if (error != null || next >= entries.length) {
+                return -1;
+            }
+            return next++;
+        }
+
+        private synchronized void failed(Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+        }
+    }
 }
@@ -55,9 +55,9 @@
 package org.apache.tools.ant.taskdefs;
 
 import org.apache.tools.ant.*;
+import org.apache.tools.zip.ZipOutputStream;
 
 import java.io.*;
-import java.util.zip.*;
 
 /**
  * Creates a JAR archive.
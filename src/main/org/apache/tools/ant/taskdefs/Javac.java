@@ -55,6 +55,7 @@
 package org.apache.tools.ant.taskdefs;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.ChangeDetector;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.*;
@@ -115,6 +116,8 @@ public class Javac extends MatchingTask {
     private static String lSep = System.getProperty("line.separator");
 
     protected Vector compileList = new Vector();
+    /** source file -> class file, for the files in compileList */
+    private Hashtable classFiles = new Hashtable();
 
     /**
      * Create a nested <src ...> element for multiple source path
@@ -328,17 +331,44 @@ public class Javac extends MatchingTask {
                 + (compileList.size() == 1 ? "" : "s")
                 + (destDir != null ? " to " + destDir : ""));
 
-            if (compiler.equalsIgnoreCase("classic")) {
-                doClassicCompile();
-            } else if (compiler.equalsIgnoreCase("modern")) {
-                doModernCompile();
-            } else if (compiler.equalsIgnoreCase("jikes")) {
-                doJikesCompile();
-            } else if (compiler.equalsIgnoreCase("jvc")) {
-                doJvcCompile();
-            } else {
-                String msg = "Don't know how to use compiler " + compiler;
-                throw new BuildException(msg, location);
+            try {
+                if (compiler.equalsIgnoreCase("classic")) {
+                    doClassicCompile();
+                } else if (compiler.equalsIgnoreCase("modern")) {
+                    doModernCompile();
+                } else if (compiler.equalsIgnoreCase("jikes")) {
+                    doJikesCompile();
+                } else if (compiler.equalsIgnoreCase("jvc")) {
+                    doJvcCompile();
+                } else {
+                    String msg = "Don't know how to use compiler " + compiler;
+                    throw new BuildException(msg, location);
+                }
+            } finally {
+                invalidateScans(list);
+            }
+
+            ChangeDetector detector = project.getChangeDetector();
+            for (Enumeration e = classFiles.keys(); e.hasMoreElements();) {
+                File srcFile = (File) e.nextElement();
+                File classFile = (File) classFiles.get(srcFile);
+                if (classFile.exists()) {
+                    detector.built(srcFile, classFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops cached scans of the directories class files have been
+     * written to.
+     */
+    private void invalidateScans(String[] srcDirs) {
+        if (destDir != null) {
+            project.getScanCache().invalidate(destDir);
+        } else {
+            for (int i = 0; i < srcDirs.length; i++) {
+                project.getScanCache().invalidate(project.resolveFile(srcDirs[i]));
             }
         }
     }
@@ -348,6 +378,7 @@ public class Javac extends MatchingTask {
      */
     protected void resetFileLists() {
         compileList.removeAllElements();
+        classFiles.clear();
     }
 
     /**
@@ -358,6 +389,7 @@ public class Javac extends MatchingTask {
     protected void scanDir(File srcDir, File destDir, String files[]) {
 
         long now = (new Date()).getTime();
+        ChangeDetector detector = project.getChangeDetector();
 
         for (int i = 0; i < files.length; i++) {
             File srcFile = new File(srcDir, files[i]);
@@ -370,7 +402,7 @@ public class Javac extends MatchingTask {
                         files[i], Project.MSG_WARN);
                 }
 
-                if (!classFile.exists() || srcFile.lastModified() > classFile.lastModified()) {
+                if (detector.isOutOfDate(srcFile, classFile)) {
                     if (!classFile.exists()) {
                         log("Compiling " + srcFile.getPath() + " because class file " 
                                 + classFile.getPath() + " does not exist", Project.MSG_DEBUG);
@@ -380,6 +412,7 @@ public class Javac extends MatchingTask {
                                 + classFile.getPath(), Project.MSG_DEBUG);
                     }                                                        
                     compileList.addElement(srcFile.getAbsolutePath());
+                    classFiles.put(srcFile, classFile);
                 }
             }
         }
@@ -106,6 +106,33 @@ public class LogOutputStream extends OutputStream {
     }
 
 
+    /**
+     * Write a block of data, flushing the buffer at every line
+     * separator.
+     *
+     * @param b the data.
+     * @param off the start offset in the data.
+     * @param len the number of bytes to write.
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        int start = off;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            final byte c = b[i];
+            if ((c == '\n') || (c == '\r')) {
+                buffer.write(b, start, i - start);
+                if (i > start || !skip) processBuffer();
+                skip = (c == '\r');
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            buffer.write(b, start, end - start);
+            skip = false;
+        }
+    }
+
+
     /**
      * Converts the buffer to a string and sends it to <code>processLine</code>
      */
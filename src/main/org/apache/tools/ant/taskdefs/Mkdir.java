@@ -79,6 +79,7 @@ public class Mkdir extends Task {
 	
         if (!dir.exists()) {
 	    boolean result = dir.mkdirs();
+            project.getScanCache().invalidate(dir);
 	    if (result == false) {
 		String msg = "Directory " + dir.getAbsolutePath() + " creation was not " +
 		    "succesful for an unknown reason";
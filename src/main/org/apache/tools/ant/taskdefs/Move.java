@@ -88,6 +88,20 @@ public class Move extends Copy {
 //  protected and private methods
 //************************************************************************
 
+    /**
+     * Drops cached scans of the source directories as well.
+     */
+    protected void invalidateScans() {
+        super.invalidateScans();
+        if (file != null) {
+            project.getScanCache().invalidate(file);
+        }
+        for (int i = 0; i < filesets.size(); i++) {
+            FileSet fs = (FileSet) filesets.elementAt(i);
+            project.getScanCache().invalidate(fs.getDir(project));
+        }
+    }
+
     protected void doFileOperations() {
         if (fileCopyMap.size() > 0) {   // files to move
             log("Moving " + fileCopyMap.size() + " files to " + 
@@ -68,8 +68,8 @@ import java.io.OutputStream;
  */
 public class PumpStreamHandler implements ExecuteStreamHandler {
 
-    private Thread inputThread;
-    private Thread errorThread;
+    private StreamPumper inputPumper;
+    private StreamPumper errorPumper;
 
     private OutputStream out, err;
 
@@ -100,37 +100,42 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
     }
 
 
+    /**
+     * Starts copying both streams, using threads that are shared by
+     * all handlers.
+     */
     public void start() {
-        inputThread.start();
-        errorThread.start();
+        PumpThreadPool.execute(inputPumper);
+        PumpThreadPool.execute(errorPumper);
     }
 
 
+    /**
+     * Waits until both streams have been copied completely.
+     */
     public void stop() {
         try {
-            inputThread.join();
+            inputPumper.waitFor();
         } catch(InterruptedException e) {}
         try {
-            errorThread.join();
+            errorPumper.waitFor();
         } catch(InterruptedException e) {}
     }
 
     protected void createProcessOutputPump(InputStream is, OutputStream os) {
-        inputThread = createPump(is, os);
+        inputPumper = createPump(is, os);
     }
 
     protected void createProcessErrorPump(InputStream is, OutputStream os) {
-        errorThread = createPump(is, os);
+        errorPumper = createPump(is, os);
     }
 
 
     /**
      * Creates a stream pumper to copy the given input stream to the given output stream.
      */
-    protected Thread createPump(InputStream is, OutputStream os) {
-        final Thread result = new Thread(new StreamPumper(is, os));
-        result.setDaemon(true);
-        return result;
+    protected StreamPumper createPump(InputStream is, OutputStream os) {
+        return new StreamPumper(is, os);
     }
 
 }
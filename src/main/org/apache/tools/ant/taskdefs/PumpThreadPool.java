@@ -0,0 +1,167 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant.taskdefs;
+
+import java.util.Vector;
+
+/**
+ * Daemon threads that run the stream pumpers of subprocesses.
+ *
+ * <p>A thread that has finished pumping a stream waits for the next
+ * one for a while instead of ending, so builds that execute many
+ * processes don't start two new threads for each of them.</p>
+ */
+class PumpThreadPool {
+
+    /** how long an idle thread waits for work before it ends */
+    private final static long KEEP_ALIVE = 60 * 1000;
+
+    /** Worker threads waiting for work */
+    private static Vector idle = new Vector();
+
+    private static int count = 0;
+
+    private PumpThreadPool() {
+    }
+
+    /**
+     * Runs the given pumper in a thread of the pool.
+     */
+    static void execute(Runnable pumper) {
+        synchronized (idle) {
+            while (idle.size() > 0) {
+                Worker w = (Worker) idle.elementAt(idle.size() - 1);
+                idle.removeElementAt(idle.size() - 1);
+                if (w.assign(pumper)) {
+                    return;
+                }
+            }
+        }
+        Worker w = new Worker(pumper);
+        w.start();
+    }
+
+    private static class Worker extends Thread {
+        private Runnable task;
+        private boolean done = false;
+
+        Worker(Runnable task) {
+            super(nextName());
+            this.task = task;
+            setDaemon(true);
+        }
+
+        /**
+         * Hands work to this idle thread.
+         *
+         * @return false if the thread has ended already.
+         */
+        synchronized boolean assign(Runnable r) {
+            if (done) {
+                return false;
+            }
+            task = r;
+            notifyAll();
+            return true;
+        }
+
+        public void run() {
+            Runnable r = task;
+            while (r != null) {
+                try {
+                    r.run();
+                } catch (RuntimeException e) {
+                }
+                r = waitForTask();
+            }
+        }
+
+        /**
+         * Puts this thread back into the pool and waits for the next
+         * task, returns null if none has arrived in time.
+         */
+        private Runnable waitForTask() {
+            synchronized (this) {
+                task = null;
+            }
+            synchronized (idle) {
+                idle.addElement(this);
+            }
+            synchronized (this) {
+                long until = System.currentTimeMillis() + KEEP_ALIVE;
+                long now;
+                while (task == null 
+                       && (now = System.currentTimeMillis()) < until) {
+                    try {
+                        wait(until - now);
+                    } catch (InterruptedException e) {
+                    }
+                }
+                if (task == null) {
+                    done = true;
+                }
+            }
+            if (task == null) {
+                synchronized (idle) {
+                    idle.removeElement(this);
+                }
+            }
+            return task;
+        }
+    }
+
+    private static synchronized String nextName() {
+        return "StreamPumper-" + (++count);
+    }
+}
@@ -321,80 +321,88 @@ public class SQLExec extends Task {
             throw new BuildException("Source file does not exist!", location);
         }
         Driver driverInstance = null;
-        // Load the driver using the 
         try {
-            Class dc;
-            if (classpath != null) {
-		log("Loading " + driver + " using AntClassLoader with classpath " + classpath, Project.MSG_VERBOSE);
-                loader = new AntClassLoader(project, classpath, false);
-                dc = loader.loadClass(driver);
-            }
-            else {
-		log("Loading " + driver + " using system loader.", Project.MSG_VERBOSE);
-                dc = Class.forName(driver);
+            // Load the driver using the 
+            try {
+                Class dc;
+                if (classpath != null) {
+		    log("Loading " + driver + " using AntClassLoader with classpath " + classpath, Project.MSG_VERBOSE);
+                    loader = new AntClassLoader(project, classpath, false);
+                    dc = loader.loadClass(driver);
+                }
+                else {
+		    log("Loading " + driver + " using system loader.", Project.MSG_VERBOSE);
+                    dc = Class.forName(driver);
+                }
+                driverInstance = (Driver) dc.newInstance();
+            }catch(ClassNotFoundException e){
+                throw new BuildException("Class Not Found: JDBC driver " + driver + " could not be loaded", location);
+            }catch(IllegalAccessException e){
+                throw new BuildException("Illegal Access: JDBC driver " + driver + " could not be loaded", location);
+            }catch(InstantiationException e) {
+                throw new BuildException("Instantiation Exception: JDBC driver " + driver + " could not be loaded", location);
             }
-            driverInstance = (Driver) dc.newInstance();
-        }catch(ClassNotFoundException e){
-            throw new BuildException("Class Not Found: JDBC driver " + driver + " could not be loaded", location);
-        }catch(IllegalAccessException e){
-            throw new BuildException("Illegal Access: JDBC driver " + driver + " could not be loaded", location);
-        }catch(InstantiationException e) {
-            throw new BuildException("Instantiation Exception: JDBC driver " + driver + " could not be loaded", location);
-        }
 
-        try{
-            log("connecting to " + url, Project.MSG_VERBOSE );
-            Properties info = new Properties();
-            info.put("user", userId);
-            info.put("password", password);
-            conn = driverInstance.connect(url, info);
-
-            if (conn == null) {
-                // Driver doesn't understand the URL
-                throw new SQLException("No suitable Driver for "+url);
-            }
+            try{
+                log("connecting to " + url, Project.MSG_VERBOSE );
+                Properties info = new Properties();
+                info.put("user", userId);
+                info.put("password", password);
+                conn = driverInstance.connect(url, info);
+
+                if (conn == null) {
+                    // Driver doesn't understand the URL
+                    throw new SQLException("No suitable Driver for "+url);
+                }
 
-            if (!isValidRdbms(conn)) return;
+                if (!isValidRdbms(conn)) return;
 
-            conn.setAutoCommit(autocommit);
+                conn.setAutoCommit(autocommit);
 
-            statement = conn.createStatement();
+                statement = conn.createStatement();
 
-            // Process all transactions
-            for (Enumeration e = transactions.elements(); 
-                 e.hasMoreElements();) {
-                ((Transaction) e.nextElement()).runTransaction();
-                if (!autocommit) {
-                    log("Commiting transaction", Project.MSG_VERBOSE);
-                    conn.commit();
+                // Process all transactions
+                for (Enumeration e = transactions.elements(); 
+                     e.hasMoreElements();) {
+                    ((Transaction) e.nextElement()).runTransaction();
+                    if (!autocommit) {
+                        log("Commiting transaction", Project.MSG_VERBOSE);
+                        conn.commit();
+                    }
                 }
-            }
             
-        } catch(IOException e){
-            if (!autocommit && conn != null && onError.equals("abort")) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {}
+            } catch(IOException e){
+                if (!autocommit && conn != null && onError.equals("abort")) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException ex) {}
+                }
+                throw new BuildException(e, location);
+            } catch(SQLException e){
+                if (!autocommit && conn != null && onError.equals("abort")) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException ex) {}
+                }
+                throw new BuildException(e, location);
             }
-            throw new BuildException(e, location);
-        } catch(SQLException e){
-            if (!autocommit && conn != null && onError.equals("abort")) {
+            finally {
                 try {
-                    conn.rollback();
-                } catch (SQLException ex) {}
-            }
-            throw new BuildException(e, location);
-        }
-        finally {
-            try {
-                if (statement != null) {
-                    statement.close();
-                }
-                if (conn != null) {
-                    conn.close();
+                    if (statement != null) {
+                        statement.close();
+                    }
+                    if (conn != null) {
+                        conn.close();
+                    }
                 }
+                catch (SQLException e) {}
+            }
+        } finally {
+            // the loader has opened the jars of the classpath even if
+            // the driver couldn't be loaded
+            if (loader != null) {
+                loader.cleanup();
             }
-            catch (SQLException e) {}
         }
           
         log(goodSql + " of " + totalSql + 
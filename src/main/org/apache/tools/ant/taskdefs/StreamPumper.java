@@ -65,13 +65,11 @@ import java.io.OutputStream;
  */
 public class StreamPumper implements Runnable {
 
-    // TODO: make SIZE and SLEEP instance variables.
-    // TODO: add a status flag to note if an error occured in run.
-
-    private final static int SLEEP = 5;
-    private final static int SIZE = 128;
+    private final static int SIZE = 8192;
     private InputStream is;
     private OutputStream os;
+    private int size;
+    private boolean finished = false;
 
 
     /**
@@ -81,8 +79,20 @@ public class StreamPumper implements Runnable {
      * @param os output stream to write data to.
      */
     public StreamPumper(InputStream is, OutputStream os) {
+        this(is, os, SIZE);
+    }
+
+    /**
+     * Create a new stream pumper.
+     *
+     * @param is input stream to read data from
+     * @param os output stream to write data to.
+     * @param size the number of bytes to read at once.
+     */
+    public StreamPumper(InputStream is, OutputStream os, int size) {
         this.is = is;
         this.os = os;
+        this.size = size;
     }
 
 
@@ -92,16 +102,35 @@ public class StreamPumper implements Runnable {
      * Terminates as soon as the input stream is closed or an error occurs.
      */
     public void run() {
-        final byte[] buf = new byte[SIZE];
+        final byte[] buf = new byte[size];
 
         int length;
         try {
             while ((length = is.read(buf)) > 0) {
                 os.write(buf, 0, length);
-                try {
-                    Thread.sleep(SLEEP);
-                } catch (InterruptedException e) {}
             }
-        } catch(IOException e) {}
+        } catch(IOException e) {
+        } finally {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Whether all data has been copied.
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Waits until all data has been copied.
+     */
+    public synchronized void waitFor() throws InterruptedException {
+        while (!finished) {
+            wait();
+        }
     }
 }
@@ -55,8 +55,12 @@
 package org.apache.tools.ant.taskdefs;
 
 import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.apache.tools.ant.*;
+import org.apache.tools.ant.types.EnumeratedAttribute;
 import org.apache.tools.tar.*;
+import org.apache.tools.zip.ParallelGZIPOutputStream;
 
 /**
  * Creates a TAR archive.
@@ -68,6 +72,9 @@ public class Tar extends MatchingTask {
 
     File tarFile;
     File baseDir;
+    TarCompressionMethod compression = new TarCompressionMethod();
+    private int threadCount = 1;
+    private boolean writeIndex = false;
     
     /**
      * This is the name/location of where to create the tar file.
@@ -83,6 +90,29 @@ public class Tar extends MatchingTask {
         baseDir = project.resolveFile(baseDirname);
     }
 
+    /**
+     * Compresses the archive while writing it, "none" or "gzip".
+     */
+    public void setCompression(TarCompressionMethod mode) {
+        this.compression = mode;
+    }
+
+    /**
+     * Whether to write an index of the entries next to the archive,
+     * allows untar to extract selected entries without reading the
+     * whole archive.
+     */
+    public void setIndex(boolean writeIndex) {
+        this.writeIndex = writeIndex;
+    }
+
+    /**
+     * Sets the number of threads compressing the archive.
+     */
+    public void setThreads(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public void execute() throws BuildException {
         if (tarFile == null) {
             throw new BuildException("tarfile attribute must be set!", 
@@ -96,6 +126,10 @@ public class Tar extends MatchingTask {
         if (!baseDir.exists()) {
             throw new BuildException("basedir does not exist!", location);
         }
+        if (threadCount < 1) {
+            throw new BuildException("threads must be a positive number", 
+                                     location);
+        }
 
         log("Building tar: "+ tarFile.getAbsolutePath());
 
@@ -103,14 +137,19 @@ public class Tar extends MatchingTask {
 
         String[] files = ds.getIncludedFiles();
 
+        TarIndex index = writeIndex ? new TarIndex() : null;
         TarOutputStream tOut = null;
         try {
-            tOut = new TarOutputStream(new FileOutputStream(tarFile));
+            tOut = new TarOutputStream(compression.compress(
+                new FileOutputStream(tarFile), threadCount));
             tOut.setDebug(true);
 
             for (int i = 0; i < files.length; i++) {
                 File f = new File(baseDir,files[i]);
                 String name = files[i].replace(File.separatorChar,'/');
+                if (index != null) {
+                    index.add(name, tOut.getRecordNumber());
+                }
                 tarFile(f, tOut, name);
             }
         } catch (IOException ioe) {
@@ -125,6 +164,15 @@ public class Tar extends MatchingTask {
 	        catch (IOException e) {}
 	    }
         }
+
+        if (index != null) {
+            try {
+                index.write(tarFile);
+            } catch (IOException ioe) {
+                throw new BuildException("Problem writing index of TAR: " 
+                                         + ioe.getMessage(), ioe, location);
+            }
+        }
     }
 
     protected void tarFile(File file, TarOutputStream tOut, String vPath)
@@ -150,4 +198,47 @@ public class Tar extends MatchingTask {
             fIn.close();
         }
     }
+
+    /**
+     * Valid values for the compression attribute of tar and untar.
+     */
+    public static class TarCompressionMethod extends EnumeratedAttribute {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        public TarCompressionMethod() {
+            setValue("none");
+        }
+
+        public String[] getValues() {
+            return new String[] {"none", "gzip"};
+        }
+
+        /**
+         * Wraps out so that everything written to it gets
+         * compressed, gzip blocks are compressed with the given
+         * number of threads.
+         */
+        OutputStream compress(OutputStream out, int threads) 
+            throws IOException {
+            if ("gzip".equals(getValue())) {
+                out = new BufferedOutputStream(out, BUFFER_SIZE);
+                if (threads > 1) {
+                    return new ParallelGZIPOutputStream(out, threads);
+                }
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            return out;
+        }
+
+        /**
+         * Wraps in so that it returns the uncompressed data.
+         */
+        InputStream decompress(InputStream in) throws IOException {
+            if ("gzip".equals(getValue())) {
+                return new GZIPInputStream(
+                    new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            return in;
+        }
+    }
 }
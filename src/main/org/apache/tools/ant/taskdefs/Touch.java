@@ -157,6 +157,18 @@ public class Touch extends Task {
             return;
         }
 
+        long time = millis < 0 ? System.currentTimeMillis() : millis;
+        log("Setting modification time for "+file, Project.MSG_VERBOSE);
+        setLastModified(file, time, location);
+    }
+
+    /**
+     * Sets the modification time of an existing file, JDK 1.2 and
+     * above only. Used by Expand without creating Touch instances.
+     */
+    static void setLastModified(File file, long time, Location location) 
+        throws BuildException {
+
         if (setLastModified == null) {
             synchronized (lockReflection) {
                 if (setLastModified == null) {
@@ -172,17 +184,9 @@ public class Touch extends Task {
             }
         }
         
-        Long[] times = new Long[1];
-        if (millis < 0) {
-            times[0] = new Long(System.currentTimeMillis());
-        } else {
-            times[0] = new Long(millis);
-        }
+        Long[] times = new Long[] {new Long(time)};
 
         try {
-            log("Setting modification time for "+file, 
-                Project.MSG_VERBOSE);
-
             setLastModified.invoke(file, times);
         } catch (InvocationTargetException ite) {
             Throwable nested = ite.getTargetException();
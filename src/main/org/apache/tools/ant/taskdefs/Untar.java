@@ -65,9 +65,12 @@ import java.io.*;
  *
  * @author <a href="mailto:stefan.bodewig@megabit.net">Stefan Bodewig</a>
  */
-public class Untar extends Task {
+public class Untar extends MatchingTask {
     private String dest; // req
     private String source; // req
+    private Tar.TarCompressionMethod compression = 
+        new Tar.TarCompressionMethod();
+    private boolean useIndex = false;
 
     /**
      * Do the work.
@@ -76,11 +79,6 @@ public class Untar extends Task {
      */
     public void execute() throws BuildException {
 
-        Touch touch = (Touch) project.createTask("touch");
-        touch.setOwningTarget(target);
-        touch.setTaskName(getTaskName());
-        touch.setLocation(getLocation());
-                    
         File srcF=project.resolveFile(source);
 
         TarInputStream tis = null;
@@ -98,47 +96,54 @@ public class Untar extends Task {
             }
             File dir=project.resolveFile(dest);
 
+            Expand.EntryMatcher matcher = new Expand.EntryMatcher();
+            fileset.setupDirectoryScanner(matcher, project);
+
+            TarIndex index = null;
+            if (useIndex) {
+                index = TarIndex.read(srcF);
+                if (index == null) {
+                    log("No usable index for " + srcF 
+                        + ", reading all entries", Project.MSG_VERBOSE);
+                }
+            }
+
             log("Expanding: " + srcF + " into " + dir, Project.MSG_INFO);
-            tis = new TarInputStream(new FileInputStream(srcF));
-            TarEntry te = null;
-
-            while ((te = tis.getNextEntry()) != null) {
-                try {
-                    File f = new File(dir, project.translatePath(te.getName()));
-                    log("expand-file " + te.getName(), Project.MSG_VERBOSE );
-                    // create intermediary directories - sometimes tar don't add them
-                    File dirF=new File(f.getParent());
-                    dirF.mkdirs();
-
-                    if (te.isDirectory()) {
-                        f.mkdirs();
-                    } else {
-                        byte[] buffer = new byte[1024];
-                        int length = 0;
-                        FileOutputStream fos = new FileOutputStream(f);
-
-                        while ((length = tis.read(buffer)) >= 0) {
-                            fos.write(buffer, 0, length);
-                        }
-
-                        fos.close();
+            tis = new TarInputStream(
+                compression.decompress(new FileInputStream(srcF)));
+            byte[] buffer = new byte[8 * 1024];
+
+            if (index != null) {
+                // skip straight to the headers of the selected entries
+                for (int i = 0; i < index.size(); i++) {
+                    if (!matcher.matches(index.getName(i))) {
+                        continue;
                     }
-
-                    if (project.getJavaVersion() != Project.JAVA_1_1) {
-                        touch.setFile(f);
-                        touch.setMillis(te.getModTime().getTime());
-                        touch.touch();
+                    tis.skipToRecord(index.getRecord(i));
+                    TarEntry te = tis.getNextEntry();
+                    if (te == null) {
+                        throw new BuildException("index of " + srcF 
+                                                 + " doesn't match the archive",
+                                                 location);
                     }
+                    extractEntry(tis, te, dir, buffer);
+                }
+            } else {
+                TarEntry te = null;
 
-                } catch(FileNotFoundException ex) {
-                    log("FileNotFoundException: " + te.getName(),
-                        Project.MSG_WARN);
+                while ((te = tis.getNextEntry()) != null) {
+                    if (matcher.matches(te.getName())) {
+                        extractEntry(tis, te, dir, buffer);
+                    }
                 }
             }
         } catch (IOException ioe) {
 	    throw new BuildException("Error while expanding " + srcF.getPath(),
                                      ioe, location);
 	} finally {
+            if (dest != null) {
+                project.getScanCache().invalidate(project.resolveFile(dest));
+            }
 	    if (tis != null) {
 	        try {
 	            tis.close();
@@ -148,6 +153,41 @@ public class Untar extends Task {
 	}
     }
 
+    /**
+     * Writes the data of the current entry te to its file below dir.
+     */
+    private void extractEntry(TarInputStream tis, TarEntry te, File dir, 
+                              byte[] buffer) throws IOException {
+        try {
+            File f = new File(dir, project.translatePath(te.getName()));
+            log("expand-file " + te.getName(), Project.MSG_VERBOSE );
+            // create intermediary directories - sometimes tar don't add them
+            File dirF=new File(f.getParent());
+            dirF.mkdirs();
+
+            if (te.isDirectory()) {
+                f.mkdirs();
+            } else {
+                int length = 0;
+                FileOutputStream fos = new FileOutputStream(f);
+
+                while ((length = tis.read(buffer)) >= 0) {
+                    fos.write(buffer, 0, length);
+                }
+
+                fos.close();
+            }
+
+            if (project.getJavaVersion() != Project.JAVA_1_1) {
+                Touch.setLastModified(f, te.getModTime().getTime(), location);
+            }
+
+        } catch(FileNotFoundException ex) {
+            log("FileNotFoundException: " + te.getName(),
+                Project.MSG_WARN);
+        }
+    }
+
     /**
      * Set the destination directory. File will be untared into the
      * destination directory.
@@ -166,4 +206,19 @@ public class Untar extends Task {
     public void setSrc(String s) {
         this.source = s;
     }
+
+    /**
+     * Set the compression of the tar-file, "none" or "gzip".
+     */
+    public void setCompression(Tar.TarCompressionMethod method) {
+        this.compression = method;
+    }
+
+    /**
+     * Whether to use the index written by tar, if there is a current
+     * one, to find the entries matching the patterns.
+     */
+    public void setUseindex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
 }
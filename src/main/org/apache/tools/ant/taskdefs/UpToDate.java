@@ -139,6 +139,7 @@ public class UpToDate extends MatchingTask {
     protected boolean scanDir(File srcDir, File destFile, String files[]) {
         long destLastModified = destFile.lastModified();
         long now = (new Date()).getTime();
+        ChangeDetector detector = project.getChangeDetector();
         if (destLastModified > now) {
             log("Warning: destfile modified in the future: " +
                 destFile.getPath(), Project.MSG_WARN);
@@ -153,7 +154,7 @@ public class UpToDate extends MatchingTask {
                     files[i], Project.MSG_WARN);
             }
 
-            if (srcLastModified > destLastModified) {
+            if (detector.isOutOfDate(srcFile, destFile)) {
                 return false;
             }
         }
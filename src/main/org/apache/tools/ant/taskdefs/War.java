@@ -56,10 +56,10 @@ package org.apache.tools.ant.taskdefs;
 
 import org.apache.tools.ant.*;
 import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.zip.ZipOutputStream;
 
 import java.io.*;
 import java.util.Vector;
-import java.util.zip.*;
 
 /**
  * Creates a WAR archive.
@@ -56,14 +56,20 @@ package org.apache.tools.ant.taskdefs;
 
 import org.apache.tools.ant.*;
 import org.apache.tools.ant.types.*;
+import org.apache.tools.zip.ParallelDeflater;
+import org.apache.tools.zip.ZipFile;
+import org.apache.tools.zip.ZipOutputStream;
 
 import java.io.*;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Random;
 import java.util.Stack;
 import java.util.StringTokenizer;
 import java.util.Vector;
-import java.util.zip.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 
 /**
  * Create a ZIP archive.
@@ -83,6 +89,18 @@ public class Zip extends MatchingTask {
     protected String emptyBehavior = "skip";
     private Vector filesets = new Vector ();
     private Hashtable addedDirs = new Hashtable();
+    private int threadCount = 1;
+    private ParallelDeflater deflater;
+    private boolean doUpdate = false;
+    /** the archive as it has been before an update */
+    private ZipFile previous;
+
+    /**
+     * Streams of STORED entries larger than this are copied to a
+     * temporary file instead of memory.
+     */
+    private static final int SPILL_THRESHOLD = 64 * 1024;
+    private static int tmpCounter = new Random().nextInt() % 100000;
     
     /**
      * This is the name/location of where to 
@@ -107,6 +125,28 @@ public class Zip extends MatchingTask {
         doCompress = Project.toBoolean(compress);
     }
 
+    /**
+     * Sets the number of threads used to compress files.
+     *
+     * <p>The archive is the same no matter how many threads have
+     * been used.</p>
+     */
+    public void setThreads(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets whether an existing archive should be updated instead of
+     * built from scratch.
+     *
+     * <p>Entries of the existing archive are copied without
+     * compressing them again if the file they have been created from
+     * is unchanged.</p>
+     */
+    public void setUpdate(boolean update) {
+        doUpdate = update;
+    }
+
     /**
      * Adds a set of files (nested fileset attribute).
      */
@@ -139,6 +179,11 @@ public class Zip extends MatchingTask {
             throw new BuildException("You must specify the " + archiveType + "file to create!");
         }
 
+        if (threadCount < 1) {
+            throw new BuildException("threads must be a positive number", 
+                                     location);
+        }
+
         Vector dss = new Vector ();
         if (baseDir != null)
             dss.addElement(getDirectoryScanner(baseDir));
@@ -153,33 +198,114 @@ public class Zip extends MatchingTask {
         // can also handle empty archives
         if (isUpToDate(scanners, zipFile)) return;
 
-        log("Building "+ archiveType +": "+ zipFile.getAbsolutePath());
-
-	try {
-	    ZipOutputStream zOut = new ZipOutputStream(new FileOutputStream(zipFile));
-	    try {
-		if (doCompress) {
-		    zOut.setMethod(ZipOutputStream.DEFLATED);
-		} else {
-		    zOut.setMethod(ZipOutputStream.STORED);
-		}
-		initZipOutputStream(zOut);
-                                
-                for (int j = 0; j < scanners.length; j++) {
-                    addFiles(scanners[j], zOut, "");
+        File oldArchive = null;
+        if (doUpdate && zipFile.exists()) {
+            oldArchive = new File(zipFile.getAbsolutePath() + ".old");
+            if (oldArchive.exists() && !oldArchive.delete()) {
+                throw new BuildException("Could not delete " + oldArchive, 
+                                         location);
+            }
+            if (!zipFile.renameTo(oldArchive)) {
+                throw new BuildException("Could not rename " + zipFile 
+                                         + " to " + oldArchive, location);
+            }
+            try {
+                previous = new ZipFile(oldArchive);
+            } catch (IOException e) {
+                log("Could not read " + zipFile + ", it will be rebuilt: " 
+                    + e.getMessage(), Project.MSG_WARN);
+            }
+        }
+
+        if (previous != null) {
+            log("Updating "+ archiveType +": "+ zipFile.getAbsolutePath());
+        } else {
+            log("Building "+ archiveType +": "+ zipFile.getAbsolutePath());
+        }
+
+        boolean success = false;
+        try {
+            try {
+                ZipOutputStream zOut = 
+                    new ZipOutputStream(new FileOutputStream(zipFile));
+                try {
+                    if (doCompress) {
+                        zOut.setMethod(ZipOutputStream.DEFLATED);
+                    } else {
+                        zOut.setMethod(ZipOutputStream.STORED);
+                    }
+                    if (doCompress && threadCount > 1) {
+                        deflater = new ParallelDeflater(zOut, threadCount, 
+                                                        Deflater.DEFAULT_COMPRESSION);
+                    }
+                    initZipOutputStream(zOut);
+
+                    for (int j = 0; j < scanners.length; j++) {
+                        addFiles(scanners[j], zOut, "");
+                    }
+                    if (deflater != null) {
+                        deflater.finish();
+                    }
+                } finally {
+                    if (deflater != null) {
+                        deflater.shutdown();
+                        deflater = null;
+                    }
+                    zOut.close();
                 }
-	    } finally {
-		zOut.close ();
-	    }
-	} catch (IOException ioe) {
-	    String msg = "Problem creating " + archiveType + ": " + ioe.getMessage();
-
-            // delete a bogus ZIP file
-	    if (!zipFile.delete()) {
-		msg += " (and the archive is probably corrupt but I could not delete it)";
-	    }
-
-            throw new BuildException(msg, ioe, location);
+            } catch (IOException ioe) {
+                String msg = "Problem creating " + archiveType + ": " 
+                    + ioe.getMessage();
+
+                // delete a bogus ZIP file
+                if (zipFile.exists() && !zipFile.delete()) {
+                    msg += " (and the archive is probably corrupt but I could not delete it)";
+                }
+
+                throw new BuildException(msg, ioe, location);
+            }
+            success = true;
+        } finally {
+            closePrevious();
+            if (!success) {
+                restore(oldArchive);
+            }
+        }
+
+        if (oldArchive != null) {
+            oldArchive.delete();
+        }
+
+        ChangeDetector detector = project.getChangeDetector();
+        File[] files = grabFiles(scanners);
+        for (int i = 0; i < files.length; i++) {
+            detector.built(files[i], zipFile);
+        }
+    }
+
+    /**
+     * Puts the original archive back in place after a failed update.
+     */
+    private void restore(File oldArchive) {
+        if (zipFile.exists() && !zipFile.delete()) {
+            log("Could not delete the incomplete " + zipFile, 
+                Project.MSG_ERR);
+            return;
+        }
+        if (oldArchive != null && !oldArchive.renameTo(zipFile)) {
+            log("The original archive could not be restored from " 
+                + oldArchive, Project.MSG_ERR);
+        }
+    }
+
+    private void closePrevious() {
+        if (previous != null) {
+            try {
+                previous.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            previous = null;
         }
     }
 
@@ -266,8 +392,9 @@ public class Zip extends MatchingTask {
         } else {
             // Probably unnecessary but just for clarity:
             if (!zipFile.exists()) return false;
+            ChangeDetector detector = project.getChangeDetector();
             for (int i=0; i<files.length; i++) {
-                if (files[i].lastModified() > zipFile.lastModified()) {
+                if (detector.isOutOfDate(files[i], zipFile)) {
                     return false;
                 }
             }
@@ -304,58 +431,165 @@ public class Zip extends MatchingTask {
 	ze.setMethod (ZipEntry.STORED);
 	// This is faintly ridiculous:
 	ze.setCrc (emptyCrc);
-	zOut.putNextEntry (ze);
+        if (deflater != null) {
+            deflater.addEntry(ze);
+        } else {
+            zOut.putNextEntry (ze);
+        }
     }
 
     protected void zipFile(InputStream in, ZipOutputStream zOut, String vPath,
                            long lastModified)
         throws IOException
     {
+        if (deflater != null) {
+            // entries added so far have to be written first
+            deflater.flush();
+        }
+
         ZipEntry ze = new ZipEntry(vPath);
         ze.setTime(lastModified);
 
         /*
-         * XXX ZipOutputStream.putEntry expects the ZipEntry to know its
-         * size and the CRC sum before you start writing the data when using 
-         * STORED mode.
+         * ZipOutputStream.putNextEntry expects the ZipEntry to know
+         * its size and the CRC sum before you start writing the data
+         * when using STORED mode.
          *
-         * This forces us to process the data twice.
-         *
-         * I couldn't find any documentation on this, just found out by try 
-         * and error.
+         * This forces us to process the data twice.  Small streams
+         * are kept in memory, anything bigger is copied to a
+         * temporary file so memory use doesn't depend on the size of
+         * the entry.
          */
         if (!doCompress) {
-            long size = 0;
             CRC32 cal = new CRC32();
-            if (!in.markSupported()) {
-                // Store data into a byte[]
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[SPILL_THRESHOLD];
+            int size = 0;
+            int count = 0;
+            while (size < buffer.length
+                   && (count = in.read(buffer, size, buffer.length - size)) != -1) {
+                size += count;
+            }
 
-                byte[] buffer = new byte[8 * 1024];
-                int count = 0;
-                do {
-                    size += count;
-                    cal.update(buffer, 0, count);
-                    bos.write(buffer, 0, count);
-                    count = in.read(buffer, 0, buffer.length);
-                } while (count != -1);
-                in = new ByteArrayInputStream(bos.toByteArray());
+            if (count == -1) {
+                cal.update(buffer, 0, size);
+                ze.setSize(size);
+                ze.setCrc(cal.getValue());
+                writeEntry(new ByteArrayInputStream(buffer, 0, size), zOut, ze);
+                return;
+            }
 
-            } else {
-                in.mark(Integer.MAX_VALUE);
-                byte[] buffer = new byte[8 * 1024];
-                int count = 0;
-                do {
+            File tmp = createTempFile();
+            try {
+                long total = 0;
+                OutputStream out = new FileOutputStream(tmp);
+                try {
+                    do {
+                        total += size;
+                        cal.update(buffer, 0, size);
+                        out.write(buffer, 0, size);
+                        size = in.read(buffer, 0, buffer.length);
+                    } while (size != -1);
+                } finally {
+                    out.close();
+                }
+                ze.setSize(total);
+                ze.setCrc(cal.getValue());
+
+                InputStream tmpIn = new FileInputStream(tmp);
+                try {
+                    writeEntry(tmpIn, zOut, ze);
+                } finally {
+                    tmpIn.close();
+                }
+            } finally {
+                tmp.delete();
+            }
+            return;
+        }
+
+        writeEntry(in, zOut, ze);
+    }
+
+    protected void zipFile(File file, ZipOutputStream zOut, String vPath)
+        throws IOException
+    {
+        if (previous != null) {
+            ZipEntry old = previous.getEntry(vPath);
+            if (old != null && isUnchanged(old, file)) {
+                if (deflater != null) {
+                    deflater.addRawEntry(old, previous);
+                } else {
+                    zOut.copyRawEntry(old, previous);
+                }
+                return;
+            }
+        }
+
+        if (deflater != null) {
+            ZipEntry ze = new ZipEntry(vPath);
+            ze.setTime(file.lastModified());
+            deflater.addFile(ze, file);
+            return;
+        }
+
+        if (!doCompress) {
+            // a file can simply be read twice
+            ZipEntry ze = new ZipEntry(vPath);
+            ze.setTime(file.lastModified());
+
+            CRC32 cal = new CRC32();
+            long size = 0;
+            byte[] buffer = new byte[8 * 1024];
+            FileInputStream fIn = new FileInputStream(file);
+            try {
+                int count;
+                while ((count = fIn.read(buffer, 0, buffer.length)) != -1) {
                     size += count;
                     cal.update(buffer, 0, count);
-                    count = in.read(buffer, 0, buffer.length);
-                } while (count != -1);
-                in.reset();
+                }
+            } finally {
+                fIn.close();
             }
             ze.setSize(size);
             ze.setCrc(cal.getValue());
+
+            fIn = new FileInputStream(file);
+            try {
+                writeEntry(fIn, zOut, ze);
+            } finally {
+                fIn.close();
+            }
+            return;
         }
 
+        FileInputStream fIn = new FileInputStream(file);
+        try {
+            zipFile(fIn, zOut, vPath, file.lastModified());
+        } finally {
+            fIn.close();
+        }
+    }
+
+    /**
+     * Whether the entry of the previous archive has been created from
+     * the given file in its current state, using the current
+     * compression method.
+     */
+    private boolean isUnchanged(ZipEntry old, File file) {
+        int method = doCompress ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        // the archive only knows the time with a granularity of two seconds
+        return old.getMethod() == method
+            && old.getSize() == file.length()
+            && ZipOutputStream.toDosTime(old.getTime()) 
+               == ZipOutputStream.toDosTime(file.lastModified());
+    }
+
+    /**
+     * Writes the entry and copies the stream's content to it.
+     */
+    private void writeEntry(InputStream in, ZipOutputStream zOut, ZipEntry ze)
+        throws IOException
+    {
         zOut.putNextEntry(ze);
 
         byte[] buffer = new byte[8 * 1024];
@@ -366,15 +600,18 @@ public class Zip extends MatchingTask {
         } while (count != -1);
     }
 
-    protected void zipFile(File file, ZipOutputStream zOut, String vPath)
-        throws IOException
-    {
-        FileInputStream fIn = new FileInputStream(file);
-        try {
-            zipFile(fIn, zOut, vPath, file.lastModified());
-        } finally {
-            fIn.close();
-        }
+    /**
+     * Creates a name for a temporary file that doesn't exist yet.
+     */
+    private static synchronized File createTempFile() {
+        String tmpdir = System.getProperty("java.io.tmpdir");
+        File f;
+        do {
+            String name = "ant" + Math.abs(tmpCounter++) + ".tmp";
+            // java.io.tmpdir is not present in 1.1
+            f = tmpdir == null ? new File(name) : new File(tmpdir, name);
+        } while (f.exists());
+        return f;
     }
 
     /**
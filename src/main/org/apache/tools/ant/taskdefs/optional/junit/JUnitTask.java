@@ -218,12 +218,12 @@ public class JUnitTask extends Task {
                 }
 
                 JUnitTestRunner runner = null;
+                AntClassLoader l = null;
 
                 Path classpath = commandline.getClasspath();
                 if (classpath != null) {
                     log("Using CLASSPATH " + classpath, Project.MSG_VERBOSE);
-                    AntClassLoader l = new AntClassLoader(project, classpath, 
-                                                          false);
+                    l = new AntClassLoader(project, classpath, false);
                     // make sure the test will be accepted as a TestCase
                     l.addSystemPackageRoot("junit");
                     // will cause trouble in JDK 1.1 if omitted
@@ -265,7 +265,13 @@ public class JUnitTask extends Task {
                     runner.addFormatter(add[i].createFormatter());
                 }
 
-                runner.run();
+                try {
+                    runner.run();
+                } finally {
+                    if (l != null) {
+                        l.cleanup();
+                    }
+                }
                 exitValue = runner.getRetCode();
 
             } else {
@@ -58,6 +58,7 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.FileScanner;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ScanCache;
 
 import java.io.File;
 import java.util.Stack;
@@ -74,6 +75,24 @@ import java.util.Vector;
  * @author <a href="mailto:stefan.bodewig@megabit.net">Stefan Bodewig</a>
  */
 public class FileSet extends DataType {
+
+    /**
+     * Name of the property that enables persistent scan indices and
+     * specifies the directory to store them in.
+     */
+    public static final String SCAN_INDEX_DIR_PROPERTY = "ant.scanindex.dir";
+
+    /**
+     * Name of the property holding the number of threads to scan
+     * directory trees with.
+     */
+    public static final String SCAN_THREADS_PROPERTY = "ant.scan.threads";
+
+    /**
+     * Name of the property that makes filesets reuse the results of
+     * earlier scans of the same directory with the same patterns.
+     */
+    public static final String SCAN_CACHE_PROPERTY = "ant.scan.cache";
     
     private PatternSet defaultPatterns = new PatternSet();
     private Vector additionalPatterns = new Vector();
@@ -235,7 +254,34 @@ public class FileSet extends DataType {
 
         DirectoryScanner ds = new DirectoryScanner();
         setupDirectoryScanner(ds, p);
+
+        ScanCache cache = null;
+        String useCache = p.getProperty(SCAN_CACHE_PROPERTY);
+        if (useCache != null && Project.toBoolean(useCache)) {
+            cache = p.getScanCache();
+            DirectoryScanner cached = cache.get(ds.getKey());
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String indexDir = p.getProperty(SCAN_INDEX_DIR_PROPERTY);
+        if (indexDir != null) {
+            ds.setIndexDir(p.resolveFile(indexDir));
+        }
+        String threads = p.getProperty(SCAN_THREADS_PROPERTY);
+        if (threads != null) {
+            try {
+                ds.setThreadCount(Integer.parseInt(threads));
+            } catch (NumberFormatException e) {
+                throw new BuildException(SCAN_THREADS_PROPERTY 
+                                         + " must be a number, not " + threads);
+            }
+        }
         ds.scan();
+        if (cache != null) {
+            cache.put(ds);
+        }
         return ds;
     }
     
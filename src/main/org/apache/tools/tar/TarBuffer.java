@@ -200,6 +200,74 @@ public class TarBuffer {
         this.currRecIdx++;
     } 
 
+    /**
+     * Skip over a number of records on the input stream.
+     *
+     * <p>Whole blocks are skipped with the input stream's skip
+     * method, which doesn't read anything if the stream supports
+     * seeking, as FileInputStream does.</p>
+     *
+     * @param count The number of records to skip.
+     */
+    public void skipRecords(long count) throws IOException {
+        if (this.debug) {
+            System.err.println("SkipRecords: count = " + count 
+                               + " recIdx = " + this.currRecIdx 
+                               + " blkIdx = " + this.currBlkIdx);
+        } 
+
+        if (this.inStream == null) {
+            throw new IOException("reading (via skip) from an output buffer");
+        } 
+
+        // records left in the current block
+        long inBlock = Math.min(count, this.recsPerBlock - this.currRecIdx);
+
+        this.currRecIdx += inBlock;
+        count -= inBlock;
+
+        if (count == 0) {
+            return;
+        } 
+
+        long blocks = count / this.recsPerBlock;
+
+        if (blocks > 0) {
+            this.skipBytes(blocks * this.blockSize);
+            this.currBlkIdx += blocks;
+            count -= blocks * this.recsPerBlock;
+        } 
+
+        if (count > 0) {
+            if (!this.readBlock()) {
+                return;
+            } 
+
+            this.currRecIdx = (int) count;
+        } 
+    } 
+
+    /**
+     * Skips bytes of the input stream, reading them if it can't skip.
+     */
+    private void skipBytes(long numToSkip) throws IOException {
+        while (numToSkip > 0) {
+            long skipped = this.inStream.skip(numToSkip);
+
+            if (skipped <= 0) {
+                int len = (int) Math.min(numToSkip, this.blockSize);
+
+                skipped = this.inStream.read(this.blockBuffer, 0, len);
+
+                if (skipped == -1) {
+                    return;
+                } 
+            } 
+
+            numToSkip -= skipped;
+        } 
+    } 
+
     /**
      * Read a record from the input stream and return the data.
      * 
@@ -267,6 +335,11 @@ public class TarBuffer {
             // Thanks to 'Yohann.Roussel@alcatel.fr' for this fix.
             // 
             if (numBytes == -1) {
+                if (offset == 0) {
+                    // nothing left at all
+                    this.currRecIdx = this.recsPerBlock;
+                    return false;
+                } 
                 break;
             } 
 
@@ -306,6 +379,16 @@ public class TarBuffer {
         return this.currRecIdx - 1;
     } 
 
+    /**
+     * Get the number of records read or written so far, which is the
+     * number of the next record counted from the start of the archive.
+     * 
+     * @return The zero based number of the next record.
+     */
+    public long getRecordNumber() {
+        return (long) this.currBlkIdx * this.recsPerBlock + this.currRecIdx;
+    } 
+
     /**
      * Write an archive record to the archive.
      * 
@@ -0,0 +1,188 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.tar;
+
+import java.io.*;
+import java.util.Vector;
+
+/**
+ * Maps the names of a tar archive's entries to the numbers of their
+ * header records, so selected entries can be read without parsing
+ * the headers of all others.
+ *
+ * <p>The index is kept in a separate file next to the archive. It
+ * records length and modification time of the archive it has been
+ * written for, an index that doesn't match its archive anymore is
+ * ignored.</p>
+ *
+ * @see TarInputStream#skipToRecord
+ */
+public class TarIndex {
+
+    private static final int MAGIC = 0x54617249;
+    private static final int VERSION = 1;
+
+    /** entry names, in the order of the archive */
+    private Vector names = new Vector();
+
+    /** header record numbers as Long, parallel to names */
+    private Vector records = new Vector();
+
+    /**
+     * The file holding the index of the given archive.
+     */
+    public static File getIndexFile(File archive) {
+        return new File(archive.getPath() + ".index");
+    }
+
+    /**
+     * Adds an entry, entries have to be added in the order of the
+     * archive.
+     *
+     * @param name the name of the entry
+     * @param record the number of its header record
+     */
+    public void add(String name, long record) {
+        names.addElement(name);
+        records.addElement(new Long(record));
+    }
+
+    /**
+     * The number of entries.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * The name of the entry at the given position.
+     */
+    public String getName(int i) {
+        return (String) names.elementAt(i);
+    }
+
+    /**
+     * The number of the header record of the entry at the given
+     * position.
+     */
+    public long getRecord(int i) {
+        return ((Long) records.elementAt(i)).longValue();
+    }
+
+    /**
+     * Writes the index of archive to its index file.
+     */
+    public void write(File archive) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(getIndexFile(archive))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(archive.length());
+            out.writeLong(archive.lastModified());
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                out.writeUTF(getName(i));
+                out.writeLong(getRecord(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the index of archive from its index file.
+     *
+     * @return null if there is no index file, or it is unreadable or
+     * has been written for a different version of the archive.
+     */
+    public static TarIndex read(File archive) {
+        File indexFile = getIndexFile(archive);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || in.readLong() != archive.length()
+                || in.readLong() != archive.lastModified()) {
+                return null;
+            }
+
+            TarIndex index = new TarIndex();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                index.add(name, in.readLong());
+            }
+            return index;
+        } catch (IOException e) {
+            // unusable index
+            return null;
+        } catch (RuntimeException e) {
+            // corrupt index
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+}
@@ -80,6 +80,7 @@ public class TarInputStream extends FilterInputStream {
     protected byte[]       readBuf;
     protected TarBuffer    buffer;
     protected TarEntry     currEntry;
+    protected long         entryRecord;
 
     public TarInputStream(InputStream is) {
         this(is, TarBuffer.DEFAULT_BLKSIZE, TarBuffer.DEFAULT_RCDSIZE);
@@ -145,29 +146,75 @@ public class TarInputStream extends FilterInputStream {
      * stop at the end of the current entry's data if the number
      * to skip extends beyond that point.
      * 
+     * Whole records are skipped by the TarBuffer without copying
+     * them, only a partial record at the end gets read.
+     * 
      * @param numToSkip The number of bytes to skip.
      */
     public void skip(int numToSkip) throws IOException {
+        int num = Math.min(numToSkip, this.entrySize - this.entryOffset);
 
-        // REVIEW
-        // This is horribly inefficient, but it ensures that we
-        // properly skip over bytes via the TarBuffer...
-        // 
-        byte[] skipBuf = new byte[8 * 1024];
+        if (num <= 0) {
+            return;
+        } 
 
-        for (int num = numToSkip; num > 0; ) {
-            int numRead = this.read(skipBuf, 0, 
-                                    (num > skipBuf.length ? skipBuf.length 
-                                     : num));
+        // the rest of a record that has been read partially
+        if (this.readBuf != null) {
+            int sz = Math.min(num, this.readBuf.length);
 
-            if (numRead == -1) {
-                break;
-            } 
+            this.read(new byte[sz], 0, sz);
+            num -= sz;
+        } 
 
-            num -= numRead;
+        int recordSize = this.buffer.getRecordSize();
+        int records = num / recordSize;
+
+        if (records > 0) {
+            this.buffer.skipRecords(records);
+            this.entryOffset += records * recordSize;
+            num -= records * recordSize;
+        } 
+
+        if (num > 0) {
+            this.read(new byte[num], 0, num);
         } 
     } 
 
+    /**
+     * Get the number of the current entry's header record, counted
+     * from the start of the archive.
+     * 
+     * @return The record number, -1 if there is no current entry.
+     */
+    public long getEntryRecord() {
+        return this.currEntry == null ? -1 : this.entryRecord;
+    } 
+
+    /**
+     * Skip forward to the header record with the given number,
+     * counted from the start of the archive, the next call to
+     * getNextEntry() returns the entry found there. Used together
+     * with a TarIndex to read selected entries only.
+     * 
+     * @param record The number of the header record.
+     */
+    public void skipToRecord(long record) throws IOException {
+        long current = this.buffer.getRecordNumber();
+
+        if (record < current) {
+            throw new IOException("can't skip backwards from record " 
+                                  + current + " to record " + record);
+        } 
+
+        this.buffer.skipRecords(record - current);
+
+        this.currEntry = null;
+        this.readBuf = null;
+        this.entrySize = 0;
+        this.entryOffset = 0;
+        this.hasHitEOF = false;
+    } 
+
     /**
      * Since we do not support marking just yet, we return false.
      * 
@@ -224,6 +271,8 @@ public class TarInputStream extends FilterInputStream {
             this.readBuf = null;
         } 
 
+        this.entryRecord = this.buffer.getRecordNumber();
+
         byte[] headerBuf = this.buffer.readRecord();
 
         if (headerBuf == null) {
@@ -133,6 +133,16 @@ public class TarOutputStream extends FilterOutputStream {
         this.buffer.close();
     } 
 
+    /**
+     * Get the number of records written so far, the header of the
+     * next entry will be written to the record with this number.
+     * 
+     * @return The zero based number of the next record.
+     */
+    public long getRecordNumber() {
+        return this.buffer.getRecordNumber();
+    } 
+
     /**
      * Get the record size being used by this stream's TarBuffer.
      * 
@@ -0,0 +1,366 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.zip;
+
+import java.io.*;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compresses the entries of a ZIP archive with several threads while
+ * writing them to a {@link ZipOutputStream ZipOutputStream} in the
+ * order they have been added.
+ *
+ * <p>Worker threads deflate the contents of files into memory, the
+ * thread adding the entries writes completed entries as raw entries.
+ * As every entry is deflated on its own with the same settings
+ * {@link ZipOutputStream ZipOutputStream} uses, the archive is the
+ * same byte for byte as one written sequentially.</p>
+ *
+ * <p>Files larger than {@link #DIRECT_THRESHOLD DIRECT_THRESHOLD}
+ * are not held in memory but compressed by the writing thread once
+ * all entries before them have been written.  At most a few entries
+ * per thread are kept in memory, {@link #addFile addFile} blocks
+ * until older entries have been written if the limit has been
+ * reached.</p>
+ *
+ * <p>Anybody writing to the ZipOutputStream directly has to call
+ * {@link #flush flush} before.</p>
+ */
+public class ParallelDeflater {
+
+    /**
+     * Files larger than this are compressed by the writing thread.
+     */
+    public static final long DIRECT_THRESHOLD = 2 * 1024 * 1024;
+
+    private ZipOutputStream zOut;
+    private int level;
+
+    /** all entries not written so far, in order */
+    private Vector queue = new Vector();
+
+    /** jobs no worker has taken yet */
+    private Vector pending = new Vector();
+
+    /** maximum size of the queue */
+    private int window;
+
+    private Thread[] workers;
+    private boolean shutdown = false;
+
+    /**
+     * A single entry.
+     */
+    private static class Job {
+        ZipEntry entry;
+        /** null for entries without data */
+        File file;
+        /** archive to copy the raw data from */
+        ZipFile source;
+        /** compress when the job gets written */
+        boolean direct;
+        boolean done;
+        byte[] data;
+        int length;
+        /** what went wrong while compressing */
+        Throwable error;
+    }
+
+    /**
+     * @param zOut the stream to write to
+     * @param threads number of threads compressing entries
+     * @param level compression level, like the one of zOut
+     */
+    public ParallelDeflater(ZipOutputStream zOut, int threads, int level) {
+        this.zOut = zOut;
+        this.level = level;
+        this.window = threads * 4;
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Worker(), "ant-zip-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Adds an entry whose data is the content of the given file.
+     *
+     * <p>The entry has to carry name and time.</p>
+     */
+    public void addFile(ZipEntry ze, File file) throws IOException {
+        Job job = new Job();
+        job.entry = ze;
+        job.file = file;
+        job.direct = file.length() > DIRECT_THRESHOLD;
+        job.done = job.direct;
+        add(job);
+    }
+
+    /**
+     * Adds an entry without data, a directory for example.
+     *
+     * <p>The entry will be passed to {@link
+     * ZipOutputStream#putNextEntry putNextEntry} as is.</p>
+     */
+    public void addEntry(ZipEntry ze) throws IOException {
+        Job job = new Job();
+        job.entry = ze;
+        job.done = true;
+        add(job);
+    }
+
+    /**
+     * Adds an entry of another archive that will be copied without
+     * inflating and deflating it again.
+     */
+    public void addRawEntry(ZipEntry ze, ZipFile source) throws IOException {
+        Job job = new Job();
+        job.entry = ze;
+        job.source = source;
+        job.done = true;
+        add(job);
+    }
+
+    private void add(Job job) throws IOException {
+        synchronized (this) {
+            queue.addElement(job);
+            if (!job.done) {
+                pending.addElement(job);
+                notifyAll();
+            }
+        }
+        writeCompleted(window);
+    }
+
+    /**
+     * Writes all entries that have been added.
+     */
+    public void flush() throws IOException {
+        writeCompleted(0);
+    }
+
+    /**
+     * Writes all entries that have been added and stops the worker
+     * threads.
+     */
+    public void finish() throws IOException {
+        try {
+            flush();
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops the worker threads, discarding all entries not written
+     * so far.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            pending.removeAllElements();
+            queue.removeAllElements();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes completed entries from the head of the queue, waits for
+     * the head to complete while more than max entries are queued.
+     */
+    private void writeCompleted(int max) throws IOException {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                job = (Job) queue.elementAt(0);
+                while (!job.done && queue.size() > max) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+                if (!job.done) {
+                    return;
+                }
+                queue.removeElementAt(0);
+            }
+            write(job);
+        }
+    }
+
+    private void write(Job job) throws IOException {
+        if (job.error instanceof IOException) {
+            throw (IOException) job.error;
+        } else if (job.error instanceof RuntimeException) {
+            throw (RuntimeException) job.error;
+        } else if (job.error instanceof Error) {
+            throw (Error) job.error;
+        }
+        if (job.source != null) {
+            zOut.copyRawEntry(job.entry, job.source);
+        } else if (job.file == null) {
+            zOut.putNextEntry(job.entry);
+            zOut.closeEntry();
+        } else if (job.direct) {
+            zOut.putNextEntry(job.entry);
+            InputStream in = new FileInputStream(job.file);
+            try {
+                byte[] buffer = new byte[8 * 1024];
+                int count;
+                while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+                    zOut.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+            zOut.closeEntry();
+        } else {
+            zOut.writeRawEntry(job.entry, job.data, 0, job.length);
+        }
+    }
+
+    private synchronized Job nextJob() throws InterruptedException {
+        while (pending.isEmpty() && !shutdown) {
+            wait();
+        }
+        if (shutdown) {
+            return null;
+        }
+        Job job = (Job) pending.elementAt(0);
+        pending.removeElementAt(0);
+        return job;
+    }
+
+    private synchronized void jobDone(Job job) {
+        job.done = true;
+        notifyAll();
+    }
+
+    /**
+     * Compresses pending jobs until shut down.
+     */
+    private class Worker implements Runnable {
+        private Deflater deflater = new Deflater(level, true);
+        private CRC32 crc = new CRC32();
+        private byte[] in = new byte[8 * 1024];
+        private byte[] out = new byte[8 * 1024];
+
+        public void run() {
+            try {
+                Job job;
+                while ((job = nextJob()) != null) {
+                    try {
+                        deflate(job);
+                    } catch (Throwable t) {
+                        // an OutOfMemoryError is likely as the whole
+                        // entry is buffered, let the writer report it
+                        job.error = t;
+                    } finally {
+                        jobDone(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // nothing left to do
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void deflate(Job job) throws IOException {
+            deflater.reset();
+            crc.reset();
+            ByteArrayOutputStream bos = 
+                new ByteArrayOutputStream((int) job.file.length() / 2 + 64);
+            long size = 0;
+
+            InputStream fIn = new FileInputStream(job.file);
+            try {
+                int count;
+                while ((count = fIn.read(in, 0, in.length)) != -1) {
+                    crc.update(in, 0, count);
+                    size += count;
+                    deflater.setInput(in, 0, count);
+                    while (!deflater.needsInput()) {
+                        int len = deflater.deflate(out, 0, out.length);
+                        bos.write(out, 0, len);
+                    }
+                }
+            } finally {
+                fIn.close();
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(out, 0, out.length);
+                bos.write(out, 0, len);
+            }
+
+            job.entry.setMethod(ZipEntry.DEFLATED);
+            job.entry.setSize(size);
+            job.entry.setCompressedSize(bos.size());
+            job.entry.setCrc(crc.getValue());
+            job.data = bos.toByteArray();
+            job.length = job.data.length;
+        }
+    }
+}
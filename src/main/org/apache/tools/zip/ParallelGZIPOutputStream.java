@@ -0,0 +1,361 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.zip;
+
+import java.io.*;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes GZIP compressed data, compressing blocks of it with several
+ * threads.
+ *
+ * <p>The data is split into blocks of {@link #BLOCK_SIZE BLOCK_SIZE}
+ * bytes that worker threads compress independently.  Every block
+ * becomes a GZIP member of its own, the members are written in order.
+ * RFC 1952 defines a sequence of members to decompress to the
+ * concatenation of their data, so gunzip and {@link
+ * java.util.zip.GZIPInputStream GZIPInputStream} read the result like
+ * any other GZIP file.  Compression starts afresh in each block, which
+ * costs a few bytes per megabyte.</p>
+ *
+ * <p>At most two blocks per thread are kept in memory, {@link #write
+ * write} blocks until older blocks have been written if the limit has
+ * been reached.</p>
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+    /**
+     * Size of the uncompressed blocks.
+     */
+    public static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, // magic
+        Deflater.DEFLATED,        // compression method
+        0,                        // flags
+        0, 0, 0, 0,               // modification time
+        0,                        // extra flags
+        (byte) 0xff               // operating system, unknown
+    };
+
+    private OutputStream out;
+    private int level;
+
+    /** the block currently being filled */
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count = 0;
+    private boolean written = false;
+    private boolean closed = false;
+
+    /** all blocks not written so far, in order */
+    private Vector queue = new Vector();
+
+    /** blocks no worker has taken yet */
+    private Vector pending = new Vector();
+
+    /** maximum size of the queue */
+    private int window;
+
+    private Thread[] workers;
+    private boolean shutdown = false;
+
+    /**
+     * A single block.
+     */
+    private static class Job {
+        byte[] data;
+        int length;
+        boolean done;
+        byte[] compressed;
+        int compressedLength;
+        long crc;
+        /** what went wrong while compressing */
+        Throwable error;
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param threads number of threads compressing blocks
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int threads) {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param threads number of threads compressing blocks
+     * @param level compression level
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int threads, 
+                                    int level) {
+        this.out = out;
+        this.level = level;
+        this.window = threads * 2;
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Worker(), "ant-gzip-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == block.length) {
+            submit();
+        }
+        block[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == block.length) {
+                submit();
+            }
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the blocks that have been compressed so far and flushes
+     * the underlying stream.
+     *
+     * <p>Like {@link java.util.zip.GZIPOutputStream GZIPOutputStream}
+     * this doesn't force out data of an incomplete block.</p>
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        writeCompleted(window);
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining data, stops the worker threads and closes
+     * the underlying stream.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0 || !written) {
+                // an empty input still needs a member
+                submit();
+            }
+            writeCompleted(0);
+        } finally {
+            closed = true;
+            shutdown();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+    }
+
+    /**
+     * Hands the current block to the workers.
+     */
+    private void submit() throws IOException {
+        Job job = new Job();
+        job.data = block;
+        job.length = count;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+        written = true;
+        synchronized (this) {
+            queue.addElement(job);
+            pending.addElement(job);
+            notifyAll();
+        }
+        writeCompleted(window);
+    }
+
+    private synchronized void shutdown() {
+        shutdown = true;
+        pending.removeAllElements();
+        queue.removeAllElements();
+        notifyAll();
+    }
+
+    /**
+     * Writes completed blocks from the head of the queue, waits for
+     * the head to complete while more than max blocks are queued.
+     */
+    private void writeCompleted(int max) throws IOException {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                job = (Job) queue.elementAt(0);
+                while (!job.done && queue.size() > max) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+                if (!job.done) {
+                    return;
+                }
+                queue.removeElementAt(0);
+            }
+            writeMember(job);
+        }
+    }
+
+    private void writeMember(Job job) throws IOException {
+        if (job.error instanceof RuntimeException) {
+            throw (RuntimeException) job.error;
+        } else if (job.error instanceof Error) {
+            throw (Error) job.error;
+        }
+        out.write(HEADER);
+        out.write(job.compressed, 0, job.compressedLength);
+        byte[] trailer = new byte[8];
+        putInt(trailer, 0, job.crc);
+        putInt(trailer, 4, job.length);
+        out.write(trailer);
+    }
+
+    private static void putInt(byte[] b, int off, long value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
+    private synchronized Job nextJob() throws InterruptedException {
+        while (pending.isEmpty() && !shutdown) {
+            wait();
+        }
+        if (shutdown) {
+            return null;
+        }
+        Job job = (Job) pending.elementAt(0);
+        pending.removeElementAt(0);
+        return job;
+    }
+
+    private synchronized void jobDone(Job job) {
+        job.done = true;
+        notifyAll();
+    }
+
+    /**
+     * Compresses pending blocks until shut down.
+     */
+    private class Worker implements Runnable {
+        private Deflater deflater = new Deflater(level, true);
+        private CRC32 crc = new CRC32();
+
+        public void run() {
+            try {
+                Job job;
+                while ((job = nextJob()) != null) {
+                    try {
+                        deflate(job);
+                    } catch (Throwable t) {
+                        job.error = t;
+                    } finally {
+                        jobDone(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // nothing left to do
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void deflate(Job job) {
+            deflater.reset();
+            crc.reset();
+            crc.update(job.data, 0, job.length);
+            deflater.setInput(job.data, 0, job.length);
+            deflater.finish();
+
+            // stored blocks add 5 bytes per 16k in the worst case
+            byte[] buffer = new byte[job.length + job.length / 1000 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+                length += deflater.deflate(buffer, length, 
+                                           buffer.length - length);
+            }
+
+            job.crc = crc.getValue();
+            job.compressed = buffer;
+            job.compressedLength = length;
+            job.data = null;
+        }
+    }
+}
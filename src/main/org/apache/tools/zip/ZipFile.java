@@ -0,0 +1,286 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.zip;
+
+import java.io.*;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP archive and provides access
+ * to the still compressed data of its entries.
+ *
+ * <p>This is what is needed to copy entries from one archive to
+ * another via {@link ZipOutputStream#putNextRawEntry
+ * ZipOutputStream.putNextRawEntry} without inflating and deflating
+ * them again - use <code>java.util.zip.ZipFile</code> to read the
+ * contents of entries.</p>
+ *
+ * <p>Zip64 archives and archives spanning several files are not
+ * supported.</p>
+ */
+public class ZipFile {
+
+    private static final int CFH_SIG = 0x02014b50;
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int LFH_LENGTH = 30;
+    private static final int CFH_LENGTH = 46;
+    private static final int EOCD_LENGTH = 22;
+
+    private RandomAccessFile archive;
+
+    /** entries in the order of the central directory */
+    private Vector entries = new Vector();
+
+    /** name to entry */
+    private Hashtable nameMap = new Hashtable();
+
+    /** entry to offset of its local file header */
+    private Hashtable offsets = new Hashtable();
+
+    /**
+     * Opens the given file and reads its central directory.
+     *
+     * @exception ZipException if the file is not a ZIP archive this
+     * class can handle
+     */
+    public ZipFile(File f) throws IOException {
+        archive = new RandomAccessFile(f, "r");
+        try {
+            readCentralDirectory();
+        } catch (IOException e) {
+            archive.close();
+            throw e;
+        }
+    }
+
+    /**
+     * All entries in the order of the central directory.
+     *
+     * @return an Enumeration of java.util.zip.ZipEntry instances
+     */
+    public Enumeration getEntries() {
+        return entries.elements();
+    }
+
+    /**
+     * The entry of the given name, null if there is none.
+     */
+    public ZipEntry getEntry(String name) {
+        return (ZipEntry) nameMap.get(name);
+    }
+
+    /**
+     * A stream of the data of an entry as it has been stored in the
+     * archive, i.e. still compressed for DEFLATED entries.
+     *
+     * <p>The stream reads from the archive itself, only one of them
+     * must be used at any time.</p>
+     */
+    public InputStream getRawInputStream(ZipEntry ze) throws IOException {
+        Long offset = (Long) offsets.get(ze);
+        if (offset == null) {
+            throw new ZipException("entry " + ze.getName() 
+                                   + " doesn't belong to this archive");
+        }
+        byte[] header = new byte[LFH_LENGTH];
+        archive.seek(offset.longValue());
+        archive.readFully(header);
+        long start = offset.longValue() + LFH_LENGTH 
+            + getShort(header, 26) + getShort(header, 28);
+        return new RawInputStream(start, ze.getCompressedSize());
+    }
+
+    /**
+     * Closes the archive.
+     */
+    public void close() throws IOException {
+        archive.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        byte[] eocd = new byte[EOCD_LENGTH];
+        long pos = findEndOfCentralDirectory();
+        archive.seek(pos);
+        archive.readFully(eocd);
+        int count = getShort(eocd, 10);
+        long cdLength = getInt(eocd, 12);
+        long cdStart = getInt(eocd, 16);
+
+        byte[] cd = new byte[(int) cdLength];
+        archive.seek(cdStart);
+        archive.readFully(cd);
+
+        int off = 0;
+        for (int i = 0; i < count; i++) {
+            if (off + CFH_LENGTH > cd.length 
+                || getInt(cd, off) != CFH_SIG) {
+                throw new ZipException("invalid central directory");
+            }
+            int nameLength = getShort(cd, off + 28);
+            int extraLength = getShort(cd, off + 30);
+            int commentLength = getShort(cd, off + 32);
+            int varStart = off + CFH_LENGTH;
+            if (varStart + nameLength + extraLength + commentLength > cd.length) {
+                throw new ZipException("invalid central directory");
+            }
+
+            // java.util.zip has always used UTF-8, flagged or not
+            ZipEntry ze = 
+                new ZipEntry(new String(cd, varStart, nameLength, "UTF8"));
+            ze.setMethod(getShort(cd, off + 10));
+            ze.setTime(fromDosTime(getInt(cd, off + 12)));
+            ze.setCrc(getInt(cd, off + 16));
+            ze.setCompressedSize(getInt(cd, off + 20));
+            ze.setSize(getInt(cd, off + 24));
+            if (extraLength > 0) {
+                byte[] extra = new byte[extraLength];
+                System.arraycopy(cd, varStart + nameLength, extra, 0, 
+                                 extraLength);
+                ze.setExtra(extra);
+            }
+            if (commentLength > 0) {
+                ze.setComment(new String(cd, varStart + nameLength + extraLength,
+                                         commentLength, "UTF8"));
+            }
+
+            entries.addElement(ze);
+            nameMap.put(ze.getName(), ze);
+            offsets.put(ze, new Long(getInt(cd, off + 42)));
+            off = varStart + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Searches the end of central directory record from the end of
+     * the file, it may be followed by a comment of up to 64k.
+     */
+    private long findEndOfCentralDirectory() throws IOException {
+        long length = archive.length();
+        int window = (int) Math.min(length, EOCD_LENGTH + 0xffff);
+        byte[] tail = new byte[window];
+        archive.seek(length - window);
+        archive.readFully(tail);
+        for (int i = window - EOCD_LENGTH; i >= 0; i--) {
+            if (getInt(tail, i) == EOCD_SIG) {
+                return length - window + i;
+            }
+        }
+        throw new ZipException("not a ZIP archive");
+    }
+
+    /**
+     * Converts a MS-DOS date and time to a Java time.
+     */
+    private static long fromDosTime(long dosTime) {
+        Calendar time = Calendar.getInstance();
+        time.clear();
+        time.set((int) ((dosTime >> 25) & 0x7f) + 1980,
+                 (int) ((dosTime >> 21) & 0x0f) - 1,
+                 (int) (dosTime >> 16) & 0x1f,
+                 (int) (dosTime >> 11) & 0x1f,
+                 (int) (dosTime >> 5) & 0x3f,
+                 (int) (dosTime << 1) & 0x3e);
+        return time.getTime().getTime();
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    private static long getInt(byte[] b, int off) {
+        return getShort(b, off) | ((long) getShort(b, off + 2) << 16);
+    }
+
+    /**
+     * Reads a region of the archive.
+     */
+    private class RawInputStream extends InputStream {
+        private long pos;
+        private long remaining;
+
+        RawInputStream(long start, long length) {
+            pos = start;
+            remaining = length;
+        }
+
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (len > remaining) {
+                len = (int) remaining;
+            }
+            archive.seek(pos);
+            int count = archive.read(b, off, len);
+            if (count == -1) {
+                throw new EOFException("truncated ZIP archive");
+            }
+            pos += count;
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.zip;
+
+import java.io.*;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes ZIP archives, like <code>java.util.zip.ZipOutputStream</code>.
+ *
+ * <p>In addition to what the java.util.zip version offers, entries
+ * can be written from data that has already been compressed - see
+ * {@link #putNextRawEntry putNextRawEntry} - so archives can be
+ * assembled from entries deflated elsewhere or copied from other
+ * archives without inflating and deflating them again.</p>
+ *
+ * <p>DEFLATED entries are always written with a data descriptor
+ * following the data, whether they have been compressed by this
+ * stream or not, so an entry is written the same way regardless of
+ * where its data has been compressed.</p>
+ */
+public class ZipOutputStream extends FilterOutputStream {
+
+    /**
+     * Compression method for compressed entries.
+     */
+    public static final int DEFLATED = ZipEntry.DEFLATED;
+
+    /**
+     * Compression method for uncompressed entries.
+     */
+    public static final int STORED = ZipEntry.STORED;
+
+    private static final byte[] LFH_SIG = {0x50, 0x4b, 0x03, 0x04};
+    private static final byte[] DD_SIG = {0x50, 0x4b, 0x07, 0x08};
+    private static final byte[] CFH_SIG = {0x50, 0x4b, 0x01, 0x02};
+    private static final byte[] EOCD_SIG = {0x50, 0x4b, 0x05, 0x06};
+
+    /** general purpose flag: sizes and crc follow the data */
+    private static final int DATA_DESCRIPTOR_FLAG = 8;
+    /** general purpose flag: name and comment are UTF-8 */
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private int method = DEFLATED;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private String comment = "";
+
+    /** the entries written so far, for the central directory */
+    private Vector entries = new Vector();
+
+    /** names of the entries written so far */
+    private Hashtable names = new Hashtable();
+
+    /** entry currently written */
+    private EntryInfo current;
+
+    /** data of the current entry is passed through unchanged */
+    private boolean raw;
+
+    private CRC32 crc = new CRC32();
+    private Deflater deflater;
+    private byte[] buf = new byte[8 * 1024];
+    private byte[] scratch = new byte[4];
+
+    /** number of bytes written to the underlying stream so far */
+    private long written = 0;
+
+    /** number of uncompressed bytes written for the current entry */
+    private long entrySize;
+
+    private boolean finished = false;
+
+    /**
+     * Position and header data of an entry.
+     */
+    private static class EntryInfo {
+        ZipEntry entry;
+        byte[] name;
+        int flags;
+        long offset;
+    }
+
+    public ZipOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Sets the default compression method for entries that don't
+     * specify one.
+     */
+    public void setMethod(int method) {
+        if (method != DEFLATED && method != STORED) {
+            throw new IllegalArgumentException("invalid compression method");
+        }
+        this.method = method;
+    }
+
+    /**
+     * Sets the compression level used for DEFLATED entries.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Sets the comment of the archive.
+     */
+    public void setComment(String comment) {
+        this.comment = comment == null ? "" : comment;
+    }
+
+    /**
+     * Starts a new entry and positions the stream at the start of its
+     * data.
+     *
+     * <p>STORED entries must have their size and crc set.</p>
+     */
+    public void putNextEntry(ZipEntry ze) throws IOException {
+        if (ze.getMethod() == -1) {
+            ze.setMethod(method);
+        }
+        if (ze.getMethod() == STORED) {
+            if (ze.getSize() == -1 || ze.getCrc() == -1) {
+                throw new ZipException("STORED entry " + ze.getName() 
+                                       + " is missing size and crc");
+            }
+            ze.setCompressedSize(ze.getSize());
+        }
+        startEntry(ze, false);
+
+        if (ze.getMethod() == DEFLATED) {
+            if (deflater == null) {
+                deflater = new Deflater(level, true);
+            } else {
+                deflater.reset();
+            }
+            deflater.setLevel(level);
+        }
+    }
+
+    /**
+     * Starts a new entry whose data will be written already
+     * compressed, as it has been produced by a Deflater with
+     * <code>nowrap</code> set for DEFLATED entries.
+     *
+     * <p>The entry must have its method, size, compressed size and
+     * crc set.</p>
+     */
+    public void putNextRawEntry(ZipEntry ze) throws IOException {
+        if (ze.getMethod() == -1 || ze.getSize() == -1 
+            || ze.getCompressedSize() == -1 || ze.getCrc() == -1) {
+            throw new ZipException("raw entry " + ze.getName() 
+                                   + " needs method, sizes and crc");
+        }
+        startEntry(ze, true);
+    }
+
+    /**
+     * Writes the complete data of a raw entry.
+     *
+     * @see #putNextRawEntry
+     */
+    public void writeRawEntry(ZipEntry ze, byte[] data, int offset, int length)
+        throws IOException {
+        putNextRawEntry(ze);
+        write(data, offset, length);
+        closeEntry();
+    }
+
+    /**
+     * Copies an entry of another archive without inflating and
+     * deflating it again.
+     */
+    public void copyRawEntry(ZipEntry ze, ZipFile source) throws IOException {
+        InputStream in = source.getRawInputStream(ze);
+        putNextRawEntry(ze);
+        int count;
+        while ((count = in.read(buf, 0, buf.length)) != -1) {
+            write(buf, 0, count);
+        }
+        closeEntry();
+    }
+
+    private void startEntry(ZipEntry ze, boolean raw) throws IOException {
+        if (finished) {
+            throw new IOException("archive has already been finished");
+        }
+        if (current != null) {
+            closeEntry();
+        }
+
+        if (names.put(ze.getName(), ze.getName()) != null) {
+            throw new ZipException("duplicate entry: " + ze.getName());
+        }
+
+        EntryInfo info = new EntryInfo();
+        info.entry = ze;
+        info.name = ze.getName().getBytes("UTF8");
+        if (info.name.length != ze.getName().length()) {
+            info.flags |= UTF8_FLAG;
+        }
+        if (ze.getMethod() == DEFLATED) {
+            info.flags |= DATA_DESCRIPTOR_FLAG;
+        }
+        info.offset = written;
+        checkZip32(info.offset, "offset of entry " + ze.getName());
+        if (ze.getMethod() != DEFLATED) {
+            checkZip32(ze.getSize(), "size of entry " + ze.getName());
+        }
+
+        writeBytes(LFH_SIG);
+        writeShort(versionNeeded(ze));
+        writeShort(info.flags);
+        writeShort(ze.getMethod());
+        writeInt(toDosTime(ze.getTime()));
+        if (ze.getMethod() == DEFLATED) {
+            // follow in the data descriptor
+            writeInt(0);
+            writeInt(0);
+            writeInt(0);
+        } else {
+            writeInt(ze.getCrc());
+            writeInt(ze.getSize());
+            writeInt(ze.getSize());
+        }
+        byte[] extra = ze.getExtra();
+        writeShort(info.name.length);
+        writeShort(extra == null ? 0 : extra.length);
+        writeBytes(info.name);
+        if (extra != null) {
+            writeBytes(extra);
+        }
+
+        current = info;
+        this.raw = raw;
+        entrySize = 0;
+        crc.reset();
+    }
+
+    /**
+     * Writes data of the current entry.
+     */
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (current == null) {
+            throw new ZipException("no current entry");
+        }
+        if (length == 0) {
+            return;
+        }
+
+        if (raw || current.entry.getMethod() == STORED) {
+            out.write(b, offset, length);
+            written += length;
+        } else {
+            deflater.setInput(b, offset, length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        if (!raw) {
+            crc.update(b, offset, length);
+        }
+        entrySize += length;
+    }
+
+    public void write(int b) throws IOException {
+        byte[] one = {(byte) b};
+        write(one, 0, 1);
+    }
+
+    private void deflate() throws IOException {
+        int len = deflater.deflate(buf, 0, buf.length);
+        if (len > 0) {
+            out.write(buf, 0, len);
+            written += len;
+        }
+    }
+
+    /**
+     * Finishes the data of the current entry.
+     */
+    public void closeEntry() throws IOException {
+        if (current == null) {
+            return;
+        }
+        ZipEntry ze = current.entry;
+
+        if (raw) {
+            if (entrySize != ze.getCompressedSize()) {
+                throw new ZipException("invalid size for raw entry " 
+                                       + ze.getName() + ": expected " 
+                                       + ze.getCompressedSize() + " but got "
+                                       + entrySize + " bytes");
+            }
+        } else if (ze.getMethod() == DEFLATED) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            ze.setSize(entrySize);
+            ze.setCompressedSize(deflater.getTotalOut());
+            ze.setCrc(crc.getValue());
+        } else {
+            if (entrySize != ze.getSize()) {
+                throw new ZipException("invalid size for STORED entry " 
+                                       + ze.getName() + ": expected " 
+                                       + ze.getSize() + " but got "
+                                       + entrySize + " bytes");
+            }
+            if (crc.getValue() != ze.getCrc()) {
+                throw new ZipException("invalid crc for STORED entry " 
+                                       + ze.getName());
+            }
+        }
+
+        checkZip32(ze.getSize(), "size of entry " + ze.getName());
+        checkZip32(ze.getCompressedSize(), 
+                   "compressed size of entry " + ze.getName());
+
+        if (ze.getMethod() == DEFLATED) {
+            writeBytes(DD_SIG);
+            writeInt(ze.getCrc());
+            writeInt(ze.getCompressedSize());
+            writeInt(ze.getSize());
+        }
+
+        entries.addElement(current);
+        current = null;
+    }
+
+    /**
+     * Writes the central directory without closing the underlying
+     * stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+
+        if (entries.size() >= 0xFFFF) {
+            throw new ZipException("too many entries: " + entries.size() 
+                                   + ", ZIP64 is not supported");
+        }
+
+        long cdStart = written;
+        checkZip32(cdStart, "offset of the central directory");
+        for (int i = 0; i < entries.size(); i++) {
+            writeCentralFileHeader((EntryInfo) entries.elementAt(i));
+        }
+        long cdLength = written - cdStart;
+        checkZip32(cdLength, "size of the central directory");
+
+        byte[] commentBytes = comment.getBytes("UTF8");
+        writeBytes(EOCD_SIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(entries.size());
+        writeShort(entries.size());
+        writeInt(cdLength);
+        writeInt(cdStart);
+        writeShort(commentBytes.length);
+        writeBytes(commentBytes);
+
+        finished = true;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * Finishes the archive and closes the underlying stream.
+     */
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCentralFileHeader(EntryInfo info) throws IOException {
+        ZipEntry ze = info.entry;
+        byte[] extra = ze.getExtra();
+        byte[] entryComment = ze.getComment() == null 
+            ? new byte[0] : ze.getComment().getBytes("UTF8");
+
+        writeBytes(CFH_SIG);
+        writeShort(20);
+        writeShort(versionNeeded(ze));
+        writeShort(info.flags);
+        writeShort(ze.getMethod());
+        writeInt(toDosTime(ze.getTime()));
+        writeInt(ze.getCrc());
+        writeInt(ze.getCompressedSize());
+        writeInt(ze.getSize());
+        writeShort(info.name.length);
+        writeShort(extra == null ? 0 : extra.length);
+        writeShort(entryComment.length);
+        writeShort(0);        // disk number start
+        writeShort(0);        // internal file attributes
+        writeInt(0);          // external file attributes
+        writeInt(info.offset);
+        writeBytes(info.name);
+        if (extra != null) {
+            writeBytes(extra);
+        }
+        writeBytes(entryComment);
+    }
+
+    /**
+     * Throws a ZipException if value doesn't fit into the four bytes
+     * of the classic format.  0xFFFFFFFF itself is reserved for
+     * archives using the ZIP64 extensions.
+     */
+    private static void checkZip32(long value, String what) 
+        throws ZipException {
+        if (value >= 0xFFFFFFFFL) {
+            throw new ZipException(what + " is " + value 
+                                   + " bytes, ZIP64 is not supported");
+        }
+    }
+
+    private static int versionNeeded(ZipEntry ze) {
+        return ze.getMethod() == DEFLATED ? 20 : 10;
+    }
+
+    /**
+     * Converts a Java time to the MS-DOS date and time format.
+     */
+    public static long toDosTime(long t) {
+        Calendar time = Calendar.getInstance();
+        time.setTime(new Date(t));
+        int year = time.get(Calendar.YEAR);
+        if (year < 1980) {
+            // 1980-01-01 00:00:00
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25) 
+            | ((time.get(Calendar.MONTH) + 1) << 21)
+            | (time.get(Calendar.DAY_OF_MONTH) << 16)
+            | (time.get(Calendar.HOUR_OF_DAY) << 11)
+            | (time.get(Calendar.MINUTE) << 5)
+            | (time.get(Calendar.SECOND) >> 1);
+    }
+
+    private void writeShort(int value) throws IOException {
+        scratch[0] = (byte) (value & 0xff);
+        scratch[1] = (byte) ((value >> 8) & 0xff);
+        out.write(scratch, 0, 2);
+        written += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        scratch[0] = (byte) (value & 0xff);
+        scratch[1] = (byte) ((value >> 8) & 0xff);
+        scratch[2] = (byte) ((value >> 16) & 0xff);
+        scratch[3] = (byte) ((value >> 24) & 0xff);
+        out.write(scratch, 0, 4);
+        written += 4;
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        out.write(b, 0, b.length);
+        written += b.length;
+    }
+}
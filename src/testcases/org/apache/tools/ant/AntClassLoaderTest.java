@@ -0,0 +1,260 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.tools.ant.types.Path;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests AntClassLoader.
+ */
+public class AntClassLoaderTest extends TestCase {
+
+    private Project p;
+    private File dir;
+    private File jar;
+
+    public AntClassLoaderTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws IOException {
+        p = new Project();
+        p.init();
+        dir = new File("antclassloadertest.tmp");
+        new File(dir, "a").mkdirs();
+        write(new File(dir, "a/both.txt"), "dir".getBytes());
+        write(new File(dir, "a/dir.txt"), "dir".getBytes());
+
+        jar = new File("antclassloadertest.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            add(out, "a/both.txt", "jar".getBytes());
+            add(out, "a/jar.txt", "jar".getBytes());
+            add(out, "root.txt", "jar".getBytes());
+            add(out, "org/apache/tools/ant/AntClassLoaderTest$Dummy.class", 
+                read(getClass().getResourceAsStream("AntClassLoaderTest$Dummy.class")));
+        } finally {
+            out.close();
+        }
+    }
+
+    public void tearDown() {
+        new File(dir, "a/both.txt").delete();
+        new File(dir, "a/dir.txt").delete();
+        new File(dir, "a").delete();
+        dir.delete();
+        jar.delete();
+    }
+
+    public void testClasspathOrder() throws IOException {
+        AntClassLoader loader = createLoader(dir, jar);
+        assertEquals("dir", read(loader, "a/both.txt"));
+        assertEquals("dir", read(loader, "a/dir.txt"));
+        assertEquals("jar", read(loader, "a/jar.txt"));
+        assertEquals("jar", read(loader, "root.txt"));
+        assertNull(loader.getResourceAsStream("a/none.txt"));
+        assertNull(loader.getResourceAsStream("b/none.txt"));
+        loader.cleanup();
+
+        loader = createLoader(jar, dir);
+        assertEquals("jar", read(loader, "a/both.txt"));
+        assertEquals("dir", read(loader, "a/dir.txt"));
+        loader.cleanup();
+    }
+
+    public void testLoadClass() throws Exception {
+        AntClassLoader loader = createLoader(jar, dir);
+        Class c = loader.loadClass(Dummy.class.getName());
+        assertSame(loader, c.getClassLoader());
+        assert(c != Dummy.class);
+
+        // jars are opened again after cleanup
+        loader.cleanup();
+        assertEquals("jar", read(loader, "a/jar.txt"));
+        loader.cleanup();
+    }
+
+    public void testStreamSurvivesCleanup() throws IOException {
+        AntClassLoader loader = createLoader(jar, dir);
+        InputStream in = loader.getResourceAsStream("a/jar.txt");
+        loader.cleanup();
+        assertEquals("jar", new String(read(in)));
+    }
+
+    public void testPackageRoots() throws Exception {
+        AntClassLoader loader = createLoader(jar, dir);
+        loader.addSystemPackageRoot("org.apache");
+        assertSame(Dummy.class, loader.loadClass(Dummy.class.getName()));
+
+        loader = createLoader(jar, dir);
+        loader.addSystemPackageRoot("org.apache");
+        loader.addLoaderPackageRoot("org.apache.tools");
+        assertSame(loader, 
+                   loader.loadClass(Dummy.class.getName()).getClassLoader());
+
+        loader = createLoader(jar, dir);
+        loader.addSystemPackageRoot("org.apache.tools.ant.AntClass");
+        assertSame(loader, 
+                   loader.loadClass(Dummy.class.getName()).getClassLoader());
+    }
+
+    /**
+     * JDK 1.7 and above accept the registration, classes are loaded
+     * under locks of their own then.
+     */
+    public void testParallelCapable() throws Exception {
+        try {
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable",
+                                                new Class[0]);
+        } catch (NoSuchMethodException e) {
+            // JDK 1.6 and earlier
+            assert(!AntClassLoader.isParallelCapable());
+            return;
+        }
+        assert(AntClassLoader.isParallelCapable());
+
+        try {
+            // JDK 9+ can tell for itself
+            Method registered = 
+                ClassLoader.class.getMethod("isRegisteredAsParallelCapable", 
+                                            new Class[0]);
+            assertEquals(Boolean.TRUE, 
+                         registered.invoke(createLoader(jar, dir), 
+                                           new Object[0]));
+        } catch (NoSuchMethodException e) {
+            // JDK 1.7 and 1.8
+        }
+    }
+
+    public void testConcurrentLoading() throws Exception {
+        final AntClassLoader loader = createLoader(jar, dir);
+        final Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            results[index] = 
+                                loader.loadClass(Dummy.class.getName());
+                        } catch (Throwable t) {
+                            results[index] = t;
+                        }
+                    }
+                };
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        for (int i = 0; i < results.length; i++) {
+            assert(String.valueOf(results[i]), results[i] instanceof Class);
+            assertSame(results[0], results[i]);
+        }
+        loader.cleanup();
+    }
+
+    private AntClassLoader createLoader(File first, File second) {
+        Path path = new Path(p);
+        path.setLocation(first);
+        path.setLocation(second);
+        return new AntClassLoader(p, path, false);
+    }
+
+    private static void add(ZipOutputStream out, String name, byte[] data) 
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static void write(File f, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(AntClassLoader loader, String name) 
+        throws IOException {
+        InputStream in = loader.getResourceAsStream(name);
+        assertNotNull(name, in);
+        return new String(read(in));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public static class Dummy {
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import java.io.*;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.DigestChangeDetector.
+ */
+
+public class DigestChangeDetectorTest extends TestCase {
+
+    private File dir = new File("src/etc/testcases/digest.tmp");
+    private File cache = new File(dir, "digests");
+    private File source = new File(dir, "source");
+    private File target = new File(dir, "target");
+
+    public DigestChangeDetectorTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws IOException {
+        dir.mkdirs();
+        write(source, "content");
+        write(target, "built from content");
+        target.setLastModified(source.lastModified() + 10000);
+    }
+
+    public void tearDown() {
+        cache.delete();
+        source.delete();
+        target.delete();
+        dir.delete();
+    }
+
+    public void testTimestamps() {
+        ChangeDetector d = new ChangeDetector();
+        assert(!d.isOutOfDate(source, target));
+        source.setLastModified(target.lastModified() + 10000);
+        assert(d.isOutOfDate(source, target));
+        target.delete();
+        assert(d.isOutOfDate(source, target));
+    }
+
+    public void testTouchedSource() throws IOException {
+        DigestChangeDetector d = new DigestChangeDetector(cache);
+        d.built(source, target);
+        d.save();
+
+        // a fresh checkout
+        source.setLastModified(target.lastModified() + 10000);
+        d = new DigestChangeDetector(cache);
+        assert(!d.isOutOfDate(source, target));
+
+        write(source, "changed");
+        source.setLastModified(target.lastModified() + 20000);
+        assert(d.isOutOfDate(source, target));
+
+        // same size, different content
+        write(source, "CONTENT");
+        source.setLastModified(target.lastModified() + 20000);
+        assert(d.isOutOfDate(source, target));
+    }
+
+    public void testUnknownSource() throws IOException {
+        DigestChangeDetector d = new DigestChangeDetector(cache);
+        source.setLastModified(target.lastModified() + 10000);
+        assert(d.isOutOfDate(source, target));
+
+        // recorded as it is up to date by timestamp
+        source.setLastModified(target.lastModified() - 10000);
+        assert(!d.isOutOfDate(source, target));
+        source.setLastModified(target.lastModified() + 10000);
+        assert(!d.isOutOfDate(source, target));
+    }
+
+    public void testCorruptCache() throws IOException {
+        write(cache, "garbage");
+        DigestChangeDetector d = new DigestChangeDetector(cache);
+        source.setLastModified(target.lastModified() + 10000);
+        assert(d.isOutOfDate(source, target));
+    }
+
+    public void testCurrentRecordNotRewritten() throws IOException {
+        long now = System.currentTimeMillis();
+        source.setLastModified(now - 20000);
+        DigestChangeDetector d = new DigestChangeDetector(cache);
+        d.built(source, target);
+        d.save();
+        assert(cache.delete());
+
+        // nothing has changed, so there is nothing to save
+        d.built(source, target);
+        d.save();
+        assert(!cache.exists());
+
+        write(source, "changed");
+        source.setLastModified(now - 10000);
+        d.built(source, target);
+        d.save();
+        assert(cache.exists());
+    }
+
+    public void testSavedBySubproject() throws IOException {
+        Project top = new Project();
+        top.init();
+        top.setProperty(Project.DIGEST_CACHE_PROPERTY, cache.getAbsolutePath());
+
+        // only the subproject uses the detector
+        Project sub = new Project();
+        sub.init();
+        sub.setProperty(Project.DIGEST_CACHE_PROPERTY, cache.getAbsolutePath());
+        sub.getChangeDetector().built(source, target);
+
+        top.fireBuildFinished(null);
+        assert(cache.exists());
+    }
+
+    private static void write(File f, String content) throws IOException {
+        Writer w = new FileWriter(f);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import java.io.File;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.DirectoryScanner.
+ */
+
+public class DirectoryScannerTest extends TestCase {
+
+    private File indexDir = new File("src/etc/testcases/scanindex.tmp");
+
+    public DirectoryScannerTest(String name) {
+        super(name);
+    }
+
+    public void tearDown() {
+        String[] files = indexDir.list();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                new File(indexDir, files[i]).delete();
+            }
+            indexDir.delete();
+        }
+    }
+
+    public void testParallelScanHasSameResults() {
+        DirectoryScanner expected = newScanner();
+        expected.scan();
+
+        DirectoryScanner parallel = newScanner();
+        parallel.setThreadCount(4);
+        parallel.scan();
+
+        assertSameResults(expected, parallel);
+    }
+
+    public void testParallelScanUsesOverriddenScandir() {
+        CountingScanner expected = new CountingScanner();
+        expected.scan();
+        expected.getNotIncludedFiles();
+
+        CountingScanner parallel = new CountingScanner();
+        parallel.setThreadCount(4);
+        parallel.scan();
+        parallel.getNotIncludedFiles();
+
+        assert(expected.count > 0);
+        assertEquals(expected.count, parallel.count);
+        assertSameResults(expected, parallel);
+    }
+
+    public void testParallelScanRethrowsErrors() {
+        DirectoryScanner ds = new DirectoryScanner() {
+                protected void scandir(File dir, String vpath, boolean fast) {
+                    if (vpath.endsWith("taskdefs" + File.separator)) {
+                        throw new ScanError();
+                    }
+                    super.scandir(dir, vpath, fast);
+                }
+            };
+        configure(ds);
+        ds.setThreadCount(4);
+        try {
+            ds.scan();
+            fail("the scan has hidden the error");
+        } catch (ScanError e) {
+            // expected
+        }
+    }
+
+    private static class ScanError extends Error {
+    }
+
+    public void testIndexedScanHasSameResults() {
+        DirectoryScanner expected = newScanner();
+        expected.scan();
+
+        // first run writes the index, second one reads it
+        for (int i = 0; i < 2; i++) {
+            DirectoryScanner indexed = newScanner();
+            indexed.setIndexDir(indexDir);
+            indexed.scan();
+            assertSameResults(expected, indexed);
+        }
+        assertEquals(1, indexDir.list().length);
+    }
+
+    private DirectoryScanner newScanner() {
+        return configure(new DirectoryScanner());
+    }
+
+    private static DirectoryScanner configure(DirectoryScanner ds) {
+        ds.setBasedir("src/main");
+        ds.setIncludes(new String[] {"org/apache/tools/ant/**/*.java"});
+        ds.setExcludes(new String[] {"**/optional/**"});
+        ds.addDefaultExcludes();
+        return ds;
+    }
+
+    /**
+     * Counts the directories it has been asked to scan.
+     */
+    private static class CountingScanner extends DirectoryScanner {
+        int count = 0;
+        private Object lock = new Object();
+
+        CountingScanner() {
+            configure(this);
+        }
+
+        protected void scandir(File dir, String vpath, boolean fast) {
+            // slowScan holds the monitor of the scanner
+            synchronized (lock) {
+                count++;
+            }
+            super.scandir(dir, vpath, fast);
+        }
+    }
+
+    private void assertSameResults(DirectoryScanner expected, 
+                                   DirectoryScanner actual) {
+        assertSameNames("included files", expected.getIncludedFiles(), 
+                   actual.getIncludedFiles());
+        assertSameNames("included dirs", expected.getIncludedDirectories(), 
+                   actual.getIncludedDirectories());
+        assertSameNames("not included files", expected.getNotIncludedFiles(), 
+                   actual.getNotIncludedFiles());
+        assertSameNames("not included dirs", expected.getNotIncludedDirectories(), 
+                   actual.getNotIncludedDirectories());
+        assertSameNames("excluded files", expected.getExcludedFiles(), 
+                   actual.getExcludedFiles());
+        assertSameNames("excluded dirs", expected.getExcludedDirectories(), 
+                   actual.getExcludedDirectories());
+    }
+
+    private void assertSameNames(String what, String[] expected, String[] actual) {
+        assertEquals(what, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(what, expected[i], actual[i]);
+        }
+    }
+}
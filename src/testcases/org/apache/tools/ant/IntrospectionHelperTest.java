@@ -91,6 +91,22 @@ public class IntrospectionHelperTest extends TestCase {
         }
     }
 
+    public void testCache() throws Exception {
+        assertSame(IntrospectionHelper.getHelper(getClass()),
+                   IntrospectionHelper.getHelper(getClass()));
+
+        // classes of an AntClassLoader are kept by their loader
+        Project p = new Project();
+        AntClassLoader loader = 
+            new AntClassLoader(p, new org.apache.tools.ant.types.Path(p, System.getProperty("java.class.path")));
+        Class c = loader.forceLoadClass("org.apache.tools.ant.types.PatternSet");
+        assertSame(loader, c.getClassLoader());
+        IntrospectionHelper ih = IntrospectionHelper.getHelper(c);
+        assertSame(ih, loader.helpers.getHelper(c));
+        assertSame(ih, IntrospectionHelper.getHelper(c));
+        assert(ih != IntrospectionHelper.getHelper(org.apache.tools.ant.types.PatternSet.class));
+    }
+
     public void testSupportsCharacters() {
         IntrospectionHelper ih = IntrospectionHelper.getHelper(java.lang.String.class);
         assert("String doesn\'t support addText", !ih.supportsCharacters());
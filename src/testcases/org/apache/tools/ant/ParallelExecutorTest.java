@@ -0,0 +1,311 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.ant;
+
+import java.io.*;
+import java.util.Vector;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests targets run in parallel by Project.executeTarget.
+ */
+public class ParallelExecutorTest extends TestCase {
+
+    private Project p;
+
+    /** "start x" and "end x" for every target x, in order */
+    private Vector log = new Vector();
+
+    /** whose turn it is in interleaved targets */
+    private int turn = 0;
+
+    public ParallelExecutorTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        p = new Project();
+        p.init();
+        p.setThreadCount(2);
+    }
+
+    /**
+     * b and c wait for each other, which only works if they run at
+     * the same time, but not before a has finished.
+     */
+    public void testDependencyOrder() {
+        addTarget("a", "", null);
+        addTarget("b", "a", "c");
+        addTarget("c", "a", "b");
+        addTarget("d", "b,c", null);
+
+        p.executeTarget("d");
+
+        assertEquals(8, log.size());
+        assertEquals("start a", log.elementAt(0));
+        assertEquals("end a", log.elementAt(1));
+        assert(log.indexOf("start b") < log.indexOf("end c"));
+        assert(log.indexOf("start c") < log.indexOf("end b"));
+        assertEquals("start d", log.elementAt(6));
+        assertEquals("end d", log.elementAt(7));
+    }
+
+    public void testStopOnFirstFailure() {
+        Target fail = addTarget("fail", "", "slow");
+        Task task = new Task() {
+                public void execute() {
+                    record("failing");
+                    throw new BuildException("failed on purpose");
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(fail);
+        fail.addTask(task);
+        Target slow = addTarget("slow", "", "fail");
+        task = new Task() {
+                public void execute() {
+                    waitFor("failing");
+                    // give the executor time to see the failure
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                    }
+                    record("slept");
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(slow);
+        slow.addTask(task);
+        addTarget("after", "slow", null);
+        addTarget("all", "fail,slow,after", null);
+
+        try {
+            p.executeTarget("all");
+            fail("expected a BuildException");
+        } catch (BuildException e) {
+            assertEquals("failed on purpose", e.getMessage());
+        }
+        assert("running target completes", log.contains("slept"));
+        assert("no target starts after the failure", 
+               !log.contains("start after"));
+        assert(!log.contains("start all"));
+    }
+
+    /**
+     * Messages of interleaved targets end up in the right target.
+     */
+    public void testListenerAttribution() throws Exception {
+        File file = new File("parallel-test.xml");
+        p.setProperty("XmlLogger.file", file.getAbsolutePath());
+        p.addBuildListener(new XmlLogger());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        logger.setOutputPrintStream(new PrintStream(out));
+        logger.setErrorPrintStream(new PrintStream(out));
+        p.addBuildListener(logger);
+
+        addInterleavedTarget("a", 0);
+        addInterleavedTarget("b", 1);
+        addTarget("all", "a,b", null);
+
+        try {
+            p.fireBuildStarted();
+            p.executeTarget("all");
+            p.fireBuildFinished(null);
+
+            Element build = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().parse(file).getDocumentElement();
+            Element[] targets = getChildren(build, "target");
+            assertEquals(3, targets.length);
+            for (int i = 0; i < targets.length; i++) {
+                String name = targets[i].getAttribute("name");
+                Element[] tasks = getChildren(targets[i]);
+                assertEquals(name, 1, tasks.length);
+                Element[] messages = getChildren(tasks[0]);
+                if (name.equals("all")) {
+                    continue;
+                }
+                assertEquals(name, 4, messages.length);
+                for (int j = 0; j < messages.length; j++) {
+                    assertEquals("message", messages[j].getTagName());
+                    assert(getText(messages[j]).startsWith(name));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+
+        BufferedReader in = new BufferedReader(
+            new StringReader(out.toString()));
+        int lines = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.indexOf("interleaved") > -1) {
+                lines++;
+                assert(line, line.startsWith(line.substring(line.length() - 1)
+                                             + ": "));
+            }
+        }
+        assertEquals(8, lines);
+    }
+
+    /**
+     * Adds a target whose task records start and end, after waiting
+     * for the target named partner to start if there is one.
+     */
+    private Target addTarget(final String name, String depends, 
+                             final String partner) {
+        Target t = new Target();
+        t.setName(name);
+        t.setProject(p);
+        t.setDepends(depends);
+        Task task = new Task() {
+                public void execute() {
+                    record("start " + name);
+                    if (partner != null) {
+                        waitFor("start " + partner);
+                    }
+                    record("end " + name);
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(t);
+        t.addTask(task);
+        p.addTarget(name, t);
+        return t;
+    }
+
+    /**
+     * Adds a target whose task logs a message every other turn.
+     */
+    private void addInterleavedTarget(final String name, final int first) {
+        Target t = new Target();
+        t.setName(name);
+        t.setProject(p);
+        Task task = new Task() {
+                public void execute() {
+                    for (int i = first; i < 8; i += 2) {
+                        waitForTurn(i);
+                        log(name + " interleaved message " + name);
+                        nextTurn();
+                    }
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(t);
+        t.addTask(task);
+        p.addTarget(name, t);
+    }
+
+    private synchronized void record(String event) {
+        log.addElement(event);
+        notifyAll();
+    }
+
+    private synchronized void waitFor(String event) {
+        long end = System.currentTimeMillis() + 10000;
+        while (!log.contains(event) && System.currentTimeMillis() < end) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+            }
+        }
+        assert("waited for " + event, log.contains(event));
+    }
+
+    private synchronized void waitForTurn(int i) {
+        long end = System.currentTimeMillis() + 10000;
+        while (turn != i && System.currentTimeMillis() < end) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    private synchronized void nextTurn() {
+        turn++;
+        notifyAll();
+    }
+
+    private static Element[] getChildren(Element e) {
+        return getChildren(e, null);
+    }
+
+    private static Element[] getChildren(Element e, String tag) {
+        NodeList nodes = e.getChildNodes();
+        Vector children = new Vector();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE
+                && (tag == null 
+                    || tag.equals(((Element) nodes.item(i)).getTagName()))) {
+                children.addElement(nodes.item(i));
+            }
+        }
+        Element[] result = new Element[children.size()];
+        children.copyInto(result);
+        return result;
+    }
+
+    private static String getText(Element e) {
+        return e.getFirstChild() == null ? "" : e.getFirstChild().getNodeValue();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import java.io.File;
+import java.util.Random;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.PatternMatcher.
+ *
+ * <p>The compiled matcher must give the same answers as the static
+ * matchPath and matchPatternStart methods of DirectoryScanner.</p>
+ */
+
+public class PatternMatcherTest extends TestCase {
+
+    private static final String[] PATTERNS = {
+        "**", "*", "**/*.java", "**/CVS", "**/CVS/*", "src/**",
+        "src/main/**/*.java", "src/**/test/**/*Test*.java", "a?c",
+        "**/*~", "**/#*#", "/abs/**", "/abs/file", "lib/*.jar",
+        "docs/index.html", "**/**/x", "a/**/b/**/c", "*/b", "a*b*c/d",
+        "", "a//b", "org/apache/tools/ant/*.java"
+    };
+
+    private static final String[] PATHS = {
+        "", "a", "abc", "a/b", "a/b/c", "a/x/b/y/c", "a/b/c/d", "src",
+        "src/main", "src/main/Foo.java", "src/main/org/Foo.java",
+        "src/x/test/y/FooTest.java", "src/test/FooTest.java", "Foo.java~",
+        "x/#y#", "CVS", "x/CVS", "x/CVS/Entries", "/abs", "/abs/file",
+        "/abs/x/y", "lib/ant.jar", "lib/x/ant.jar", "docs/index.html",
+        "x", "y/x", "a/b/x", "aXbYc/d", "abc/d", "a//b", "a/b/",
+        "org/apache/tools/ant/Project.java", "org/apache/tools/ant/x/Y.java"
+    };
+
+    public PatternMatcherTest(String name) {
+        super(name);
+    }
+
+    public void testSinglePatterns() {
+        for (int i = 0; i < PATTERNS.length; i++) {
+            String pattern = localize(PATTERNS[i]);
+            PatternMatcher m = new PatternMatcher(new String[] {pattern});
+            for (int j = 0; j < PATHS.length; j++) {
+                String path = localize(PATHS[j]);
+                assertEquals(pattern + " matches " + path,
+                             DirectoryScanner.matchPath(pattern, path),
+                             m.matches(path));
+                assertEquals(pattern + " start matches " + path,
+                             DirectoryScanner.matchPatternStart(pattern, path),
+                             m.matchesStart(path));
+            }
+        }
+    }
+
+    public void testManyPatterns() {
+        String[] patterns = new String[PATTERNS.length];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = localize(PATTERNS[i]);
+        }
+        // without the patterns matching everything
+        String[] selective = new String[patterns.length - 2];
+        System.arraycopy(patterns, 2, selective, 0, selective.length);
+
+        assertSameAsDirectoryScanner(patterns, PATHS);
+        assertSameAsDirectoryScanner(selective, PATHS);
+    }
+
+    public void testRandomPatterns() {
+        Random r = new Random(4711);
+        String[] segments = {"a", "b", "ab", "*", "?", "a*", "*b", "**", "a?b"};
+        String[] names = {"a", "b", "ab", "ba", "aab", "abb", "c"};
+
+        String[] patterns = new String[150];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = randomPath(r, segments, 4);
+        }
+        String[] paths = new String[300];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = randomPath(r, names, 6);
+        }
+
+        for (int i = 0; i < patterns.length; i++) {
+            assertSameAsDirectoryScanner(new String[] {patterns[i]}, paths);
+        }
+        assertSameAsDirectoryScanner(patterns, paths);
+    }
+
+    private void assertSameAsDirectoryScanner(String[] patterns, String[] paths) {
+        PatternMatcher m = new PatternMatcher(patterns);
+        for (int j = 0; j < paths.length; j++) {
+            String path = localize(paths[j]);
+            boolean match = false;
+            boolean start = false;
+            for (int i = 0; i < patterns.length; i++) {
+                match |= DirectoryScanner.matchPath(patterns[i], path);
+                start |= DirectoryScanner.matchPatternStart(patterns[i], path);
+            }
+            assertEquals("matches " + path, match, m.matches(path));
+            assertEquals("start matches " + path, start, m.matchesStart(path));
+        }
+    }
+
+    private static String randomPath(Random r, String[] segments, int max) {
+        StringBuffer sb = new StringBuffer();
+        int count = 1 + r.nextInt(max);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(File.separatorChar);
+            }
+            sb.append(segments[r.nextInt(segments.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String localize(String s) {
+        return s.replace('/', File.separatorChar);
+    }
+}
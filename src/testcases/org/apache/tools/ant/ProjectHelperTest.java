@@ -0,0 +1,249 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Hashtable;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.ProjectHelper.
+ */
+public class ProjectHelperTest extends TestCase {
+
+    private Hashtable keys;
+
+    public ProjectHelperTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        keys = new Hashtable();
+        keys.put("a", "1");
+        keys.put("bb", "22");
+        keys.put("empty", "");
+    }
+
+    public void testNoReference() {
+        String value = "plain value";
+        assert(value == ProjectHelper.replaceProperties(value, keys));
+        assertEquals("", ProjectHelper.replaceProperties("", keys));
+    }
+
+    public void testReplace() {
+        assertEquals("1", ProjectHelper.replaceProperties("${a}", keys));
+        assertEquals("x1y22z", 
+                     ProjectHelper.replaceProperties("x${a}y${bb}z", keys));
+        assertEquals("122", 
+                     ProjectHelper.replaceProperties("${a}${bb}", keys));
+        assertEquals("", ProjectHelper.replaceProperties("${empty}", keys));
+        assertEquals("x${c}y", 
+                     ProjectHelper.replaceProperties("x${c}y", keys));
+        assertEquals("${c}", ProjectHelper.replaceProperties("${c}", keys));
+        // the cached form must not hold on to earlier values
+        keys.put("a", "3");
+        assertEquals("x3y22z", 
+                     ProjectHelper.replaceProperties("x${a}y${bb}z", keys));
+    }
+
+    public void testDollar() {
+        assertEquals("$", ProjectHelper.replaceProperties("$", keys));
+        assertEquals("a$", ProjectHelper.replaceProperties("a$", keys));
+        assertEquals("a$b", ProjectHelper.replaceProperties("a$$b", keys));
+        assertEquals("ab", ProjectHelper.replaceProperties("a$b", keys));
+        assertEquals("${a}", ProjectHelper.replaceProperties("$${a}", keys));
+        assertEquals("$1", ProjectHelper.replaceProperties("$$${a}", keys));
+    }
+
+    public void testSyntaxError() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                ProjectHelper.replaceProperties("x${a", keys);
+                fail("unterminated reference");
+            } catch (BuildException be) {
+                assertEquals("Syntax error in prop: x${a", be.getMessage());
+            }
+        }
+    }
+
+    public void testParseCache() throws IOException {
+        File buildFile = new File("parsecache.tmp.xml").getAbsoluteFile();
+        File cacheDir = new File("parsecache.tmp").getAbsoluteFile();
+        try {
+            writeBuildFile(buildFile, "first");
+            Project p = configure(buildFile, cacheDir);
+            assertNotNull(p.getTargets().get("first"));
+            assert(new File(cacheDir, "build" 
+                            + Integer.toHexString(buildFile.getPath().hashCode())
+                            + ".parsed").isFile());
+            assertNotNull(ParsedBuildFile.getInstance(buildFile, cacheDir));
+
+            // the replayed project has targets and properties of its own
+            Project p2 = configure(buildFile, cacheDir);
+            assertNotNull(p2.getTargets().get("first"));
+            assert(p.getTargets().get("first") 
+                   != p2.getTargets().get("first"));
+            assertEquals("first", p2.getProperty("name"));
+            assertEquals("first", p2.getDefaultTarget());
+
+            writeBuildFile(buildFile, "second");
+            assertNull(ParsedBuildFile.getInstance(buildFile, cacheDir));
+            p = configure(buildFile, cacheDir);
+            assertNull(p.getTargets().get("first"));
+            assertNotNull(p.getTargets().get("second"));
+        } finally {
+            buildFile.delete();
+            String[] files = cacheDir.list();
+            for (int i = 0; files != null && i < files.length; i++) {
+                new File(cacheDir, files[i]).delete();
+            }
+            cacheDir.delete();
+        }
+    }
+
+    public void testParseCacheIsOptIn() throws IOException {
+        File buildFile = new File("parsecache.tmp.xml").getAbsoluteFile();
+        try {
+            writeBuildFile(buildFile, "first");
+            Project p = new Project();
+            p.init();
+            ProjectHelper.configureProject(p, buildFile);
+            assertNull(ParsedBuildFile.getInstance(buildFile, null));
+        } finally {
+            buildFile.delete();
+        }
+    }
+
+    /**
+     * Events replayed from the cache report the file they have been
+     * read from, even if it is an external entity.
+     */
+    public void testParseCacheKeepsSystemIds() throws Exception {
+        File buildFile = new File("parsecache.tmp.xml").getAbsoluteFile();
+        File entity = new File("parsecache.tmp.ent").getAbsoluteFile();
+        File cacheDir = new File("parsecache.tmp").getAbsoluteFile();
+        try {
+            FileWriter w = new FileWriter(entity);
+            w.write("<target name=\"included\" />\n");
+            w.close();
+            w = new FileWriter(buildFile);
+            w.write("<?xml version=\"1.0\"?>\n"
+                    + "<!DOCTYPE project [\n"
+                    + "  <!ENTITY included SYSTEM \"" 
+                    + entity.toURL() + "\">\n"
+                    + "]>\n"
+                    + "<project name=\"p\" default=\"included\">\n"
+                    + "  &included;\n"
+                    + "</project>\n");
+            w.close();
+            // older than the timestamp granularity of the file system
+            long old = System.currentTimeMillis() - 10000;
+            buildFile.setLastModified(old);
+            entity.setLastModified(old);
+            configure(buildFile, cacheDir);
+
+            final Hashtable systemIds = new Hashtable();
+            final org.xml.sax.Locator[] locator = new org.xml.sax.Locator[1];
+            ParsedBuildFile.getInstance(buildFile, cacheDir)
+                .replay(new org.xml.sax.HandlerBase() {
+                        public void setDocumentLocator(org.xml.sax.Locator l) {
+                            locator[0] = l;
+                        }
+                        public void startElement(String name, 
+                                                 org.xml.sax.AttributeList a) {
+                            systemIds.put(name, locator[0].getSystemId());
+                        }
+                    });
+            assert((String) systemIds.get("target"), 
+                   ((String) systemIds.get("target")).endsWith(entity.getName()));
+            assert((String) systemIds.get("project"), 
+                   ((String) systemIds.get("project")).endsWith(buildFile.getName()));
+        } finally {
+            buildFile.delete();
+            entity.delete();
+            String[] files = cacheDir.list();
+            for (int i = 0; files != null && i < files.length; i++) {
+                new File(cacheDir, files[i]).delete();
+            }
+            cacheDir.delete();
+        }
+    }
+
+    private Project configure(File buildFile, File cacheDir) {
+        Project p = new Project();
+        p.init();
+        p.setUserProperty(ProjectHelper.PARSE_CACHE_PROPERTY, "true");
+        p.setUserProperty(ProjectHelper.PARSE_CACHE_DIR_PROPERTY, 
+                          cacheDir.getPath());
+        ProjectHelper.configureProject(p, buildFile);
+        return p;
+    }
+
+    private void writeBuildFile(File f, String name) throws IOException {
+        FileWriter w = new FileWriter(f);
+        w.write("<project name=\"" + name + "\" default=\"" + name + "\">\n"
+                + "  <property name=\"name\" value=\"" + name + "\" />\n"
+                + "  <target name=\"" + name + "\">\n"
+                + "    <echo message=\"${name}\" />\n"
+                + "  </target>\n"
+                + "</project>\n");
+        w.close();
+        // older than the timestamp granularity of the file system
+        f.setLastModified(System.currentTimeMillis() - 10000);
+    }
+}
@@ -56,6 +56,8 @@ package org.apache.tools.ant;
 
 import org.apache.tools.ant.types.*;
 
+import java.util.Vector;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -88,4 +90,238 @@ public class ProjectTest extends TestCase {
                p.createDataType("patternset") instanceof PatternSet);
         assert("Path", p.createDataType("path") instanceof Path);
     }
+
+    public void testDefinitions() throws BuildException {
+        assert("echo", p.createTask("echo") instanceof 
+               org.apache.tools.ant.taskdefs.Echo);
+        assertNull("dummy is not a known task", p.createTask("dummy"));
+        assertEquals(0, p.getUserTaskDefinitions().size());
+
+        p.addTaskDefinition("echo", org.apache.tools.ant.taskdefs.Mkdir.class);
+        assert("user definition overrides default", 
+               p.createTask("echo") instanceof 
+               org.apache.tools.ant.taskdefs.Mkdir);
+        assertEquals(1, p.getUserTaskDefinitions().size());
+
+        assertEquals(org.apache.tools.ant.taskdefs.Mkdir.class,
+                     p.getTaskDefinitions().get("echo"));
+        assertEquals(org.apache.tools.ant.taskdefs.Copy.class,
+                     p.getTaskDefinitions().get("copy"));
+        assertEquals(FileSet.class, p.getDataTypeDefinitions().get("fileset"));
+
+        Project noDefaults = new Project();
+        assertNull(noDefaults.createTask("echo"));
+        assertEquals(0, noDefaults.getTaskDefinitions().size());
+    }
+
+    public void testIsLogging() {
+        assert("no listeners", !p.isLogging(Project.MSG_ERR));
+        DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        p.addBuildListener(logger);
+        assert(p.isLogging(Project.MSG_INFO));
+        assert(!p.isLogging(Project.MSG_DEBUG));
+        p.addBuildListener(new RecordingListener(0));
+        assert("listener of unknown level", p.isLogging(Project.MSG_DEBUG));
+    }
+
+    /**
+     * isLogging doesn't wait for listeners that are being notified.
+     */
+    public void testIsLoggingDoesntLock() throws Exception {
+        p.addBuildListener(new DefaultLogger());
+        final Vector listeners = p.getBuildListeners();
+        final Object held = new Object();
+        Thread t = new Thread() {
+                public void run() {
+                    synchronized (listeners) {
+                        synchronized (held) {
+                            held.notifyAll();
+                        }
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                }
+            };
+        synchronized (held) {
+            t.start();
+            held.wait();
+        }
+        long start = System.currentTimeMillis();
+        assert(p.isLogging(Project.MSG_ERR));
+        assert(System.currentTimeMillis() - start < 1000);
+        t.join();
+    }
+
+    public void testAsyncEvents() throws BuildException {
+        p.setProperty(Project.ASYNC_EVENTS_PROPERTY, "true");
+        p.setProperty(Project.EVENT_QUEUE_SIZE_PROPERTY, "2");
+        RecordingListener l = new RecordingListener(0);
+        p.addBuildListener(l);
+        p.addTarget("a", createTarget("a", 10));
+
+        p.executeTarget("a");
+        p.fireBuildFinished(null);
+
+        assertEquals(15, l.events.size());
+        assertEquals("targetStarted a", l.events.elementAt(0));
+        assertEquals("taskStarted", l.events.elementAt(1));
+        assertEquals("messageLogged 0", l.events.elementAt(2));
+        assertEquals("messageLogged 9", l.events.elementAt(11));
+        assertEquals("taskFinished", l.events.elementAt(12));
+        assertEquals("targetFinished a", l.events.elementAt(13));
+        assertEquals("buildFinished", l.events.elementAt(14));
+        assert("events have been delivered by another thread", 
+               l.threads.elementAt(0) != Thread.currentThread());
+        assertEquals(Thread.currentThread(), l.threads.elementAt(14));
+    }
+
+    public void testDiscardMessages() throws BuildException {
+        p.setProperty(Project.ASYNC_EVENTS_PROPERTY, "true");
+        p.setProperty(Project.EVENT_QUEUE_SIZE_PROPERTY, "1");
+        p.setProperty(Project.EVENT_OVERFLOW_PROPERTY, "discard");
+        RecordingListener l = new RecordingListener(20);
+        p.addBuildListener(l);
+        p.addTarget("a", createTarget("a", 20));
+
+        p.executeTarget("a");
+        p.fireBuildFinished(null);
+
+        assert("some messages have been discarded", l.events.size() < 26);
+        assertEquals("targetStarted a", l.events.elementAt(0));
+        assert(l.events.contains("taskFinished"));
+        assert(l.events.contains("targetFinished a"));
+        assertEquals("buildFinished", l.events.lastElement());
+    }
+
+    public void testSubprojectDoesntStartDispatcher() throws BuildException {
+        RecordingListener l = new RecordingListener(0);
+        p.addBuildListener(l);
+
+        Project sub = new Project();
+        sub.init();
+        sub.inheritBuildListeners(p);
+        sub.setProperty(Project.ASYNC_EVENTS_PROPERTY, "true");
+        sub.addTarget("a", createTarget(sub, "a", 3));
+        sub.executeTarget("a");
+
+        assertEquals(7, l.events.size());
+        for (int i = 0; i < l.threads.size(); i++) {
+            assertEquals(Thread.currentThread(), l.threads.elementAt(i));
+        }
+    }
+
+    public void testListenerError() throws BuildException {
+        p.setProperty(Project.ASYNC_EVENTS_PROPERTY, "true");
+        p.addTarget("a", createTarget("a", 10));
+        p.addBuildListener(new RecordingListener(0) {
+                public void messageLogged(BuildEvent event) {
+                    if (event.getTask() != null) {
+                        throw new ListenerError();
+                    }
+                }
+            });
+
+        // the error surfaces in whichever thread fires the next
+        // event, but the build must neither hang nor succeed
+        int errors = 0;
+        try {
+            p.executeTarget("a");
+        } catch (ListenerError e) {
+            errors++;
+        }
+        try {
+            p.fireBuildFinished(null);
+        } catch (ListenerError e) {
+            errors++;
+        }
+        assert("the error of the listener has been swallowed", errors > 0);
+    }
+
+    private static class ListenerError extends Error {
+    }
+
+    public void testInvalidQueueSize() {
+        p.setProperty(Project.ASYNC_EVENTS_PROPERTY, "true");
+        p.setProperty(Project.EVENT_QUEUE_SIZE_PROPERTY, "none");
+        p.addTarget("a", createTarget("a", 0));
+        try {
+            p.executeTarget("a");
+            fail("expected a BuildException");
+        } catch (BuildException e) {
+            assert(e.getMessage().indexOf("queuesize") > -1);
+        }
+    }
+
+    /**
+     * Creates a target with a single task that logs the given number
+     * of messages.
+     */
+    private Target createTarget(String name, int messages) {
+        return createTarget(p, name, messages);
+    }
+
+    private static Target createTarget(Project p, String name, 
+                                       final int messages) {
+        Target t = new Target();
+        t.setName(name);
+        t.setProject(p);
+        Task task = new Task() {
+                public void execute() {
+                    for (int i = 0; i < messages; i++) {
+                        log(String.valueOf(i));
+                    }
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(t);
+        t.addTask(task);
+        return t;
+    }
+
+    private static class RecordingListener implements BuildListener {
+        Vector events = new Vector();
+        Vector threads = new Vector();
+        private long delay;
+
+        RecordingListener(long delay) {
+            this.delay = delay;
+        }
+
+        private void record(String event) {
+            events.addElement(event);
+            threads.addElement(Thread.currentThread());
+        }
+
+        public void buildStarted(BuildEvent event) {
+            record("buildStarted");
+        }
+        public void buildFinished(BuildEvent event) {
+            record("buildFinished");
+        }
+        public void targetStarted(BuildEvent event) {
+            record("targetStarted " + event.getTarget().getName());
+        }
+        public void targetFinished(BuildEvent event) {
+            record("targetFinished " + event.getTarget().getName());
+        }
+        public void taskStarted(BuildEvent event) {
+            record("taskStarted");
+        }
+        public void taskFinished(BuildEvent event) {
+            record("taskFinished");
+        }
+        public void messageLogged(BuildEvent event) {
+            if (event.getTask() == null) {
+                return;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+            }
+            record("messageLogged " + event.getMessage());
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.ant;
+
+import org.apache.tools.ant.taskdefs.Delete;
+import org.apache.tools.ant.taskdefs.Mkdir;
+import org.apache.tools.ant.types.FileSet;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.ScanCache.
+ */
+public class ScanCacheTest extends TestCase {
+
+    private Project project;
+    private File base;
+
+    public ScanCacheTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws IOException {
+        project = new Project();
+        project.init();
+        project.setBasedir(".");
+        base = project.resolveFile("scancache.tmp");
+        new File(base, "a").mkdirs();
+        touch(new File(base, "a/one.txt"));
+    }
+
+    public void tearDown() {
+        Delete delete = (Delete) project.createTask("delete");
+        delete.setDir(base);
+        delete.execute();
+    }
+
+    public void testDisabledByDefault() {
+        FileSet fs = createFileSet();
+        assert(fs.getDirectoryScanner(project) 
+               != fs.getDirectoryScanner(project));
+    }
+
+    public void testCachedScan() throws IOException {
+        project.setProperty(FileSet.SCAN_CACHE_PROPERTY, "true");
+        FileSet fs = createFileSet();
+        DirectoryScanner ds = fs.getDirectoryScanner(project);
+        assertEquals(1, ds.getIncludedFiles().length);
+        assert(ds == createFileSet().getDirectoryScanner(project));
+
+        FileSet other = createFileSet();
+        other.setIncludes("**/*.java");
+        assert(ds != other.getDirectoryScanner(project));
+    }
+
+    public void testInvalidate() throws IOException {
+        project.setProperty(FileSet.SCAN_CACHE_PROPERTY, "true");
+        FileSet fs = createFileSet();
+        DirectoryScanner ds = fs.getDirectoryScanner(project);
+
+        // a sibling of the base directory doesn't matter
+        project.getScanCache().invalidate(project.resolveFile("scancache.tmp2"));
+        assert(ds == fs.getDirectoryScanner(project));
+
+        touch(new File(base, "a/two.txt"));
+        project.getScanCache().invalidate(new File(base, "a"));
+        ds = fs.getDirectoryScanner(project);
+        assertEquals(2, ds.getIncludedFiles().length);
+    }
+
+    public void testTasksInvalidate() {
+        project.setProperty(FileSet.SCAN_CACHE_PROPERTY, "true");
+        FileSet fs = createFileSet();
+        DirectoryScanner ds = fs.getDirectoryScanner(project);
+
+        Mkdir mkdir = (Mkdir) project.createTask("mkdir");
+        mkdir.setDir(new File(base, "b"));
+        mkdir.execute();
+        DirectoryScanner ds2 = fs.getDirectoryScanner(project);
+        assert(ds != ds2);
+        assertEquals(2, ds2.getIncludedDirectories().length);
+
+        Delete delete = (Delete) project.createTask("delete");
+        delete.setFile(new File(base, "a/one.txt"));
+        delete.execute();
+        assertEquals(0, fs.getDirectoryScanner(project)
+                     .getIncludedFiles().length);
+    }
+
+    private FileSet createFileSet() {
+        FileSet fs = new FileSet();
+        fs.setDir(base);
+        return fs;
+    }
+
+    private static void touch(File f) throws IOException {
+        new FileOutputStream(f).close();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import java.io.*;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.ScanIndex.
+ */
+
+public class ScanIndexTest extends TestCase {
+
+    private File dir = new File("src/etc/testcases/scanindextest.tmp");
+    private File index = new File("src/etc/testcases/scanindextest.idx");
+    private long lastModified;
+
+    public ScanIndexTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws IOException {
+        dir.mkdirs();
+        new File(dir, "sub").mkdir();
+        new FileOutputStream(new File(dir, "a")).close();
+        // old enough to be trusted
+        lastModified = System.currentTimeMillis() / 1000 * 1000 - 10000;
+        dir.setLastModified(lastModified);
+    }
+
+    public void tearDown() {
+        new File(dir, "a").delete();
+        new File(dir, "b").delete();
+        new File(dir, "sub").delete();
+        dir.delete();
+        index.delete();
+    }
+
+    public void testListingFromIndex() throws IOException {
+        ScanIndex idx = new ScanIndex(index, "key");
+        ScanIndex.Listing l = idx.getListing(dir, "");
+        assertListing(l, new String[] {"a", "sub"});
+        assertSame(l, idx.getListing(dir, ""));
+        idx.save();
+        assert(index.isFile());
+
+        // added behind the back of the index, the directory looks
+        // unchanged so the stored listing is used
+        new FileOutputStream(new File(dir, "b")).close();
+        dir.setLastModified(lastModified);
+        idx = new ScanIndex(index, "key");
+        assertListing(idx.getListing(dir, ""), new String[] {"a", "sub"});
+
+        // a different key doesn't use the stored listing
+        assertListing(new ScanIndex(index, "other").getListing(dir, ""), 
+                      new String[] {"a", "b", "sub"});
+    }
+
+    public void testModifiedDirectoryIsListedAgain() throws IOException {
+        ScanIndex idx = new ScanIndex(index, "key");
+        idx.getListing(dir, "");
+        idx.save();
+
+        new FileOutputStream(new File(dir, "b")).close();
+        dir.setLastModified(lastModified + 2000);
+        idx = new ScanIndex(index, "key");
+        assertListing(idx.getListing(dir, ""), new String[] {"a", "b", "sub"});
+    }
+
+    private void assertListing(ScanIndex.Listing l, String[] expected) {
+        String[] names = l.getNames();
+        byte[] types = l.getTypes();
+        assertEquals(expected.length, names.length);
+        for (int i = 0; i < expected.length; i++) {
+            int found = -1;
+            for (int j = 0; j < names.length; j++) {
+                if (names[j].equals(expected[i])) {
+                    found = j;
+                }
+            }
+            assert(expected[i], found != -1);
+            assertEquals(expected[i], 
+                         expected[i].equals("sub") 
+                         ? ScanIndex.DIRECTORY : ScanIndex.FILE, 
+                         types[found]);
+        }
+    }
+}
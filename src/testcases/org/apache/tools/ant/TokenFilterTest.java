@@ -0,0 +1,183 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.Hashtable;
+import java.util.Random;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.ant.TokenFilter.
+ */
+
+public class TokenFilterTest extends TestCase {
+
+    private Hashtable tokens = new Hashtable();
+
+    public TokenFilterTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        tokens.put("a", "1");
+        tokens.put("VERSION", "1.2");
+        tokens.put("DATE", "@DATE@");
+        tokens.put("empty", "");
+        tokens.put("@x", "at x");
+    }
+
+    public void testReplace() {
+        TokenFilter f = new TokenFilter(null, tokens);
+        assertEquals("1", f.replace("@a@"));
+        assertEquals("v1.2, 1", f.replace("v@VERSION@, @a@"));
+        assertEquals("@DATE@", f.replace("@DATE@"));
+        assertEquals("", f.replace("@empty@"));
+        assertEquals("@1", f.replace("@@a@"));
+        assertEquals("@unknown1", f.replace("@unknown@a@"));
+        assertEquals("@", f.replace("@"));
+        assertEquals("@a", f.replace("@a"));
+        assertEquals("@@", f.replace("@@"));
+        assertEquals("at x", f.replace("@@x@"));
+    }
+
+    public void testLineEndings() {
+        TokenFilter f = new TokenFilter(null, tokens);
+        assertEquals("1\r\n1\n\r1\r", f.replace("@a@\r\n@a@\n\r@a@\r"));
+        assertEquals("no newline at end", f.replace("no newline at end"));
+    }
+
+    /**
+     * Compares the filter to the line based replacement Project used
+     * to do on random input, read in chunks of random size.
+     */
+    public void testRandom() throws IOException {
+        Random r = new Random(42);
+        String alphabet = "aVERSIONDATE@@@xy\n";
+        TokenFilter f = new TokenFilter(null, tokens);
+        for (int i = 0; i < 2000; i++) {
+            StringBuffer sb = new StringBuffer();
+            int length = r.nextInt(200);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            String s = sb.toString();
+
+            StringWriter out = new StringWriter();
+            f.filter(new ChunkedReader(s, r), out);
+            assertEquals(s, replace(s, tokens), out.toString());
+        }
+    }
+
+    /**
+     * Tokens are found no matter where the reads end.
+     */
+    public void testLargeInput() throws IOException {
+        StringBuffer in = new StringBuffer();
+        StringBuffer expected = new StringBuffer();
+        for (int i = 0; i < 10000; i++) {
+            in.append("line ").append(i).append(" @VERSION@@a@\n");
+            expected.append("line ").append(i).append(" 1.21\n");
+        }
+        StringWriter out = new StringWriter();
+        new TokenFilter(null, tokens).filter(new StringReader(in.toString()), 
+                                             out);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    /**
+     * Reader returning at most a random number of characters.
+     */
+    private static class ChunkedReader extends StringReader {
+        private Random r;
+
+        ChunkedReader(String s, Random r) {
+            super(s);
+            this.r = r;
+        }
+
+        public int read(char[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + r.nextInt(5)));
+        }
+    }
+
+    /**
+     * The replacement Project.copyFile has used for each line.
+     */
+    private static String replace(String s, Hashtable tokens) {
+        int index = s.indexOf("@");
+        if (index == -1) {
+            return s;
+        }
+        StringBuffer b = new StringBuffer();
+        int i = 0;
+        do {
+            int endIndex = s.indexOf("@", index + 2);
+            if (endIndex == -1) {
+                break;
+            }
+            String token = s.substring(index + 1, endIndex);
+            b.append(s.substring(i, index));
+            if (tokens.containsKey(token)) {
+                b.append((String) tokens.get(token));
+                i = endIndex + 1;
+            } else {
+                b.append("@");
+                i = index + 1;
+            }
+        } while ((index = s.indexOf("@", i)) > -1);
+        b.append(s.substring(i));
+        return b.toString();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant;
+
+import java.io.File;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the log files written by XmlLogger.
+ */
+public class XmlLoggerTest extends TestCase {
+
+    private Project p;
+    private File log;
+
+    public XmlLoggerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        p = new Project();
+        p.init();
+        log = new File("xmllogger-test.xml");
+        p.setProperty("XmlLogger.file", log.getAbsolutePath());
+        p.addBuildListener(new XmlLogger());
+        Target t = new Target();
+        t.setName("a");
+        t.setProject(p);
+        Task task = new Task() {
+                public void execute() {
+                    log("<first> & \"second\"");
+                    log("second", Project.MSG_WARN);
+                }
+            };
+        task.setProject(p);
+        task.setOwningTarget(t);
+        t.addTask(task);
+        p.addTarget("a", t);
+    }
+
+    public void tearDown() {
+        log.delete();
+    }
+
+    public void testStreaming() throws Exception {
+        p.setProperty("XmlLogger.stream", "true");
+        p.fireBuildStarted();
+        p.log("before any target");
+        p.executeTarget("a");
+        p.fireBuildFinished(null);
+
+        Element build = parse();
+        assertEquals("build", build.getTagName());
+        assert(build.getAttribute("time").length() > 0);
+        Element[] children = getChildren(build);
+        assertEquals("message", children[0].getTagName());
+        assertEquals("before any target", getText(children[0]));
+        Element target = children[children.length - 1];
+        assertEquals("target", target.getTagName());
+        assertEquals("a", target.getAttribute("name"));
+        assert(target.getAttribute("time").endsWith("seconds"));
+        Element[] tasks = getChildren(target);
+        assertEquals(1, tasks.length);
+        assertEquals("task", tasks[0].getTagName());
+        Element[] messages = getChildren(tasks[0]);
+        assertEquals(2, messages.length);
+        assertEquals("info", messages[0].getAttribute("priority"));
+        assertEquals("<first> & \"second\"", getText(messages[0]));
+        assertEquals("warn", messages[1].getAttribute("priority"));
+    }
+
+    public void testError() throws Exception {
+        p.setProperty("XmlLogger.stream", "true");
+        p.fireBuildStarted();
+        p.executeTarget("a");
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            sb.append("a long message ");
+        }
+        BuildException error = new BuildException(sb.toString());
+        p.fireBuildFinished(error);
+
+        Element build = parse();
+        assertEquals(error.toString(), build.getAttribute("error"));
+        Element[] children = getChildren(build);
+        Element target = children[children.length - 1];
+        assertEquals("a", target.getAttribute("name"));
+        assertEquals(2, getChildren(getChildren(target)[0]).length);
+    }
+
+    public void testSameStructure() throws Exception {
+        p.fireBuildStarted();
+        p.executeTarget("a");
+        p.fireBuildFinished(null);
+        Element inMemory = parse();
+
+        p.setProperty("XmlLogger.stream", "true");
+        p.fireBuildStarted();
+        p.executeTarget("a");
+        p.fireBuildFinished(null);
+        Element streamed = parse();
+
+        assertSameStructure(inMemory, streamed);
+    }
+
+    private void assertSameStructure(Element expected, Element actual) {
+        assertEquals(expected.getTagName(), actual.getTagName());
+        assertEquals(expected.getAttribute("name"), actual.getAttribute("name"));
+        assertEquals(expected.getAttribute("priority"), 
+                     actual.getAttribute("priority"));
+        Element[] e = getChildren(expected);
+        Element[] a = getChildren(actual);
+        assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+            assertSameStructure(e[i], a[i]);
+        }
+    }
+
+    private Element parse() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance()
+            .newDocumentBuilder().parse(log);
+        return doc.getDocumentElement();
+    }
+
+    private static Element[] getChildren(Element e) {
+        NodeList nodes = e.getChildNodes();
+        int count = 0;
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                count++;
+            }
+        }
+        Element[] children = new Element[count];
+        count = 0;
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                children[count++] = (Element) nodes.item(i);
+            }
+        }
+        return children;
+    }
+
+    private static String getText(Element e) {
+        StringBuffer sb = new StringBuffer();
+        NodeList nodes = e.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            sb.append(nodes.item(i).getNodeValue());
+        }
+        return sb.toString();
+    }
+}
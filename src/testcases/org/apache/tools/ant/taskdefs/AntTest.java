@@ -92,4 +92,14 @@ public class AntTest extends TaskdefsTest {
     public void test6() { 
         executeTarget("test6");
     }
+
+    public void test7() { 
+        String nl = System.getProperty("line.separator");
+        expectOutput("test7", "a" + nl + "a" + nl + "b" + nl);
+        // one build file, configured once for each value
+        assertEquals(1, project.getSubProjects().size());
+        java.util.Vector reusable = (java.util.Vector) 
+            project.getSubProjects().elements().nextElement();
+        assertEquals(2, reusable.size());
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant.taskdefs;
+
+import org.apache.tools.ant.DirectoryScanner;
+import java.io.*;
+
+public class CopyTest extends TaskdefsTest { 
+    
+    public CopyTest(String name) { 
+        super(name);
+    }    
+    
+    public void setUp() { 
+        configureProject("src/etc/testcases/taskdefs/copy.xml");
+    }
+
+    public void tearDown() { 
+        executeTarget("cleanup");
+    }
+
+    public void test1() { 
+        expectBuildException("test1", "threads must be positive");
+    }
+
+    public void test2() { 
+        executeTarget("test2");
+        File from = new File("src/main/org/apache/tools/ant");
+        File to = new File("src/etc/testcases/taskdefs/copytest.tmp");
+
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(from);
+        ds.scan();
+        String[] files = ds.getIncludedFiles();
+        assert(files.length > 100);
+        for (int i = 0; i < files.length; i++) {
+            File copy = new File(to, files[i]);
+            assert(files[i], copy.exists());
+            assertEquals(files[i], new File(from, files[i]).length(), 
+                         copy.length());
+        }
+    }
+
+    /**
+     * An interrupted copy waits for its threads before it fails.
+     */
+    public void test2Interrupted() { 
+        Thread.currentThread().interrupt();
+        expectBuildException("test2", "interrupted");
+
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int count = Thread.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            assert(threads[i].getName(), 
+                   !threads[i].getName().startsWith("ant-copy-"));
+        }
+    }
+
+    /**
+     * Files flattened to the same destination are not copied
+     * concurrently.
+     */
+    public void test4() throws IOException { 
+        File source = new File("src/etc/testcases/taskdefs/copysource.tmp");
+        for (int i = 0; i < 8; i++) {
+            File dir = new File(source, "d" + i);
+            dir.mkdirs();
+            OutputStream out = 
+                new FileOutputStream(new File(dir, "same.txt"));
+            try {
+                byte[] content = new byte[64 * 1024 * (i + 1)];
+                for (int j = 0; j < content.length; j++) {
+                    content[j] = (byte) ('a' + i);
+                }
+                out.write(content);
+            } finally {
+                out.close();
+            }
+        }
+
+        executeTarget("test4");
+        File copy = new File("src/etc/testcases/taskdefs/copytest.tmp/same.txt");
+        InputStream in = new BufferedInputStream(new FileInputStream(copy));
+        try {
+            int first = in.read();
+            assertEquals(64 * 1024 * (first - 'a' + 1), copy.length());
+            int c;
+            while ((c = in.read()) != -1) {
+                assertEquals(first, c);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Files large enough for FileChannel copies.
+     */
+    public void test3() throws IOException { 
+        File large = new File("src/etc/testcases/taskdefs/large.tmp");
+        byte[] content = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 % 251);
+        }
+        OutputStream out = new FileOutputStream(large);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+
+        executeTarget("test3");
+        File copy = new File("src/etc/testcases/taskdefs/copytest.tmp/large.tmp");
+        assertEquals(content.length, copy.length());
+        DataInputStream in = new DataInputStream(new FileInputStream(copy));
+        try {
+            byte[] copied = new byte[content.length];
+            in.readFully(copied);
+            for (int i = 0; i < content.length; i++) {
+                assertEquals(content[i], copied[i]);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
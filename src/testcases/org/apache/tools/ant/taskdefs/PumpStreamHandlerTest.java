@@ -0,0 +1,128 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.tools.ant.taskdefs;
+
+import java.io.*;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests PumpStreamHandler and the streams it copies to.
+ */
+public class PumpStreamHandlerTest extends TestCase {
+
+    public PumpStreamHandlerTest(String name) {
+        super(name);
+    }
+
+    public void testPump() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        // the second round runs on the threads of the first one
+        for (int round = 0; round < 2; round++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            PumpStreamHandler handler = new PumpStreamHandler(out, err);
+            handler.setProcessOutputStream(new ByteArrayInputStream(data));
+            handler.setProcessErrorStream(new ByteArrayInputStream(new byte[] {1, 2}));
+            handler.start();
+            handler.stop();
+            assertEquals(data.length, out.size());
+            byte[] copy = out.toByteArray();
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(data[i], copy[i]);
+            }
+            assertEquals(2, err.size());
+        }
+    }
+
+    public void testLogOutputStream() throws IOException {
+        String[] inputs = {
+            "a\nb\n", "a\r\nb\r\n", "a\rb\r", "\n\na\r\r\nb", "a\n\r\n\rb\r\n\n",
+        };
+        for (int i = 0; i < inputs.length; i++) {
+            byte[] b = inputs[i].getBytes();
+            RecordingStream bytewise = new RecordingStream();
+            for (int j = 0; j < b.length; j++) {
+                bytewise.write(b[j]);
+            }
+            bytewise.close();
+            // write the same data in blocks of every size
+            for (int size = 1; size <= b.length; size++) {
+                RecordingStream blocks = new RecordingStream();
+                for (int j = 0; j < b.length; j += size) {
+                    blocks.write(b, j, Math.min(size, b.length - j));
+                }
+                blocks.close();
+                assertEquals("input " + i + " in blocks of " + size, 
+                             bytewise.lines, blocks.lines);
+            }
+        }
+    }
+
+    private static class RecordingStream extends LogOutputStream {
+        Vector lines = new Vector();
+
+        RecordingStream() {
+            super(null, 0);
+        }
+
+        protected void processLine(String line, int level) {
+            lines.addElement(line);
+        }
+    }
+}
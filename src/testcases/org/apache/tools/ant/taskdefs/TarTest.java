@@ -54,6 +54,13 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.tar.*;
+import java.io.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
 /**
  * @author Nico Seessle <nico@seessle.de> 
  */
@@ -66,6 +73,10 @@ public class TarTest extends TaskdefsTest {
     public void setUp() { 
         configureProject("src/etc/testcases/taskdefs/tar.xml");
     }
+
+    public void tearDown() { 
+        executeTarget("cleanup");
+    }
     
     public void test1() { 
         expectBuildException("test1", "required argument not specified");
@@ -79,4 +90,199 @@ public class TarTest extends TaskdefsTest {
         expectBuildException("test3", "required argument not specified");
     }
 
+    public void test4() throws IOException { 
+        executeTarget("test4");
+        assertExpanded();
+    }
+
+    /**
+     * Archives compressed by several threads consist of several GZIP
+     * members.
+     */
+    public void test5() throws IOException { 
+        executeTarget("test5");
+        assertExpanded();
+        assert(countMembers(new File("src/etc/testcases/taskdefs/tartest.tar.gz")) > 1);
+    }
+
+    /**
+     * The number of GZIP members of a file written by
+     * ParallelGZIPOutputStream - a fixed ten byte header, deflated
+     * data and an eight byte trailer each.
+     */
+    private static int countMembers(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+
+        int members = 0;
+        int offset = 0;
+        byte[] buffer = new byte[64 * 1024];
+        Inflater inflater = new Inflater(true);
+        try {
+            while (offset < data.length) {
+                assertEquals((byte) 0x1f, data[offset]);
+                assertEquals((byte) 0x8b, data[offset + 1]);
+                inflater.reset();
+                inflater.setInput(data, offset + 10, data.length - offset - 10);
+                while (!inflater.finished()) {
+                    try {
+                        inflater.inflate(buffer);
+                    } catch (DataFormatException e) {
+                        fail(e.getMessage());
+                    }
+                }
+                offset = data.length - inflater.getRemaining() + 8;
+                members++;
+            }
+        } finally {
+            inflater.end();
+        }
+        return members;
+    }
+
+    public void test6() { 
+        expectBuildException("test6", "unknown compression method");
+    }
+
+    public void test7() { 
+        expectBuildException("test7", "threads must be positive");
+    }
+
+    public void test8() { 
+        executeTarget("test8");
+        assert(new File("src/etc/testcases/taskdefs/tartest.tar.index").exists());
+        assertSelected();
+    }
+
+    public void test9() { 
+        executeTarget("test9");
+        assertSelected();
+    }
+
+    /**
+     * Entries found through the index and data skipped within an
+     * entry are the same as in the original files.
+     */
+    public void test10() throws IOException { 
+        executeTarget("test10");
+        File archive = new File("src/etc/testcases/taskdefs/tartest.tar");
+        File from = new File("src/main/org/apache/tools/ant");
+
+        TarIndex index = TarIndex.read(archive);
+        assertNotNull(index);
+        assert(index.size() > 100);
+
+        TarInputStream tis = new TarInputStream(new FileInputStream(archive));
+        try {
+            int checked = 0;
+            for (int i = 0; i < index.size(); i += 7) {
+                tis.skipToRecord(index.getRecord(i));
+                TarEntry te = tis.getNextEntry();
+                assertEquals(index.getName(i), te.getName());
+                assertEquals(index.getRecord(i), tis.getEntryRecord());
+
+                byte[] expected = readFile(new File(from, te.getName()));
+                assertEquals(expected.length, te.getSize());
+                if (expected.length < 2000) {
+                    continue;
+                }
+
+                // partial record, whole records, partial record again
+                byte[] actual = new byte[100];
+                assertEquals(100, tis.read(actual));
+                assertEquals(expected[99], actual[99]);
+                tis.skip(1133);
+                actual = new byte[expected.length - 1233];
+                int pos = 0;
+                int count;
+                while ((count = tis.read(actual, pos, actual.length - pos)) > 0) {
+                    pos += count;
+                }
+                assertEquals(actual.length, pos);
+                for (int j = 0; j < actual.length; j++) {
+                    assertEquals(te.getName(), expected[j + 1233], actual[j]);
+                }
+                checked++;
+            }
+            assert(checked > 5);
+        } finally {
+            tis.close();
+        }
+
+        // a rebuilt archive doesn't match the old index
+        archive.setLastModified(archive.lastModified() - 10000);
+        assertNull(TarIndex.read(archive));
+    }
+
+    private void assertSelected() {
+        File to = new File("src/etc/testcases/taskdefs/tartest.tmp");
+
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(to);
+        ds.scan();
+        String[] files = ds.getIncludedFiles();
+        assert(files.length > 10);
+        for (int i = 0; i < files.length; i++) {
+            assert(files[i], files[i].startsWith("taskdefs" + File.separator));
+            assert(files[i], files[i].endsWith(".java"));
+            assert(files[i], new File(files[i]).getName().indexOf("Copy") == -1);
+        }
+        assert(new File(to, "taskdefs/Untar.java").exists());
+        assertEquals(new File("src/main/org/apache/tools/ant/taskdefs/Untar.java").length(),
+                     new File(to, "taskdefs/Untar.java").length());
+        assert(!new File(to, "taskdefs/Copy.java").exists());
+        assert(!new File(to, "Project.java").exists());
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private void assertExpanded() throws IOException {
+        File from = new File("src/main/org/apache/tools/ant");
+        File to = new File("src/etc/testcases/taskdefs/tartest.tmp");
+
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(from);
+        ds.scan();
+        String[] files = ds.getIncludedFiles();
+        assert(files.length > 100);
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            File expanded = new File(to, files[i]);
+            assert(files[i], expanded.exists());
+            assertEquals(files[i], new File(from, files[i]).length(), 
+                         expanded.length());
+            total += expanded.length();
+        }
+
+        // the plain GZIP reader sees the whole archive
+        InputStream in = new GZIPInputStream(new FileInputStream(
+            "src/etc/testcases/taskdefs/tartest.tar.gz"));
+        long length = 0;
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                length += count;
+            }
+        } finally {
+            in.close();
+        }
+        assert(length > total);
+        assertEquals(0, length % 10240);
+    }
+
 }
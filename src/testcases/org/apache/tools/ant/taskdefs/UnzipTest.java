@@ -54,6 +54,9 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import org.apache.tools.ant.DirectoryScanner;
+import java.io.File;
+
 /**
  * @author Nico Seessle <nico@seessle.de> 
  */
@@ -66,6 +69,10 @@ public class UnzipTest extends TaskdefsTest {
     public void setUp() { 
         configureProject("src/etc/testcases/taskdefs/unzip.xml");
     }
+
+    public void tearDown() { 
+        executeTarget("cleanup");
+    }
     
     public void test1() { 
         expectBuildException("test1", "required argument not specified");
@@ -79,4 +86,63 @@ public class UnzipTest extends TaskdefsTest {
         expectBuildException("test3", "required argument not specified");
     }
 
+    public void test4() { 
+        expectBuildException("test4", "threads must be positive");
+    }
+
+    public void test5() { 
+        executeTarget("test5");
+        File from = new File("src/main/org/apache/tools/ant");
+        File to = new File("src/etc/testcases/taskdefs/unziptest.tmp");
+
+        String[] files = scan(from);
+        assert(files.length > 100);
+        for (int i = 0; i < files.length; i++) {
+            File expanded = new File(to, files[i]);
+            assert(files[i], expanded.exists());
+            assertEquals(files[i], new File(from, files[i]).length(), 
+                         expanded.length());
+        }
+        assertEquals(files.length, scan(to).length);
+    }
+
+    /**
+     * An interrupted expansion waits for its threads before it fails.
+     */
+    public void test5Interrupted() { 
+        executeTarget("prepare");
+        Thread.currentThread().interrupt();
+        expectBuildException("test5", "interrupted");
+
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int count = Thread.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            assert(threads[i].getName(), 
+                   !threads[i].getName().startsWith("ant-expand-"));
+        }
+    }
+
+    public void test6() { 
+        executeTarget("test6");
+        File to = new File("src/etc/testcases/taskdefs/unziptest.tmp");
+
+        String[] files = scan(to);
+        assert(files.length > 10);
+        for (int i = 0; i < files.length; i++) {
+            assert(files[i], files[i].startsWith("taskdefs" + File.separator));
+            assert(files[i], files[i].endsWith(".java"));
+            assert(files[i], new File(files[i]).getName().indexOf("Copy") == -1);
+        }
+        assert(new File(to, "taskdefs/Expand.java").exists());
+        assert(!new File(to, "taskdefs/Copy.java").exists());
+        assert(!new File(to, "Project.java").exists());
+    }
+
+    private String[] scan(File dir) {
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(dir);
+        ds.scan();
+        return ds.getIncludedFiles();
+    }
+
 }
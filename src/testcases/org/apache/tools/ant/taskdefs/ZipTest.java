@@ -54,6 +54,16 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import java.io.*;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.zip.ZipOutputStream;
+
 /**
  * @author Nico Seessle <nico@seessle.de> 
  */
@@ -74,4 +84,280 @@ public class ZipTest extends TaskdefsTest {
     public void test2() { 
         expectBuildException("test2", "required argument not specified");
     }
+
+    public void test3() { 
+        expectBuildException("test3", "threads must be positive");
+    }
+
+    public void test4() throws IOException { 
+        executeTarget("test4");
+        File seq = new File("src/etc/testcases/taskdefs/sequential.tmp");
+        File par = new File("src/etc/testcases/taskdefs/parallel.tmp");
+        assertEquals(seq.length(), par.length());
+
+        InputStream in1 = new BufferedInputStream(new FileInputStream(seq));
+        InputStream in2 = new BufferedInputStream(new FileInputStream(par));
+        try {
+            int b;
+            do {
+                b = in1.read();
+                assertEquals("archives differ", b, in2.read());
+            } while (b != -1);
+        } finally {
+            in1.close();
+            in2.close();
+        }
+
+        ZipFile zf = new ZipFile(par);
+        try {
+            ZipEntry ze = zf.getEntry("org/apache/tools/ant/Project.java");
+            assertNotNull(ze);
+            assertEquals(new File("src/main/org/apache/tools/ant/Project.java").length(), 
+                         ze.getSize());
+            int count = 0;
+            for (Enumeration e = zf.entries(); e.hasMoreElements(); count++) {
+                e.nextElement();
+            }
+            assert(count > 100);
+        } finally {
+            zf.close();
+        }
+    }
+
+    /**
+     * STORED entries from files larger than anything that should be
+     * buffered.
+     */
+    public void test5() throws IOException { 
+        File large = new File("src/etc/testcases/taskdefs/large.tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(large));
+        try {
+            InputStream in = new PatternInputStream(LARGE_SIZE);
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
+        }
+
+        executeTarget("test5");
+        assertLargeEntry(new File("src/etc/testcases/taskdefs/zip.tmp"), 
+                         "large.tmp");
+    }
+
+    /**
+     * STORED entries from large streams that don't support mark.
+     */
+    public void test6() throws IOException { 
+        File archive = new File("src/etc/testcases/taskdefs/zip.tmp");
+        Zip zip = new Zip();
+        zip.setCompress("false");
+        ZipOutputStream zOut = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zOut.setMethod(ZipOutputStream.STORED);
+            zip.zipFile(new PatternInputStream(LARGE_SIZE), zOut, "large", 
+                        System.currentTimeMillis());
+            zip.zipFile(new PatternInputStream(100), zOut, "small", 
+                        System.currentTimeMillis());
+        } finally {
+            zOut.close();
+        }
+
+        assertLargeEntry(archive, "large");
+        ZipFile zf = new ZipFile(archive);
+        try {
+            assertEquals(100, zf.getEntry("small").getSize());
+        } finally {
+            zf.close();
+        }
+    }
+
+    /**
+     * Updates of an existing archive.
+     */
+    public void test7() throws IOException { 
+        File dir = new File("src/etc/testcases/taskdefs/zipupdate.tmp");
+        dir.mkdirs();
+        writeFile(new File(dir, "unchanged"), "unchanged");
+        writeFile(new File(dir, "changed"), "original");
+        writeFile(new File(dir, "removed"), "removed");
+        executeTarget("test7");
+
+        // same size and time, so the entry of the old archive is
+        // copied without looking at the file again
+        File unchanged = new File(dir, "unchanged");
+        long time = unchanged.lastModified();
+        writeFile(unchanged, "UNCHANGED");
+        unchanged.setLastModified(time);
+
+        File changed = new File(dir, "changed");
+        writeFile(changed, "new content");
+        changed.setLastModified(System.currentTimeMillis() + 10000);
+        new File(dir, "removed").delete();
+        writeFile(new File(dir, "added"), "added");
+        executeTarget("test7");
+        assert(getLog().indexOf("Updating zip") > -1);
+
+        ZipFile zf = new ZipFile(new File("src/etc/testcases/taskdefs/zip.tmp"));
+        try {
+            assertEquals("unchanged", readEntry(zf, "unchanged"));
+            assertEquals("new content", readEntry(zf, "changed"));
+            assertEquals("added", readEntry(zf, "added"));
+            assertNull(zf.getEntry("removed"));
+        } finally {
+            zf.close();
+        }
+        assert(!new File("src/etc/testcases/taskdefs/zip.tmp.old").exists());
+    }
+
+    /**
+     * A failed update leaves the original archive in place.
+     */
+    public void test7Failed() throws IOException { 
+        File dir = new File("src/etc/testcases/taskdefs/zipupdate.tmp");
+        dir.mkdirs();
+        writeFile(new File(dir, "a"), "original");
+        executeTarget("test7");
+
+        File a = new File(dir, "a");
+        writeFile(a, "changed");
+        a.setLastModified(System.currentTimeMillis() + 10000);
+
+        File archive = new File("src/etc/testcases/taskdefs/zip.tmp");
+        project.addTaskDefinition("failingzip", FailingZip.class);
+        Zip zip = (Zip) project.createTask("failingzip");
+        zip.setZipfile(archive);
+        zip.setBasedir(dir.getAbsolutePath());
+        zip.setUpdate(true);
+        try {
+            zip.execute();
+            fail("the update should have failed");
+        } catch (BuildException e) {
+            assertEquals("failed on purpose", e.getMessage());
+        }
+
+        ZipFile zf = new ZipFile(archive);
+        try {
+            assertEquals("original", readEntry(zf, "a"));
+        } finally {
+            zf.close();
+        }
+        assert(!new File("src/etc/testcases/taskdefs/zip.tmp.old").exists());
+    }
+
+    /**
+     * Fails as soon as the first file is added.
+     */
+    public static class FailingZip extends Zip {
+        protected void zipFile(File file, ZipOutputStream zOut, 
+                               String vPath) {
+            throw new BuildException("failed on purpose");
+        }
+    }
+
+    private static void writeFile(File f, String content) throws IOException {
+        Writer w = new FileWriter(f);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    private static String readEntry(ZipFile zf, String name) 
+        throws IOException {
+        ZipEntry ze = zf.getEntry(name);
+        assertNotNull(name, ze);
+        Reader r = new InputStreamReader(zf.getInputStream(ze));
+        try {
+            StringBuffer sb = new StringBuffer();
+            int c;
+            while ((c = r.read()) != -1) {
+                sb.append((char) c);
+            }
+            return sb.toString();
+        } finally {
+            r.close();
+        }
+    }
+
+    private static final long LARGE_SIZE = 32 * 1024 * 1024 + 17;
+
+    private void assertLargeEntry(File archive, String name) 
+        throws IOException {
+        CheckedInputStream in = 
+            new CheckedInputStream(new PatternInputStream(LARGE_SIZE), 
+                                   new CRC32());
+        drain(in);
+        long expected = in.getChecksum().getValue();
+
+        ZipFile zf = new ZipFile(archive);
+        try {
+            ZipEntry ze = zf.getEntry(name);
+            assertNotNull(ze);
+            assertEquals(ZipEntry.STORED, ze.getMethod());
+            assertEquals(LARGE_SIZE, ze.getSize());
+            assertEquals(expected, ze.getCrc());
+        } finally {
+            zf.close();
+        }
+
+        // the stream verifies the CRC while reading
+        ZipInputStream zIn = new ZipInputStream(new FileInputStream(archive));
+        try {
+            while (!name.equals(zIn.getNextEntry().getName())) {
+            }
+            in = new CheckedInputStream(zIn, new CRC32());
+            assertEquals(LARGE_SIZE, drain(in));
+            assertEquals(expected, in.getChecksum().getValue());
+        } finally {
+            zIn.close();
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Generates content without holding it in memory, doesn't
+     * support mark.
+     */
+    private static class PatternInputStream extends InputStream {
+        private long remaining;
+
+        PatternInputStream(long size) {
+            remaining = size;
+        }
+
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            return (int) (remaining-- * 31 % 251);
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) read();
+            }
+            return count;
+        }
+    }
+
+    public void tearDown() {
+        executeTarget("cleanup");
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2000 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution, if
+ *    any, must include the following acknowlegement:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowlegement may appear in the software itself,
+ *    if and wherever such third-party acknowlegements normally appear.
+ *
+ * 4. The names "The Jakarta Project", "Tomcat", and "Apache Software
+ *    Foundation" must not be used to endorse or promote products derived
+ *    from this software without prior written permission. For written
+ *    permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache"
+ *    nor may "Apache" appear in their names without prior written
+ *    permission of the Apache Group.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.tools.zip;
+
+import junit.framework.TestCase;
+import java.io.*;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * JUnit 3 testcases for org.apache.tools.zip.ZipOutputStream.
+ */
+
+public class ZipOutputStreamTest extends TestCase {
+
+    public ZipOutputStreamTest(String name) {
+        super(name);
+    }
+
+    public void testModificationTime() throws IOException {
+        Calendar cal = Calendar.getInstance();
+        cal.set(2001, Calendar.NOVEMBER, 23, 17, 4, 38);
+        long time = cal.getTime().getTime() / 1000 * 1000;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zOut = new ZipOutputStream(bytes);
+        ZipEntry ze = new ZipEntry("a");
+        ze.setTime(time);
+        zOut.putNextEntry(ze);
+        zOut.close();
+
+        ZipInputStream in = 
+            new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(time, in.getNextEntry().getTime());
+        in.close();
+    }
+
+    public void testTooManyEntries() throws IOException {
+        ZipOutputStream zOut = new ZipOutputStream(new OutputStream() {
+                public void write(int b) {
+                }
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+        long crc = new CRC32().getValue();
+        for (int i = 0; i < 0xFFFF; i++) {
+            ZipEntry ze = new ZipEntry("e" + i);
+            ze.setMethod(ZipOutputStream.STORED);
+            ze.setSize(0);
+            ze.setCrc(crc);
+            zOut.putNextEntry(ze);
+        }
+        try {
+            zOut.finish();
+            fail("ZIP64 central directory has been written");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+}